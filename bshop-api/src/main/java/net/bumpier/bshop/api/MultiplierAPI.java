@@ -1,9 +1,12 @@
 package net.bumpier.bshop.api;
 
+import net.bumpier.bshop.util.MultiplierService;
 import org.bukkit.entity.Player;
+import java.util.LinkedHashMap;
 import java.util.UUID;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * API for multiplier operations
@@ -95,7 +98,9 @@ public class MultiplierAPI {
      * @return Map of permission to MultiplierTier
      */
     public Map<String, MultiplierTier> getMultiplierTiers() {
-        return api.getMultiplierService().getMultiplierTiers();
+        Map<String, MultiplierTier> tiers = new LinkedHashMap<>();
+        api.getMultiplierService().getMultiplierTiers().forEach((permission, tier) -> tiers.put(permission, toApi(tier)));
+        return tiers;
     }
     
     /**
@@ -103,7 +108,9 @@ public class MultiplierAPI {
      * @return Map of category to list of tiers
      */
     public Map<String, List<MultiplierTier>> getTiersByCategory() {
-        return api.getMultiplierService().getTiersByCategory();
+        Map<String, List<MultiplierTier>> tiers = new LinkedHashMap<>();
+        api.getMultiplierService().getTiersByCategory().forEach((category, list) -> tiers.put(category, toApi(list)));
+        return tiers;
     }
     
     /**
@@ -112,7 +119,7 @@ public class MultiplierAPI {
      * @return MultiplierTier or null if not found
      */
     public MultiplierTier getTier(String permission) {
-        return api.getMultiplierService().getTier(permission);
+        return toApi(api.getMultiplierService().getTier(permission));
     }
     
     /**
@@ -121,7 +128,7 @@ public class MultiplierAPI {
      * @return List of active tiers (sorted by multiplier value, highest first)
      */
     public List<MultiplierTier> getActiveTiers(Player player) {
-        return api.getMultiplierService().getActiveTiers(player);
+        return toApi(api.getMultiplierService().getActiveTiers(player));
     }
     
     /**
@@ -130,7 +137,7 @@ public class MultiplierAPI {
      * @return Highest tier or null if none
      */
     public MultiplierTier getHighestTier(Player player) {
-        return api.getMultiplierService().getHighestTier(player);
+        return toApi(api.getMultiplierService().getHighestTier(player));
     }
 
     // --- Temporary Multiplier Methods ---
@@ -219,7 +226,7 @@ public class MultiplierAPI {
      * @return TemporaryMultiplierData or null if none exists
      */
     public TemporaryMultiplierData getTemporaryMultiplierData(UUID playerUuid) {
-        return api.getMultiplierService().getTemporaryMultiplierData(playerUuid);
+        return toApi(api.getMultiplierService().getTemporaryMultiplierData(playerUuid));
     }
     
     /**
@@ -227,7 +234,9 @@ public class MultiplierAPI {
      * @return Map of player UUID to temporary multiplier data
      */
     public Map<UUID, TemporaryMultiplierData> getTemporaryMultipliersData() {
-        return api.getMultiplierService().getTemporaryMultipliersData();
+        Map<UUID, TemporaryMultiplierData> data = new LinkedHashMap<>();
+        api.getMultiplierService().getTemporaryMultipliersData().forEach((uuid, temporary) -> data.put(uuid, toApi(temporary)));
+        return data;
     }
 
     /**
@@ -302,7 +311,15 @@ public class MultiplierAPI {
      * @return MultiplierInfo containing detailed information
      */
     public MultiplierInfo getMultiplierInfo(Player player) {
-        return api.getMultiplierService().getMultiplierInfo(player);
+        MultiplierService.MultiplierInfo source = api.getMultiplierService().getMultiplierInfo(player);
+        if (source == null) return null;
+        
+        MultiplierInfo info = new MultiplierInfo();
+        info.setTotalMultiplier(source.getTotalMultiplier());
+        info.setActiveTiers(source.getActiveTiers() != null ? toApi(source.getActiveTiers()) : null);
+        info.setTemporaryMultiplier(toApi(source.getTemporaryMultiplier()));
+        info.setHighestTier(toApi(source.getHighestTier()));
+        return info;
     }
     
     /**
@@ -311,7 +328,9 @@ public class MultiplierAPI {
      * @return List of multiplier history entries
      */
     public List<MultiplierHistoryEntry> getMultiplierHistory(UUID playerUuid) {
-        return api.getMultiplierService().getMultiplierHistory(playerUuid);
+        return api.getMultiplierService().getMultiplierHistory(playerUuid).stream()
+                .map(entry -> new MultiplierHistoryEntry(entry.timestamp, entry.multiplier, entry.reason, entry.grantedBy))
+                .collect(Collectors.toList());
     }
     
     /**
@@ -336,6 +355,23 @@ public class MultiplierAPI {
         api.getMultiplierService().reloadMultipliers();
     }
     
+    // --- Conversions from the plugin's own types ---
+    
+    private static MultiplierTier toApi(MultiplierService.MultiplierTier tier) {
+        if (tier == null) return null;
+        return new MultiplierTier(tier.getTierId(), tier.getCategory(), tier.getName(), tier.getMultiplier(), tier.getPermission());
+    }
+    
+    private static List<MultiplierTier> toApi(List<MultiplierService.MultiplierTier> tiers) {
+        return tiers.stream().map(MultiplierAPI::toApi).collect(Collectors.toList());
+    }
+    
+    private static TemporaryMultiplierData toApi(MultiplierService.TemporaryMultiplierData data) {
+        if (data == null) return null;
+        return new TemporaryMultiplierData(data.getMultiplier(), data.getExpirationTime(), data.getReason(), data.getGrantedBy(),
+                data.getGrantedAt());
+    }
+    
     // --- Data Classes ---
     
     /**
@@ -384,11 +420,15 @@ public class MultiplierAPI {
         private final long grantedAt;
         
         public TemporaryMultiplierData(double multiplier, long expirationTime, String reason, String grantedBy) {
+            this(multiplier, expirationTime, reason, grantedBy, System.currentTimeMillis());
+        }
+        
+        public TemporaryMultiplierData(double multiplier, long expirationTime, String reason, String grantedBy, long grantedAt) {
             this.multiplier = multiplier;
             this.expirationTime = expirationTime;
             this.reason = reason != null ? reason : "No reason provided";
             this.grantedBy = grantedBy != null ? grantedBy : "Console";
-            this.grantedAt = System.currentTimeMillis();
+            this.grantedAt = grantedAt;
         }
         
         // Getters
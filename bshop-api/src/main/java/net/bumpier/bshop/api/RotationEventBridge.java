@@ -0,0 +1,47 @@
+package net.bumpier.bshop.api;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.api.events.ShopRotationEvent;
+import net.bumpier.bshop.shop.ShopRotationListener;
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.ServicePriority;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Bridges plugin-side rotations to {@link ShopRotationEvent}.
+ * bShop compiles the API into its own jar and registers this as a {@link ShopRotationListener} service
+ * once while it enables, so the event fires without anyone calling {@link BShopAPI#getInstance()} first.
+ */
+public final class RotationEventBridge implements ShopRotationListener {
+
+    private static final RotationEventBridge INSTANCE = new RotationEventBridge();
+
+    private RotationEventBridge() {
+    }
+
+    /**
+     * Registers the bridge. Called by bShop while it enables; the registration is owned by bShop, so it
+     * goes away when bShop disables and is redone when it enables again.
+     * @param plugin bShop
+     */
+    public static void register(BShop plugin) {
+        Bukkit.getServicesManager().register(ShopRotationListener.class, INSTANCE, plugin, ServicePriority.Normal);
+    }
+
+    @Override
+    public void onRotation(Shop shop, RotationState previous, RotationState current) {
+        Bukkit.getPluginManager().callEvent(new ShopRotationEvent(
+                shop.id(),
+                previous != null ? itemIds(previous) : List.of(),
+                itemIds(current)));
+    }
+
+    private static List<String> itemIds(RotationState state) {
+        return state.activeItems().stream().map(ShopItem::id).collect(Collectors.toList());
+    }
+}
@@ -1,5 +1,7 @@
 package net.bumpier.bshop.api;
 
+import net.bumpier.bshop.database.ItemSales;
+import net.bumpier.bshop.database.SalesRollupStore;
 import net.bumpier.bshop.shop.model.Shop;
 import net.bumpier.bshop.shop.model.ShopItem;
 import org.bukkit.Material;
@@ -10,6 +12,7 @@ import org.bukkit.inventory.meta.ItemMeta;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * API for shop management operations
@@ -144,10 +147,7 @@ public class ShopAPI {
         Shop shop = api.getShopManager().getShop(shopId);
         if (shop == null) return List.of();
         
-        if (shop.type() != null && shop.type().equalsIgnoreCase("rotational") && shop.activeItems() != null) {
-            return shop.activeItems();
-        }
-        return shop.items();
+        return api.getShopManager().getActiveItems(shop);
     }
     
     /**
@@ -164,23 +164,41 @@ public class ShopAPI {
     }
     
     /**
-     * Manually rotate a shop
+     * Manually rotate a shop. The next rotation's items appear now and stay until the end of their own
+     * slot, so the regular rotation at the next boundary is skipped
      * @param shopId Shop ID
      * @return true if rotation was successful
      */
     public boolean rotateShop(String shopId) {
-        Shop shop = api.getShopManager().getShop(shopId);
-        if (shop == null || shop.type() == null || !shop.type().equalsIgnoreCase("rotational")) {
-            return false;
-        }
-        
-        // Use reflection to access private methods (as in ShopCommand)
-        try {
-            // Implementation would mirror ShopCommand.handleRotate
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return api.getShopManager().rotateShop(shopId);
+    }
+    
+    /**
+     * Get the best selling items over a recent window, read from the sales rollups
+     * @param metric What to rank items by
+     * @param windowMs Window length in milliseconds, ending now
+     * @param limit Maximum number of items
+     * @return Future of the items, highest first; empty if statistics are disabled
+     */
+    public CompletableFuture<List<ItemSales>> getTopSales(ItemSales.Metric metric, long windowMs, int limit) {
+        SalesRollupStore rollups = api.getPlugin().getSalesRollupStore();
+        if (rollups == null) return CompletableFuture.completedFuture(List.of());
+
+        return rollups.top(metric, windowMs, limit);
+    }
+    
+    /**
+     * Get the sales of one item over a recent window, read from the sales rollups
+     * @param shopId Shop ID
+     * @param itemId Item ID
+     * @param windowMs Window length in milliseconds, ending now
+     * @return Future of the sales, or of null if the item had none or statistics are disabled
+     */
+    public CompletableFuture<ItemSales> getItemSales(String shopId, String itemId, long windowMs) {
+        SalesRollupStore rollups = api.getPlugin().getSalesRollupStore();
+        if (rollups == null) return CompletableFuture.completedFuture(null);
+
+        return rollups.item(shopId, itemId, windowMs);
     }
     
     /**
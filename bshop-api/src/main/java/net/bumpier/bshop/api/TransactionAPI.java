@@ -1,7 +1,6 @@
 package net.bumpier.bshop.api;
 
 import net.bumpier.bshop.shop.model.ShopItem;
-import net.bumpier.bshop.shop.transaction.TransactionResult;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
@@ -35,6 +34,24 @@ public class TransactionAPI {
         }
     }
     
+    /**
+     * Buy an item from a specific shop for a player. Items with a global stock are taken from that
+     * shop's stock; prefer this overload when the item's shop is known.
+     * @param player Player buying the item
+     * @param shopId Shop the item is bought from
+     * @param item Shop item to buy
+     * @param quantity Quantity to buy
+     * @return Transaction result
+     */
+    public TransactionResult buyItem(Player player, String shopId, ShopItem item, int quantity) {
+        try {
+            api.getTransactionService().buyItem(player, item, quantity, shopId);
+            return TransactionResult.SUCCESS;
+        } catch (Exception e) {
+            return TransactionResult.FAILED;
+        }
+    }
+    
     /**
      * Sell an item for a player
      * @param player Player selling the item
@@ -51,6 +68,23 @@ public class TransactionAPI {
         }
     }
     
+    /**
+     * Sell an item to a specific shop for a player. Shop and item scoped multipliers of that shop apply.
+     * @param player Player selling the item
+     * @param shopId Shop the item is sold to
+     * @param item Shop item to sell
+     * @param quantity Quantity to sell
+     * @return Transaction result
+     */
+    public TransactionResult sellItem(Player player, String shopId, ShopItem item, int quantity) {
+        try {
+            api.getTransactionService().sellItem(player, item, quantity, shopId);
+            return TransactionResult.SUCCESS;
+        } catch (Exception e) {
+            return TransactionResult.FAILED;
+        }
+    }
+    
     /**
      * Check if a player can buy an item
      * @param player Player to check
@@ -4,7 +4,8 @@ import org.bukkit.event.Event;
 import org.bukkit.event.HandlerList;
 
 /**
- * Event fired when a rotational shop rotates
+ * Event fired when a rotational shop rotates.
+ * Fired on the main thread on the tick the rotation is due.
  */
 public class ShopRotationEvent extends Event {
     
@@ -8,8 +8,12 @@ import net.bumpier.bshop.util.message.MessageService;
 import net.bumpier.bshop.util.config.ConfigManager;
 import net.bumpier.bshop.module.ModuleManager;
 import net.bumpier.bshop.shop.ShopModule;
+import net.bumpier.bshop.shop.ShopStockService;
 import net.bumpier.bshop.util.MultiplierService;
 import net.bumpier.bshop.database.DatabaseManager;
+import net.bumpier.bshop.database.SalesRollupStore;
+import net.bumpier.bshop.database.TransactionStore;
+import net.bumpier.bshop.api.RotationEventBridge;
 import net.milkbowl.vault.economy.Economy;
 import net.kyori.adventure.platform.bukkit.BukkitAudiences;
 import org.bukkit.plugin.RegisteredServiceProvider;
@@ -28,6 +32,9 @@ public class BShop extends JavaPlugin {
     private ModuleManager moduleManager;
     private MultiplierService multiplierService;
     private DatabaseManager databaseManager;
+    private TransactionStore transactionStore;
+    private SalesRollupStore salesRollupStore;
+    private ShopStockService stockService;
     private Economy economy;
     private BukkitAudiences adventure;
     
@@ -73,6 +80,9 @@ public class BShop extends JavaPlugin {
                 return;
             }
             
+            // Let bshop-api fire its events from the first rotation on
+            RotationEventBridge.register(this);
+            
             // Initialize modules
             if (!initializeModules()) {
                 getLogger().warning("Module initialization had issues, but continuing...");
@@ -121,12 +131,18 @@ public class BShop extends JavaPlugin {
             // Initialize message service
             messageService = new MessageService(this, messagesConfig);
             
+            // Initialize database manager (the multiplier service stores temporary multipliers in it)
+            databaseManager = new DatabaseManager(this);
+            
+            // Initialize transaction store (group-commits buys and sells to the database)
+            transactionStore = new TransactionStore(this, databaseManager.getDatabase());
+            
+            // Initialize sales rollups (hourly and daily per-item totals for shop statistics)
+            salesRollupStore = new SalesRollupStore(this, databaseManager.getDatabase());
+            
             // Initialize multiplier service
             multiplierService = new MultiplierService(this);
             
-            // Initialize database manager
-            databaseManager = new DatabaseManager(this);
-            
 
             return true;
             
@@ -141,6 +157,9 @@ public class BShop extends JavaPlugin {
             // Initialize shop manager
             shopManager = new ShopManager(this);
             shopManager.startRotationTask(this);
+
+            // Initialize global item stock (needs the rotation epochs of the shop manager)
+            stockService = new ShopStockService(this, shopManager, databaseManager.getDatabase());
             
             // Initialize GUI manager
             ConfigManager guisConfig = new ConfigManager(this, "guis.yml");
@@ -221,14 +240,9 @@ public class BShop extends JavaPlugin {
             
             if (shopManager != null) {
                 var shopStats = shopManager.getCacheStats();
-                long cachedShops = (Long) shopStats.get("cached_shops");
-                double hitRate = (Double) shopStats.get("hit_rate_percent");
-                getLogger().info("Shop Cache: " + cachedShops + " shops, " + String.format("%.1f%%", hitRate) + " hit rate");
-                
-                // Performance alert for low cache hit rate
-                if (hitRate < 50.0 && enableDetailedStats) {
-                    getLogger().warning("Low shop cache hit rate detected: " + String.format("%.1f%%", hitRate));
-                }
+                int loadedShops = ((Number) shopStats.get("loaded_shops")).intValue();
+                long lastLoadMs = ((Number) shopStats.get("last_load_time_ms")).longValue();
+                getLogger().info("Shop Registry: " + loadedShops + " shops, last load took " + lastLoadMs + "ms");
             }
             
             if (transactionService != null) {
@@ -252,9 +266,12 @@ public class BShop extends JavaPlugin {
             
             if (shopGuiManager != null) {
                 var guiStats = shopGuiManager.getGuiStats();
-                long openInventories = (Long) guiStats.get("open_shop_inventories");
-                long cachedItemStacks = (Long) guiStats.get("item_stack_cache_size");
+                long openInventories = ((Number) guiStats.get("open_shop_inventories")).longValue();
+                long cachedItemStacks = ((Number) guiStats.get("item_stack_cache_size")).longValue();
                 getLogger().info("GUI: " + openInventories + " open inventories, " + cachedItemStacks + " cached item stacks");
+                int queueDepth = (Integer) guiStats.get("open_queue_depth");
+                double avgWait = (Double) guiStats.get("average_queue_wait_ms");
+                getLogger().info("GUI Open Queue: " + queueDepth + " waiting, " + String.format("%.1fms", avgWait) + " average wait");
             }
             
             // Memory usage monitoring
@@ -293,6 +310,11 @@ public class BShop extends JavaPlugin {
                 adventure.close();
             }
             
+            // Shutdown GUI manager
+            if (shopGuiManager != null) {
+                shopGuiManager.shutdown();
+            }
+            
             // Shutdown transaction service
             if (transactionService != null) {
                 transactionService.shutdown();
@@ -308,6 +330,26 @@ public class BShop extends JavaPlugin {
                 moduleManager.unloadModules();
             }
             
+            // Flush pending multiplier writes before the database closes
+            if (multiplierService != null) {
+                multiplierService.shutdown();
+            }
+            
+            // Write sold stock before the database closes
+            if (stockService != null) {
+                stockService.shutdown();
+            }
+            
+            // Flush queued transactions before the database closes
+            if (transactionStore != null) {
+                transactionStore.shutdown();
+            }
+            
+            // Write pending sales totals before the database closes
+            if (salesRollupStore != null) {
+                salesRollupStore.shutdown();
+            }
+            
             // Shutdown database manager
             if (databaseManager != null) {
                 databaseManager.shutdown();
@@ -342,6 +384,18 @@ public class BShop extends JavaPlugin {
         if (multiplierService != null) {
             stats.put("multiplier_service_stats", multiplierService.getMultiplierStats());
         }
+        if (transactionStore != null) {
+            stats.put("transaction_store_stats", transactionStore.getStats());
+        }
+        if (salesRollupStore != null) {
+            stats.put("sales_rollup_stats", salesRollupStore.getStats());
+        }
+        if (stockService != null) {
+            stats.put("stock_stats", stockService.getStats());
+        }
+        if (databaseManager != null) {
+            stats.put("database_stats", databaseManager.getStats());
+        }
         if (shopGuiManager != null) {
             stats.put("gui_manager_stats", shopGuiManager.getGuiStats());
         }
@@ -357,6 +411,9 @@ public class BShop extends JavaPlugin {
     public ModuleManager getModuleManager() { return moduleManager; }
     public MultiplierService getMultiplierService() { return multiplierService; }
     public DatabaseManager getDatabaseManager() { return databaseManager; }
+    public TransactionStore getTransactionStore() { return transactionStore; }
+    public SalesRollupStore getSalesRollupStore() { return salesRollupStore; }
+    public ShopStockService getStockService() { return stockService; }
     public Economy getEconomy() { return economy; }
     public BukkitAudiences adventure() { return adventure; }
     public boolean isShuttingDown() { return isShuttingDown; }
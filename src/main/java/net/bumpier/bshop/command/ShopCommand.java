@@ -1,6 +1,9 @@
 package net.bumpier.bshop.command;
 
 import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.database.ItemSales;
+import net.bumpier.bshop.database.MultiplierStore;
+import net.bumpier.bshop.database.SalesRollupStore;
 import net.bumpier.bshop.module.ModuleManager;
 import net.bumpier.bshop.shop.ShopManager;
 import net.bumpier.bshop.shop.ui.ShopGuiManager;
@@ -8,7 +11,6 @@ import net.bumpier.bshop.util.message.MessageService;
 import net.bumpier.bshop.util.MultiplierService;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -21,15 +23,23 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class ShopCommand implements CommandExecutor, TabCompleter {
 
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int STATS_TOP_DEFAULT_LIMIT = 10;
+    private static final int STATS_TOP_MAX_LIMIT = 50;
+
     private final ShopGuiManager shopGuiManager;
     private final MessageService messageService;
     private final ShopManager shopManager;
     private final ModuleManager moduleManager;
+    // Where each sender's last multiplier history page ended, for "/shop multiplier history <player> more"
+    private final Map<String, HistoryPosition> historyPositions = new ConcurrentHashMap<>();
 
     public ShopCommand(ShopGuiManager shopGuiManager, MessageService messageService, ShopManager shopManager, ModuleManager moduleManager) {
         this.shopGuiManager = shopGuiManager;
@@ -76,6 +86,11 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (subCommand.equals("stats")) {
+            handleStats(sender, args);
+            return true;
+        }
+
         if (!(sender instanceof Player)) {
             messageService.send(sender, "player_only_command");
             return true;
@@ -114,6 +129,9 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             if (sender.hasPermission("bshop.admin.debug")) {
                 subCommands.add("debug");
             }
+            if (sender.hasPermission("bshop.admin.stats")) {
+                subCommands.add("stats");
+            }
 
             // Filter based on what they've typed
             String input = args[0].toLowerCase();
@@ -142,6 +160,9 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                 if (sender.hasPermission("bshop.admin.multiplier.check")) {
                     multiplierSubs.add("check");
                 }
+                if (sender.hasPermission("bshop.admin.multiplier.event")) {
+                    multiplierSubs.add("event");
+                }
                 multiplierSubs.add("giveall");
                 multiplierSubs.add("expire");
                 multiplierSubs.add("stats");
@@ -166,6 +187,10 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                         .map(Player::getName)
                         .filter(name -> name.toLowerCase().startsWith(input))
                         .collect(Collectors.toList()));
+            } else if (firstArg.equals("stats")) {
+                if ("top".startsWith(args[1].toLowerCase())) {
+                    completions.add("top");
+                }
             } else if (firstArg.equals("debug")) {
                 // Debug subcommands - player names
                 String input = args[1].toLowerCase();
@@ -179,7 +204,12 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             String firstArg = args[0].toLowerCase();
             String secondArg = args[1].toLowerCase();
             
-            if (firstArg.equals("multiplier") && secondArg.equals("give")) {
+            if (firstArg.equals("multiplier") && secondArg.equals("event")) {
+                String input = args[2].toLowerCase();
+                completions.addAll(Arrays.asList("start", "schedule", "stop", "list").stream()
+                        .filter(sub -> sub.startsWith(input))
+                        .collect(Collectors.toList()));
+            } else if (firstArg.equals("multiplier") && secondArg.equals("give")) {
                 // Player names for multiplier give
                 String input = args[2].toLowerCase();
                 completions.addAll(Bukkit.getOnlinePlayers().stream()
@@ -221,6 +251,13 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                         .map(Player::getName)
                         .filter(name -> name.toLowerCase().startsWith(input))
                         .collect(Collectors.toList()));
+            } else if (firstArg.equals("stats") && secondArg.equals("top")) {
+                // Metrics for stats top
+                String input = args[2].toLowerCase();
+                completions.addAll(Arrays.stream(ItemSales.Metric.values())
+                        .map(metric -> metric.name().toLowerCase())
+                        .filter(metric -> metric.startsWith(input))
+                        .collect(Collectors.toList()));
             } else if (firstArg.equals("rotate") && secondArg.equals("force")) {
                 // Shop names for rotate force
                 String input = args[2].toLowerCase();
@@ -240,6 +277,16 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                 completions.addAll(commonMultipliers.stream()
                         .filter(mult -> mult.startsWith(input))
                         .collect(Collectors.toList()));
+            } else if (firstArg.equals("multiplier") && secondArg.equals("history")) {
+                if ("more".startsWith(args[3].toLowerCase())) {
+                    completions.add("more");
+                }
+            } else if (firstArg.equals("stats") && secondArg.equals("top")) {
+                // Common windows for stats top
+                String input = args[3].toLowerCase();
+                completions.addAll(Arrays.asList("1h", "24h", "7d", "30d").stream()
+                        .filter(window -> window.startsWith(input))
+                        .collect(Collectors.toList()));
             }
         }
 
@@ -294,40 +341,20 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length < 2) {
-            sender.sendMessage(ChatColor.RED + "Usage: /shop rotate <shop_id>");
+            messageService.send(sender, "admin.rotate_usage");
             return;
         }
 
         String shopId = args[1];
-        try {
-            // Use reflection to access private fields for rotation
-            var shop = shopManager.getShop(shopId);
-            if (shop == null) {
-                sender.sendMessage(ChatColor.RED + "Shop not found: " + shopId);
-                return;
-            }
-
-            if (shop.type() == null || !shop.type().equalsIgnoreCase("rotational")) {
-                sender.sendMessage(ChatColor.RED + "Shop is not rotational: " + shopId);
-                return;
-            }
-
-            // Force rotation by clearing active items cache
-            var shopClass = shop.getClass();
-            var activeItemsField = shopClass.getDeclaredField("activeItems");
-            activeItemsField.setAccessible(true);
-            activeItemsField.set(shop, null);
-
-            // Clear next rotation time to force immediate rotation
-            var nextRotationTimesField = shopClass.getDeclaredField("nextRotationTimes");
-            nextRotationTimesField.setAccessible(true);
-            var nextRotationTimes = (java.util.Map<String, Long>) nextRotationTimesField.get(shop);
-            nextRotationTimes.remove(shopId);
-
-            sender.sendMessage(ChatColor.GREEN + "Forced rotation for shop: " + shopId);
-        } catch (Exception e) {
-            sender.sendMessage(ChatColor.RED + "Failed to rotate shop: " + e.getMessage());
+        if (shopManager.getShop(shopId) == null) {
+            messageService.send(sender, "shop.not_found", Placeholder.unparsed("shop", shopId));
+            return;
+        }
+        if (!shopManager.rotateShop(shopId)) {
+            messageService.send(sender, "admin.rotate_not_rotational", Placeholder.unparsed("shop", shopId));
+            return;
         }
+        messageService.send(sender, "admin.rotate_success", Placeholder.unparsed("shop", shopId));
     }
 
     private void handleView(CommandSender sender, String[] args) {
@@ -354,6 +381,101 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         shopGuiManager.openRecentPurchasesMenuForPlayer((Player) sender, targetPlayer.getUniqueId());
     }
 
+    private void handleStats(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("bshop.admin.stats")) {
+            messageService.send(sender, "no_permission");
+            return;
+        }
+        if (args.length < 2 || !args[1].equalsIgnoreCase("top")) {
+            messageService.send(sender, "admin.stats_usage");
+            return;
+        }
+        SalesRollupStore rollups = BShop.getInstance().getSalesRollupStore();
+        if (rollups == null || !rollups.isAvailable()) {
+            messageService.send(sender, "admin.stats_unavailable");
+            return;
+        }
+
+        ItemSales.Metric metric = ItemSales.Metric.BOUGHT;
+        String window = "7d";
+        int limit = STATS_TOP_DEFAULT_LIMIT;
+        try {
+            if (args.length > 2) {
+                metric = ItemSales.Metric.valueOf(args[2].toUpperCase());
+            }
+            if (args.length > 3) {
+                window = args[3].toLowerCase();
+            }
+            if (args.length > 4) {
+                limit = Math.max(1, Math.min(STATS_TOP_MAX_LIMIT, Integer.parseInt(args[4])));
+            }
+        } catch (IllegalArgumentException e) {
+            messageService.send(sender, "admin.stats_usage");
+            return;
+        }
+        long windowMs = parseStatsWindow(window);
+        if (windowMs <= 0) {
+            messageService.send(sender, "admin.stats_usage");
+            return;
+        }
+
+        // Read from the rollup table in the background; the reply is sent on the main thread
+        ItemSales.Metric selected = metric;
+        String selectedWindow = window;
+        rollups.top(metric, windowMs, limit).thenAccept(rows -> Bukkit.getScheduler().runTask(BShop.getInstance(),
+                () -> sendStatsTop(sender, selected, selectedWindow, rows)));
+    }
+
+    /**
+     * Parses "12h" or "7d"; returns -1 for anything else.
+     */
+    private long parseStatsWindow(String window) {
+        if (window.length() < 2) {
+            return -1;
+        }
+        long unit = window.endsWith("h") ? 3600000L : window.endsWith("d") ? 86400000L : -1;
+        try {
+            long amount = Long.parseLong(window.substring(0, window.length() - 1));
+            return unit > 0 && amount > 0 ? amount * unit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void sendStatsTop(CommandSender sender, ItemSales.Metric metric, String window, List<ItemSales> rows) {
+        java.util.Map<String, String> headerPlaceholders = new java.util.HashMap<>();
+        headerPlaceholders.put("metric", metric.name().toLowerCase());
+        headerPlaceholders.put("window", window);
+        if (rows.isEmpty()) {
+            messageService.send(sender, "admin.stats_top_empty", headerPlaceholders);
+            return;
+        }
+        messageService.send(sender, "admin.stats_top_header", headerPlaceholders);
+        int rank = 1;
+        for (ItemSales row : rows) {
+            java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+            placeholders.put("rank", String.valueOf(rank++));
+            placeholders.put("shop", row.shopId());
+            placeholders.put("item", row.itemId());
+            placeholders.put("value", formatStatsValue(metric, row));
+            placeholders.put("bought", String.format("%,d", row.unitsBought()));
+            placeholders.put("sold", String.format("%,d", row.unitsSold()));
+            placeholders.put("players", String.format("%,d", row.uniquePlayers()));
+            messageService.send(sender, "admin.stats_top_entry", placeholders);
+        }
+    }
+
+    private String formatStatsValue(ItemSales.Metric metric, ItemSales row) {
+        switch (metric) {
+            case SOLD: return String.format("%,d", row.unitsSold());
+            case MONEY_IN: return String.format("$%,.2f", row.moneyIn());
+            case MONEY_OUT: return String.format("$%,.2f", row.moneyOut());
+            case TRANSACTIONS: return String.format("%,d", row.transactions());
+            case PLAYERS: return String.format("%,d", row.uniquePlayers());
+            default: return String.format("%,d", row.unitsBought());
+        }
+    }
+
     private void handleMultiplier(CommandSender sender, String[] args) {
         if (args.length < 2) {
             showMultiplierHelp(sender);
@@ -442,11 +564,18 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                     messageService.send(sender, "multiplier.usage_history");
                     return;
                 }
-                showMultiplierHistory(sender, args[2]);
+                showMultiplierHistory(sender, args[2], args.length > 3 && args[3].equalsIgnoreCase("more"));
                 break;
             case "tiers":
                 showAvailableTiers(sender);
                 break;
+            case "event":
+                if (!sender.hasPermission("bshop.admin.multiplier.event")) {
+                    messageService.send(sender, "multiplier.no_permission_event");
+                    return;
+                }
+                handleEventMultiplier(sender, args);
+                break;
             default:
                 showMultiplierHelp(sender);
                 break;
@@ -668,6 +797,128 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private void handleEventMultiplier(CommandSender sender, String[] args) {
+        MultiplierService multiplierService = BShop.getInstance().getMultiplierService();
+        String action = args.length > 2 ? args[2].toLowerCase() : "list";
+        switch (action) {
+            case "start":
+                if (args.length < 5) {
+                    messageService.send(sender, "multiplier.usage_event");
+                    return;
+                }
+                startEventMultiplier(sender, 0, args, 3);
+                break;
+            case "schedule":
+                if (args.length < 6) {
+                    messageService.send(sender, "multiplier.usage_event");
+                    return;
+                }
+                long delayMs = parseDuration(args[3]);
+                if (delayMs <= 0) {
+                    messageService.send(sender, "multiplier.give_invalid_duration");
+                    return;
+                }
+                startEventMultiplier(sender, delayMs, args, 4);
+                break;
+            case "stop":
+                if (args.length < 4) {
+                    messageService.send(sender, "multiplier.usage_event");
+                    return;
+                }
+                java.util.Map<String, String> stopPlaceholders = new java.util.HashMap<>();
+                stopPlaceholders.put("id", args[3]);
+                if (multiplierService.stopEventMultiplier(args[3])) {
+                    messageService.send(sender, "multiplier.event_stopped", stopPlaceholders);
+                } else {
+                    messageService.send(sender, "multiplier.event_not_found", stopPlaceholders);
+                }
+                break;
+            case "list":
+                var events = multiplierService.getEventMultipliers();
+                messageService.send(sender, "multiplier.event_list_header");
+                if (events.isEmpty()) {
+                    messageService.send(sender, "multiplier.event_list_empty");
+                    return;
+                }
+                java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
+                long now = System.currentTimeMillis();
+                for (var event : events) {
+                    java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+                    placeholders.put("id", event.id());
+                    placeholders.put("multiplier", String.valueOf(event.multiplier()));
+                    placeholders.put("scope", event.scope());
+                    placeholders.put("reason", event.reason());
+                    placeholders.put("status", event.isActiveAt(now) ? "active" : "starts " + dateFormat.format(new java.util.Date(event.startsAt())));
+                    placeholders.put("ends", event.endsAt() == Long.MAX_VALUE ? "never" : dateFormat.format(new java.util.Date(event.endsAt())));
+                    messageService.send(sender, "multiplier.event_list_entry", placeholders);
+                }
+                break;
+            default:
+                messageService.send(sender, "multiplier.usage_event");
+        }
+    }
+
+    /**
+     * Parses {@code <multiplier> <duration> [scope] [reason]} starting at {@code index} and starts the event
+     * after {@code delayMs}.
+     */
+    private void startEventMultiplier(CommandSender sender, long delayMs, String[] args, int index) {
+        String multiplierStr = args[index];
+        double multiplier;
+        try {
+            multiplier = Double.parseDouble(multiplierStr);
+        } catch (NumberFormatException e) {
+            java.util.Map<String, String> invalidPlaceholders = new java.util.HashMap<>();
+            invalidPlaceholders.put("value", multiplierStr);
+            messageService.send(sender, "multiplier.give_invalid_number", invalidPlaceholders);
+            return;
+        }
+        if (multiplier <= 0) {
+            messageService.send(sender, "multiplier.give_invalid_value");
+            return;
+        }
+        long durationMs = parseDuration(args[index + 1]);
+        if (durationMs < 0) {
+            messageService.send(sender, "multiplier.give_invalid_duration");
+            return;
+        }
+
+        // Scope: global, <shop> or <shop>:<item>
+        String shopId = null;
+        String itemId = null;
+        if (args.length > index + 2 && !args[index + 2].equalsIgnoreCase("global")) {
+            String[] scope = args[index + 2].split(":", 2);
+            if (shopManager.getShop(scope[0]) == null) {
+                java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+                placeholders.put("shop", scope[0]);
+                messageService.send(sender, "multiplier.event_unknown_shop", placeholders);
+                return;
+            }
+            shopId = scope[0];
+            itemId = scope.length > 1 ? scope[1] : null;
+        }
+        String reason = args.length > index + 3
+                ? String.join(" ", Arrays.copyOfRange(args, index + 3, args.length))
+                : "Event";
+
+        long startsAt = System.currentTimeMillis() + delayMs;
+        MultiplierService multiplierService = BShop.getInstance().getMultiplierService();
+        var event = multiplierService.startEventMultiplier(multiplier, startsAt, durationMs, shopId, itemId, reason, sender.getName());
+        if (event == null) {
+            messageService.send(sender, "multiplier.give_invalid_value");
+            return;
+        }
+
+        java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+        placeholders.put("id", event.id());
+        placeholders.put("multiplier", String.valueOf(event.multiplier()));
+        placeholders.put("scope", event.scope());
+        messageService.send(sender, delayMs > 0 ? "multiplier.event_scheduled" : "multiplier.event_started", placeholders);
+        if (delayMs == 0 && event.isGlobal()) {
+            multiplierService.broadcastMultiplierEvent("event", placeholders);
+        }
+    }
+
     private void removeMultiplier(CommandSender sender, String playerName) {
         OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(playerName);
         if (!targetPlayer.hasPlayedBefore()) {
@@ -677,7 +928,7 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        boolean removed = BShop.getInstance().getMultiplierService().removeTemporaryMultiplier(targetPlayer.getUniqueId());
+        boolean removed = BShop.getInstance().getMultiplierService().removeTemporaryMultiplier(targetPlayer.getUniqueId(), sender.getName());
         if (removed) {
             java.util.Map<String, String> successPlaceholders = new java.util.HashMap<>();
             successPlaceholders.put("player", targetPlayer.getName());
@@ -706,7 +957,7 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        boolean expired = BShop.getInstance().getMultiplierService().expireTemporaryMultiplier(targetPlayer.getUniqueId());
+        boolean expired = BShop.getInstance().getMultiplierService().expireTemporaryMultiplier(targetPlayer.getUniqueId(), sender.getName());
         if (expired) {
             java.util.Map<String, String> successPlaceholders = new java.util.HashMap<>();
             successPlaceholders.put("player", targetPlayer.getName());
@@ -818,7 +1069,7 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
     }
 
     private void clearMultipliers(CommandSender sender) {
-        BShop.getInstance().getMultiplierService().clearTemporaryMultipliers();
+        BShop.getInstance().getMultiplierService().clearTemporaryMultipliers(sender.getName());
         messageService.send(sender, "multiplier.clear_success");
         
         // Notify all online players
@@ -841,6 +1092,7 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         messageService.send(sender, "multiplier.help_stats");
         messageService.send(sender, "multiplier.help_history");
         messageService.send(sender, "multiplier.help_tiers");
+        messageService.send(sender, "multiplier.help_event");
     }
 
     private void showMultiplierStats(CommandSender sender) {
@@ -867,7 +1119,7 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         messageService.send(sender, "multiplier.stats_cache", placeholders);
     }
 
-    private void showMultiplierHistory(CommandSender sender, String playerName) {
+    private void showMultiplierHistory(CommandSender sender, String playerName, boolean more) {
         OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(playerName);
         if (!targetPlayer.hasPlayedBefore()) {
             java.util.Map<String, String> placeholders = new java.util.HashMap<>();
@@ -876,31 +1128,59 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        var multiplierService = BShop.getInstance().getMultiplierService();
-        var history = multiplierService.getMultiplierHistory(targetPlayer.getUniqueId());
-        
+        UUID targetUuid = targetPlayer.getUniqueId();
+        MultiplierStore.HistoryCursor before = null;
+        if (more) {
+            HistoryPosition position = historyPositions.get(sender.getName());
+            if (position == null || !position.playerUuid().equals(targetUuid)) {
+                messageService.send(sender, "multiplier.history_no_more");
+                return;
+            }
+            before = position.next();
+        }
+
+        // Loaded in the background; the reply is sent on the main thread
+        BShop.getInstance().getMultiplierService()
+                .getMultiplierHistoryPage(targetUuid, before, HISTORY_PAGE_SIZE)
+                .thenAccept(page -> Bukkit.getScheduler().runTask(BShop.getInstance(),
+                        () -> sendMultiplierHistory(sender, targetPlayer, page)));
+    }
+
+    private void sendMultiplierHistory(CommandSender sender, OfflinePlayer targetPlayer, MultiplierStore.HistoryPage page) {
         java.util.Map<String, String> headerPlaceholders = new java.util.HashMap<>();
         headerPlaceholders.put("player", targetPlayer.getName());
         messageService.send(sender, "multiplier.check_header", headerPlaceholders);
         
-        if (history.isEmpty()) {
+        if (page.entries().isEmpty()) {
+            historyPositions.remove(sender.getName());
             messageService.send(sender, "multiplier.check_temp_none");
             return;
         }
         
-        for (var entry : history) {
+        java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (var entry : page.entries()) {
             java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+            placeholders.put("action", entry.action.toLowerCase());
             placeholders.put("multiplier", String.valueOf(entry.multiplier));
             placeholders.put("reason", entry.reason);
             placeholders.put("granted_by", entry.grantedBy);
-            
-            java.util.Date date = new java.util.Date(entry.timestamp);
-            placeholders.put("date", new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date));
+            placeholders.put("date", dateFormat.format(new java.util.Date(entry.timestamp)));
             
             messageService.send(sender, "multiplier.history_entry", placeholders);
         }
+        
+        if (page.next() != null) {
+            historyPositions.put(sender.getName(), new HistoryPosition(targetPlayer.getUniqueId(), page.next()));
+            java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+            placeholders.put("player", targetPlayer.getName());
+            messageService.send(sender, "multiplier.history_more", placeholders);
+        } else {
+            historyPositions.remove(sender.getName());
+        }
     }
 
+    private record HistoryPosition(UUID playerUuid, MultiplierStore.HistoryCursor next) {}
+
     // Utility methods
     private long parseDuration(String duration) {
         if (duration.equalsIgnoreCase("permanent") || duration.equalsIgnoreCase("perm")) {
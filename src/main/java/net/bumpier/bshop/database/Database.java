@@ -1,6 +1,11 @@
 package net.bumpier.bshop.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -23,14 +28,125 @@ public interface Database {
 
     /**
      * Asynchronously retrieves a connection from the pool or source.
+     * Connections may be read-only (SQLite); use {@link #write(SqlWork)} for anything that modifies data.
      *
      * @return A CompletableFuture that will complete with a SQL Connection.
      */
     CompletableFuture<Connection> getConnection();
 
+    /**
+     * Like {@link #getConnection()}, but for reads that tolerate replication lag, such as history,
+     * analytics and leaderboards; the connection may come from a read replica. Stock, limits and anything
+     * read to decide a write must use {@link #getConnection()}.
+     *
+     * @param sessionPlayer The player whose data is read, or null. Their reads stay on the primary for a
+     *                      short while after {@link #recordWrite(UUID)}, so they see their own writes.
+     * @return A CompletableFuture that will complete with a SQL Connection.
+     */
+    default CompletableFuture<Connection> getReplicaConnection(UUID sessionPlayer) {
+        return getConnection();
+    }
+
+    /**
+     * Borrows a connection from {@link #getConnection()}, runs {@code work} on it and releases it, all in
+     * the same database task, so the work never runs on the calling thread.
+     *
+     * @param work The statements to run; they must not close the connection.
+     * @return A CompletableFuture that completes with the work's result.
+     */
+    <T> CompletableFuture<T> withConnection(SqlWork<T> work);
+
+    /**
+     * Like {@link #withConnection(SqlWork)}, but on a connection from {@link #getReplicaConnection(UUID)}.
+     *
+     * @param sessionPlayer The player whose data is read, or null.
+     * @param work The statements to run; they must not close the connection.
+     * @return A CompletableFuture that completes with the work's result.
+     */
+    default <T> CompletableFuture<T> withReplicaConnection(UUID sessionPlayer, SqlWork<T> work) {
+        return withConnection(work);
+    }
+
+    /**
+     * Notes that data of {@code player} was just committed; see {@link #getReplicaConnection(UUID)}.
+     *
+     * @param player The player whose data was written.
+     */
+    default void recordWrite(UUID player) {
+    }
+
+    /**
+     * Runs {@code work} in a transaction on a writable connection, committing when it returns and rolling
+     * back when it throws. The work must not commit, roll back or change the auto-commit mode itself.
+     * Implementations may run several queued writes in one transaction.
+     *
+     * @param work The statements to run.
+     * @return A CompletableFuture that completes with the work's result once it is committed.
+     */
+    default <T> CompletableFuture<T> write(SqlWork<T> work) {
+        return withConnection(connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /**
+     * Prepares {@code sql} on a connection obtained from this database, reusing the statement if the
+     * connection prepared the same SQL before. The statement belongs to the connection: do not close it.
+     *
+     * @param connection A connection from {@link #getConnection()} or {@link #write(SqlWork)}.
+     * @param sql The statement text.
+     * @return The prepared statement with no parameters or batch set.
+     */
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException;
+
+    /**
+     * Hands a connection obtained from {@link #getConnection()} back once the caller is done with it.
+     * Pooled implementations return it to the pool; the default simply closes it.
+     *
+     * @param connection The connection to release, may be null.
+     */
+    default void releaseConnection(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Already closed or broken, nothing left to release
+        }
+    }
+
     /**
      * Initializes the required database tables asynchronously.
      * This should be called after a successful connection.
      */
     void createTables();
-}
\ No newline at end of file
+
+    /**
+     * Pool and executor statistics, such as queue depth and connection wait times.
+     *
+     * @return A map of statistic names to values.
+     */
+    default Map<String, Object> getStats() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Statements run against a connection by {@link #write(SqlWork)}.
+     */
+    @FunctionalInterface
+    interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
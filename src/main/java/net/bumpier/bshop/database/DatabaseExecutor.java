@@ -0,0 +1,200 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking JDBC work for a {@link Database}, so it never lands on the common ForkJoinPool that
+ * parallel streams and other plugins share.
+ * <p>
+ * In {@code platform} mode a fixed pool of {@code threads} threads runs the tasks. In {@code virtual} mode
+ * every task gets its own virtual thread and a semaphore lets at most {@code threads} run at once. Either
+ * way at most {@code queue_capacity} tasks may wait; further tasks are rejected, which completes their
+ * future exceptionally instead of letting the queue grow without bound.
+ */
+final class DatabaseExecutor implements Executor {
+
+    private final String mode;
+    private final int threads;
+    private final int queueCapacity;
+    private final ExecutorService delegate;
+    // Virtual mode only; a platform pool is limited by its thread count
+    private final Semaphore permits;
+
+    // Metrics
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong(0);
+    private final AtomicLong connectionWaits = new AtomicLong(0);
+    private final AtomicLong totalConnectionWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxConnectionWaitNanos = new AtomicLong(0);
+
+    private DatabaseExecutor(String mode, int threads, int queueCapacity) {
+        this.mode = mode;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        if ("virtual".equals(mode)) {
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bShop-DB-v", 0).factory());
+            this.permits = new Semaphore(threads);
+        } else {
+            AtomicInteger counter = new AtomicInteger(0);
+            this.delegate = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "bShop-DB-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.permits = null;
+        }
+    }
+
+    /**
+     * Reads {@code performance.database.executor}. Threads default to the connection pool size, since more
+     * concurrent tasks would only wait for a connection.
+     */
+    static DatabaseExecutor create(BShop plugin, int defaultThreads) {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("performance.database.executor");
+        String mode = config != null ? config.getString("mode", "platform") : "platform";
+        mode = mode == null ? "platform" : mode.toLowerCase();
+        if (!mode.equals("platform") && !mode.equals("virtual")) {
+            plugin.getLogger().warning("Unknown performance.database.executor.mode '" + mode + "'; using platform threads.");
+            mode = "platform";
+        }
+        int threads = Math.max(1, config != null ? config.getInt("threads", defaultThreads) : defaultThreads);
+        int queueCapacity = Math.max(1, config != null ? config.getInt("queue_capacity", 1000) : 1000);
+        return new DatabaseExecutor(mode, threads, queueCapacity);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Database executor queue is full (" + queueCapacity + " tasks)");
+        }
+        long submittedAt = System.nanoTime();
+        try {
+            delegate.execute(() -> run(task, submittedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task, long submittedAt) {
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+        try {
+            queued.decrementAndGet();
+            recordMax(maxQueueWaitNanos, totalQueueWaitNanos, System.nanoTime() - submittedAt);
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Runs {@code supplier} on this executor; a rejected task yields a failed future.
+     */
+    <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, this);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Borrows a connection, runs {@code work} on it and releases it, all in one task, so the work never
+     * runs on the thread that asked for it.
+     */
+    <T> CompletableFuture<T> withConnection(Supplier<Connection> borrow, Database.SqlWork<T> work, Consumer<Connection> release) {
+        return supply(() -> {
+            Connection conn = borrow.get();
+            try {
+                return work.run(conn);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            } finally {
+                release.accept(conn);
+            }
+        });
+    }
+
+    /**
+     * Records how long a task waited for a pooled connection.
+     */
+    void recordConnectionWait(long nanos) {
+        connectionWaits.incrementAndGet();
+        recordMax(maxConnectionWaitNanos, totalConnectionWaitNanos, nanos);
+    }
+
+    private static void recordMax(AtomicLong max, AtomicLong total, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Lets running tasks finish for a few seconds, then interrupts them.
+     */
+    void shutdown() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(5, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long done = completed.get();
+        long waits = connectionWaits.get();
+        stats.put("db_executor_mode", mode);
+        stats.put("db_executor_threads", threads);
+        stats.put("db_executor_queue_depth", queued.get());
+        stats.put("db_executor_queue_capacity", queueCapacity);
+        stats.put("db_executor_active", active.get());
+        stats.put("db_executor_completed", done);
+        stats.put("db_executor_rejected", rejected.get());
+        stats.put("db_executor_avg_wait_ms", done > 0 ? totalQueueWaitNanos.get() / 1_000_000.0 / done : 0.0);
+        stats.put("db_executor_max_wait_ms", maxQueueWaitNanos.get() / 1_000_000.0);
+        stats.put("db_connection_avg_wait_ms", waits > 0 ? totalConnectionWaitNanos.get() / 1_000_000.0 / waits : 0.0);
+        stats.put("db_connection_max_wait_ms", maxConnectionWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+}
@@ -35,6 +35,13 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Get database pool and executor statistics
+     */
+    public java.util.Map<String, Object> getStats() {
+        return database != null ? database.getStats() : java.util.Collections.emptyMap();
+    }
+
     public Database getDatabase() {
         return this.database;
     }
@@ -0,0 +1,38 @@
+package net.bumpier.bshop.database;
+
+/**
+ * Sales of one item over a time window, summed from {@code bshop_sales_rollup}.
+ *
+ * @param moneyIn       paid by players for purchases
+ * @param moneyOut      paid to players for sales
+ * @param uniquePlayers estimated distinct players over the whole window, see {@link PlayerSketch}
+ */
+public record ItemSales(String shopId, String itemId, long unitsBought, long unitsSold, double moneyIn, double moneyOut,
+                        long transactions, long uniquePlayers) {
+
+    /**
+     * What {@code /shop stats top} ranks items by.
+     */
+    public enum Metric {
+        BOUGHT("units_bought"),
+        SOLD("units_sold"),
+        MONEY_IN("money_in"),
+        MONEY_OUT("money_out"),
+        TRANSACTIONS("transactions"),
+        // Merged from the per-row player sketches, so it has no column to sum
+        PLAYERS(null);
+
+        private final String column;
+
+        Metric(String column) {
+            this.column = column;
+        }
+
+        /**
+         * The summed column to rank by; null for {@link #PLAYERS}.
+         */
+        public String column() {
+            return column;
+        }
+    }
+}
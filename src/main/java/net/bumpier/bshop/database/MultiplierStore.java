@@ -0,0 +1,561 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.util.EventMultiplier;
+import net.bumpier.bshop.util.MultiplierService.MultiplierHistoryEntry;
+import net.bumpier.bshop.util.MultiplierService.TemporaryMultiplierData;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Persists temporary multipliers in {@code bshop_multipliers} so paid boosters survive restarts, and
+ * keeps an append-only log of every grant, removal, expiry and clear in {@code bshop_multiplier_history}.
+ * Event multipliers started by command are kept in {@code bshop_multiplier_events}.
+ * <p>
+ * Writes are queued and flushed by a single background thread in batches, one transaction per flush,
+ * so granting never waits for the database. A batch that fails goes back to the front of the queue and
+ * is retried a few seconds later. Loads run on the same thread after a flush, so a player
+ * always sees grants that were made just before they joined.
+ * <p>
+ * History is read newest first with keyset pagination on (created_at, id), which the
+ * (player_uuid, created_at) index serves directly no matter how long a player's history is.
+ */
+public class MultiplierStore extends SqlRepository {
+
+    private static final String INSERT_GRANT =
+            "INSERT INTO bshop_multipliers (player_uuid, multiplier, expires_at, reason, granted_by, granted_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_PLAYER = "DELETE FROM bshop_multipliers WHERE player_uuid = ?";
+    private static final String DELETE_ALL = "DELETE FROM bshop_multipliers";
+    private static final String PRUNE = "DELETE FROM bshop_multipliers WHERE expires_at > 0 AND expires_at <= ?";
+    private static final String GRANT_KEY = "player_uuid = ? AND expires_at = ? AND granted_at = ?";
+    private static final String DELETE_GRANT = "DELETE FROM bshop_multipliers WHERE " + GRANT_KEY;
+    private static final String INSERT_HISTORY =
+            "INSERT INTO bshop_multiplier_history (player_uuid, action, multiplier, reason, actor, expires_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_HISTORY_CLEAR =
+            "INSERT INTO bshop_multiplier_history (player_uuid, action, multiplier, reason, actor, expires_at, created_at) " +
+            "SELECT DISTINCT player_uuid, ?, 0, ?, ?, 0, ? FROM bshop_multipliers";
+    // Expiries are logged from the rows about to be deleted, so each grant gets exactly one entry
+    private static final String INSERT_HISTORY_EXPIRED_SELECT =
+            "INSERT INTO bshop_multiplier_history (player_uuid, action, multiplier, reason, actor, expires_at, created_at) " +
+            "SELECT player_uuid, ?, multiplier, reason, ?, expires_at, expires_at FROM bshop_multipliers WHERE ";
+    private static final String INSERT_HISTORY_EXPIRED = INSERT_HISTORY_EXPIRED_SELECT + "expires_at > 0 AND expires_at <= ?";
+    private static final String INSERT_HISTORY_GRANT_EXPIRED = INSERT_HISTORY_EXPIRED_SELECT + GRANT_KEY;
+    private static final String INSERT_EVENT =
+            "INSERT INTO bshop_multiplier_events (event_id, multiplier, shop_id, item_id, starts_at, ends_at, reason, created_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_EVENT = "DELETE FROM bshop_multiplier_events WHERE event_id = ?";
+
+    private static final String GRANT_COLUMNS = "player_uuid, multiplier, expires_at, reason, granted_by, granted_at";
+    private static final Query<PlayerGrant> ACTIVE_GRANTS = new Query<>("SELECT " + GRANT_COLUMNS + " FROM bshop_multipliers " +
+            "WHERE player_uuid = ? AND (expires_at = 0 OR expires_at > ?) ORDER BY granted_at", MultiplierStore::mapGrant);
+    private static final Query<EventMultiplier> ACTIVE_EVENTS = new Query<>(
+            "SELECT event_id, multiplier, shop_id, item_id, starts_at, ends_at, reason, created_by FROM bshop_multiplier_events WHERE ends_at > ?",
+            rs -> new EventMultiplier(rs.getString("event_id"), rs.getDouble("multiplier"), rs.getString("shop_id"),
+                    rs.getString("item_id"), rs.getLong("starts_at"), rs.getLong("ends_at"),
+                    rs.getString("reason"), rs.getString("created_by")));
+    private static final String HISTORY_SELECT = "SELECT id, action, multiplier, reason, actor, expires_at, created_at FROM bshop_multiplier_history WHERE player_uuid = ?";
+    private static final RowMapper<MultiplierHistoryEntry> HISTORY_MAPPER = rs -> new MultiplierHistoryEntry(rs.getLong("id"),
+            rs.getString("action"), rs.getLong("created_at"), rs.getDouble("multiplier"), rs.getString("reason"), rs.getString("actor"),
+            rs.getLong("expires_at"));
+    private static final Query<MultiplierHistoryEntry> HISTORY_FIRST = new Query<>(
+            HISTORY_SELECT + " ORDER BY created_at DESC, id DESC LIMIT ?", HISTORY_MAPPER);
+    private static final Query<MultiplierHistoryEntry> HISTORY_BEFORE = new Query<>(
+            HISTORY_SELECT + " AND (created_at < ? OR (created_at = ? AND id < ?)) ORDER BY created_at DESC, id DESC LIMIT ?", HISTORY_MAPPER);
+
+    private static final long RETRY_DELAY_MS = 5000L;
+    private static final String EXPIRED_ACTOR = "Expired";
+
+    private final BShop plugin;
+    private final long batchDelayMs;
+    private final boolean available;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-MultiplierWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Deque<Write> pending = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong rowsWritten = new AtomicLong(0);
+    private final AtomicLong batchesWritten = new AtomicLong(0);
+
+    public MultiplierStore(BShop plugin, Database database, long batchDelayMs) {
+        super(database);
+        this.plugin = plugin;
+        this.batchDelayMs = Math.max(0, batchDelayMs);
+        this.available = createTable();
+    }
+
+    private boolean createTable() {
+        try {
+            createTable("bshop_multipliers",
+                    "player_uuid VARCHAR(36) NOT NULL," +
+                    "multiplier DOUBLE NOT NULL," +
+                    "expires_at BIGINT NOT NULL," +
+                    "reason VARCHAR(255) NOT NULL," +
+                    "granted_by VARCHAR(64) NOT NULL," +
+                    "granted_at BIGINT NOT NULL",
+                    new SqlDialect.Index("idx_bshop_multipliers_player", "player_uuid"),
+                    new SqlDialect.Index("idx_bshop_multipliers_expires", "expires_at"));
+            createTable("bshop_multiplier_history",
+                    "id " + dialect.autoIncrementKey() + "," +
+                    "player_uuid VARCHAR(36) NOT NULL," +
+                    "action VARCHAR(16) NOT NULL," +
+                    "multiplier DOUBLE NOT NULL," +
+                    "reason VARCHAR(255) NOT NULL," +
+                    "actor VARCHAR(64) NOT NULL," +
+                    "expires_at BIGINT NOT NULL," +
+                    "created_at BIGINT NOT NULL",
+                    new SqlDialect.Index("idx_bshop_multiplier_history_player", "player_uuid, created_at"));
+            createTable("bshop_multiplier_events",
+                    "event_id VARCHAR(64) NOT NULL PRIMARY KEY," +
+                    "multiplier DOUBLE NOT NULL," +
+                    "shop_id VARCHAR(64)," +
+                    "item_id VARCHAR(64)," +
+                    "starts_at BIGINT NOT NULL," +
+                    "ends_at BIGINT NOT NULL," +
+                    "reason VARCHAR(255) NOT NULL," +
+                    "created_by VARCHAR(64) NOT NULL");
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not create the multiplier table; temporary multipliers will not survive restarts.", e);
+            return false;
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void saveGrant(UUID playerUuid, TemporaryMultiplierData data) {
+        enqueue(new Write(WriteType.INSERT, playerUuid, data, 0, null, null, null));
+    }
+
+    /**
+     * Deletes every stored grant of a player (remove and expire both end all of a player's grants).
+     */
+    public void deletePlayer(UUID playerUuid) {
+        enqueue(new Write(WriteType.DELETE_PLAYER, playerUuid, null, 0, null, null, null));
+    }
+
+    /**
+     * Deletes every stored grant, logging a clear in the history of each player that had one.
+     */
+    public void deleteAll(String actor) {
+        long now = System.currentTimeMillis();
+        enqueue(new Write(WriteType.HISTORY_CLEAR, null, null, now, HistoryAction.CLEAR, actor, null));
+        enqueue(new Write(WriteType.DELETE_ALL, null, null, 0, null, null, null));
+    }
+
+    /**
+     * Deletes every grant that expired before {@code now}, logging an expiry for each first, so grants
+     * that ran out while their player was offline still show up in the history.
+     */
+    public void pruneExpired(long now) {
+        enqueue(new Write(WriteType.HISTORY_EXPIRED, null, null, now, HistoryAction.EXPIRE, EXPIRED_ACTOR, null));
+        enqueue(new Write(WriteType.PRUNE, null, null, now, null, null, null));
+    }
+
+    /**
+     * Logs the expiry of one grant and deletes it. Does nothing if {@link #pruneExpired} got to it first.
+     */
+    public void expireGrant(UUID playerUuid, TemporaryMultiplierData data) {
+        enqueue(new Write(WriteType.HISTORY_GRANT_EXPIRED, playerUuid, data, 0, HistoryAction.EXPIRE, EXPIRED_ACTOR, null));
+        enqueue(new Write(WriteType.DELETE_GRANT, playerUuid, data, 0, null, null, null));
+    }
+
+    /**
+     * Appends a history entry for one grant.
+     */
+    public void logHistory(UUID playerUuid, HistoryAction action, TemporaryMultiplierData data, String actor) {
+        enqueue(new Write(WriteType.HISTORY, playerUuid, data, System.currentTimeMillis(), action, actor, null));
+    }
+
+    public void saveEvent(EventMultiplier event) {
+        enqueue(new Write(WriteType.EVENT_SAVE, null, null, 0, null, null, event));
+    }
+
+    public void deleteEvent(EventMultiplier event) {
+        enqueue(new Write(WriteType.EVENT_DELETE, null, null, 0, null, null, event));
+    }
+
+    /**
+     * Loads every stored event multiplier that has not ended. Blocks; only called while enabling.
+     */
+    public List<EventMultiplier> loadEvents() {
+        List<EventMultiplier> events = new ArrayList<>();
+        if (!available) {
+            return events;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            events.addAll(read(conn -> list(conn, ACTIVE_EVENTS, statement -> statement.setLong(1, now))).join());
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load event multipliers.", e);
+        }
+        return events;
+    }
+
+    /**
+     * Reads one page of a player's history, newest first.
+     *
+     * @param before cursor returned with the previous page, or null for the newest entries
+     */
+    public CompletableFuture<HistoryPage> loadHistory(UUID playerUuid, HistoryCursor before, int limit) {
+        if (!available) {
+            return CompletableFuture.completedFuture(new HistoryPage(new ArrayList<>(), null));
+        }
+        CompletableFuture<HistoryPage> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                future.complete(readHistory(playerUuid, before, Math.max(1, limit)));
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(new HistoryPage(new ArrayList<>(), null));
+        }
+        return future;
+    }
+
+    /**
+     * Loads a player's active grants after every queued write has been flushed.
+     */
+    public CompletableFuture<List<TemporaryMultiplierData>> loadActive(UUID playerUuid) {
+        if (!available) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        CompletableFuture<List<TemporaryMultiplierData>> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                future.complete(load(playerUuid));
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(new ArrayList<>());
+        }
+        return future;
+    }
+
+    /**
+     * Loads the active grants of several players in as few queries as possible, after every queued write
+     * has been flushed. Players without grants are missing from the map.
+     */
+    public CompletableFuture<Map<UUID, List<TemporaryMultiplierData>>> loadActive(Collection<UUID> playerUuids) {
+        if (!available || playerUuids.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        List<String> ids = new ArrayList<>();
+        for (UUID playerUuid : new LinkedHashSet<>(playerUuids)) {
+            ids.add(playerUuid.toString());
+        }
+        CompletableFuture<Map<UUID, List<TemporaryMultiplierData>>> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                future.complete(loadAll(ids));
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(new HashMap<>());
+        }
+        return future;
+    }
+
+    private void enqueue(Write write) {
+        if (!available) {
+            return;
+        }
+        pending.add(write);
+        // One flush per burst; everything queued until it runs goes into the same transaction
+        scheduleFlush(batchDelayMs);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Write> batch = new ArrayList<>();
+        Write write;
+        while ((write = pending.poll()) != null) {
+            batch.add(write);
+        }
+
+        try {
+            write(conn -> {
+                // Consecutive writes of the same kind share one JDBC batch; order between kinds is kept
+                PreparedStatement open = null;
+                WriteType openType = null;
+                for (Write next : batch) {
+                    if (next.type() != openType) {
+                        if (open != null) {
+                            open.executeBatch();
+                        }
+                        openType = next.type();
+                        open = database.prepare(conn, sqlOf(openType));
+                    }
+                    bind(open, next);
+                    open.addBatch();
+                }
+                if (open != null) {
+                    open.executeBatch();
+                }
+                return null;
+            }).join();
+            rowsWritten.addAndGet(batch.size());
+            batchesWritten.incrementAndGet();
+            for (Write written : batch) {
+                if (written.playerUuid() != null) {
+                    database.recordWrite(written.playerUuid());
+                }
+            }
+        } catch (Exception e) {
+            // The transaction rolled back; put the batch back in front of anything queued since, in order
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                pending.addFirst(batch.get(i));
+            }
+            plugin.getLogger().log(Level.WARNING, "Could not save " + batch.size() + " temporary multiplier change(s); retrying in "
+                    + RETRY_DELAY_MS / 1000 + " seconds.", e);
+            scheduleFlush(RETRY_DELAY_MS);
+        }
+    }
+
+    private static String sqlOf(WriteType type) {
+        return switch (type) {
+            case INSERT -> INSERT_GRANT;
+            case DELETE_PLAYER -> DELETE_PLAYER;
+            case DELETE_ALL -> DELETE_ALL;
+            case PRUNE -> PRUNE;
+            case DELETE_GRANT -> DELETE_GRANT;
+            case HISTORY -> INSERT_HISTORY;
+            case HISTORY_EXPIRED -> INSERT_HISTORY_EXPIRED;
+            case HISTORY_GRANT_EXPIRED -> INSERT_HISTORY_GRANT_EXPIRED;
+            case HISTORY_CLEAR -> INSERT_HISTORY_CLEAR;
+            case EVENT_SAVE -> INSERT_EVENT;
+            case EVENT_DELETE -> DELETE_EVENT;
+        };
+    }
+
+    private static void bind(PreparedStatement statement, Write write) throws SQLException {
+        switch (write.type()) {
+            case INSERT -> {
+                TemporaryMultiplierData data = write.data();
+                statement.setString(1, write.playerUuid().toString());
+                statement.setDouble(2, data.getMultiplier());
+                statement.setLong(3, data.getExpirationTime());
+                statement.setString(4, data.getReason());
+                statement.setString(5, data.getGrantedBy());
+                statement.setLong(6, data.getGrantedAt());
+            }
+            case DELETE_PLAYER -> statement.setString(1, write.playerUuid().toString());
+            case PRUNE -> statement.setLong(1, write.time());
+            case DELETE_GRANT -> bindGrantKey(statement, 1, write);
+            case HISTORY -> {
+                TemporaryMultiplierData data = write.data();
+                statement.setString(1, write.playerUuid().toString());
+                statement.setString(2, write.action().name());
+                statement.setDouble(3, data.getMultiplier());
+                statement.setString(4, data.getReason());
+                statement.setString(5, actorOf(write));
+                statement.setLong(6, data.getExpirationTime());
+                statement.setLong(7, write.time());
+            }
+            case HISTORY_EXPIRED -> {
+                statement.setString(1, write.action().name());
+                statement.setString(2, actorOf(write));
+                statement.setLong(3, write.time());
+            }
+            case HISTORY_GRANT_EXPIRED -> {
+                statement.setString(1, write.action().name());
+                statement.setString(2, actorOf(write));
+                bindGrantKey(statement, 3, write);
+            }
+            case HISTORY_CLEAR -> {
+                statement.setString(1, write.action().name());
+                statement.setString(2, "Cleared all temporary multipliers");
+                statement.setString(3, actorOf(write));
+                statement.setLong(4, write.time());
+            }
+            case EVENT_SAVE -> {
+                EventMultiplier event = write.event();
+                statement.setString(1, event.id());
+                statement.setDouble(2, event.multiplier());
+                statement.setString(3, event.shopId());
+                statement.setString(4, event.itemId());
+                statement.setLong(5, event.startsAt());
+                statement.setLong(6, event.endsAt());
+                statement.setString(7, event.reason());
+                statement.setString(8, event.createdBy());
+            }
+            case EVENT_DELETE -> statement.setString(1, write.event().id());
+            case DELETE_ALL -> {
+                // No parameters
+            }
+        }
+    }
+
+    private static void bindGrantKey(PreparedStatement statement, int index, Write write) throws SQLException {
+        statement.setString(index, write.playerUuid().toString());
+        statement.setLong(index + 1, write.data().getExpirationTime());
+        statement.setLong(index + 2, write.data().getGrantedAt());
+    }
+
+    private List<TemporaryMultiplierData> load(UUID playerUuid) {
+        List<TemporaryMultiplierData> grants = new ArrayList<>();
+        try {
+            long now = System.currentTimeMillis();
+            for (PlayerGrant grant : read(conn -> list(conn, ACTIVE_GRANTS, statement -> {
+                statement.setString(1, playerUuid.toString());
+                statement.setLong(2, now);
+            })).join()) {
+                grants.add(grant.data());
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load temporary multipliers of " + playerUuid + ".", e);
+        }
+        return grants;
+    }
+
+    private Map<UUID, List<TemporaryMultiplierData>> loadAll(List<String> playerIds) {
+        Map<UUID, List<TemporaryMultiplierData>> grants = new HashMap<>();
+        try {
+            long now = System.currentTimeMillis();
+            read(conn -> {
+                for (List<String> chunk : chunksForIn(playerIds, 1)) {
+                    int size = paddedInSize(chunk.size(), 1);
+                    Query<PlayerGrant> query = new Query<>("SELECT " + GRANT_COLUMNS + " FROM bshop_multipliers WHERE player_uuid IN (" +
+                            SqlDialect.placeholders(size) + ") AND (expires_at = 0 OR expires_at > ?) ORDER BY granted_at", MultiplierStore::mapGrant);
+                    for (PlayerGrant grant : list(conn, query, statement -> {
+                        for (int i = 0; i < size; i++) {
+                            // Padding repeats the last id, which does not change the result
+                            statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                        }
+                        statement.setLong(size + 1, now);
+                    })) {
+                        grants.computeIfAbsent(grant.playerUuid(), k -> new ArrayList<>()).add(grant.data());
+                    }
+                }
+                return null;
+            }).join();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load the temporary multipliers of " + playerIds.size() + " player(s).", e);
+        }
+        return grants;
+    }
+
+    private static PlayerGrant mapGrant(ResultSet rs) throws SQLException {
+        return new PlayerGrant(UUID.fromString(rs.getString("player_uuid")), new TemporaryMultiplierData(rs.getDouble("multiplier"),
+                rs.getLong("expires_at"), rs.getString("reason"), rs.getString("granted_by"), rs.getLong("granted_at")));
+    }
+
+    private static String actorOf(Write write) {
+        return write.actor() != null ? write.actor() : "Console";
+    }
+
+    private HistoryPage readHistory(UUID playerUuid, HistoryCursor before, int limit) {
+        List<MultiplierHistoryEntry> entries = new ArrayList<>(limit);
+        HistoryCursor next = null;
+        try {
+            // One extra row tells whether an older page exists
+            List<MultiplierHistoryEntry> rows = readReplica(playerUuid, conn -> list(conn, before != null ? HISTORY_BEFORE : HISTORY_FIRST, statement -> {
+                int index = 1;
+                statement.setString(index++, playerUuid.toString());
+                if (before != null) {
+                    statement.setLong(index++, before.createdAt());
+                    statement.setLong(index++, before.createdAt());
+                    statement.setLong(index++, before.id());
+                }
+                statement.setInt(index, limit + 1);
+            })).join();
+            entries.addAll(rows.subList(0, Math.min(limit, rows.size())));
+            if (rows.size() > limit) {
+                MultiplierHistoryEntry last = entries.get(entries.size() - 1);
+                next = new HistoryCursor(last.timestamp, last.id);
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load the multiplier history of " + playerUuid + ".", e);
+        }
+        return new HistoryPage(entries, next);
+    }
+
+    /**
+     * Flushes queued writes and stops the writer thread; waits a few seconds at most.
+     */
+    public void shutdown() {
+        try {
+            writer.execute(this::flush);
+        } catch (RejectedExecutionException ignored) {
+            // Already shut down
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    public int getPendingWrites() {
+        return pending.size();
+    }
+
+    public enum HistoryAction { GRANT, REMOVE, EXPIRE, CLEAR }
+
+    /**
+     * Position after the last entry of a history page; pass it back to read the next (older) page.
+     */
+    public record HistoryCursor(long createdAt, long id) {}
+
+    /**
+     * One page of history, newest first; {@code next} is null on the last page.
+     */
+    public record HistoryPage(List<MultiplierHistoryEntry> entries, HistoryCursor next) {}
+
+    private record PlayerGrant(UUID playerUuid, TemporaryMultiplierData data) {}
+
+    private enum WriteType {
+        INSERT, DELETE_PLAYER, DELETE_ALL, PRUNE, DELETE_GRANT, HISTORY, HISTORY_CLEAR, HISTORY_EXPIRED, HISTORY_GRANT_EXPIRED,
+        EVENT_SAVE, EVENT_DELETE
+    }
+
+    private record Write(WriteType type, UUID playerUuid, TemporaryMultiplierData data, long time, HistoryAction action, String actor,
+                         EventMultiplier event) {}
+}
@@ -2,23 +2,50 @@ package net.bumpier.bshop.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import net.bumpier.bshop.BShop;
-import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 public class MySQLDatabase implements Database {
 
     private final BShop plugin;
+    private final DatabaseExecutor executor;
+    // Per borrowed connection; the driver's cachePrepStmts keeps statements across borrows
+    private final StatementCache statements = new StatementCache();
     private HikariDataSource dataSource;
+    // Read-only pools for reads that tolerate replication lag; empty without database.mysql.replicas
+    private volatile List<HikariDataSource> replicas = Collections.emptyList();
+    private final AtomicInteger nextReplica = new AtomicInteger(0);
+    // When each player's data was last committed, so their own reads can stay on the primary
+    private final Map<UUID, Long> lastWrites = new ConcurrentHashMap<>();
+    private long readYourWritesMs = 5000;
+
+    // Metrics
+    private final AtomicLong replicaReads = new AtomicLong(0);
+    private final AtomicLong sessionPrimaryReads = new AtomicLong(0);
+    private final AtomicLong replicaFallbacks = new AtomicLong(0);
+    private final AtomicLong lastReplicaWarning = new AtomicLong(0);
 
     public MySQLDatabase(BShop plugin) {
         this.plugin = plugin;
+        this.executor = DatabaseExecutor.create(plugin, plugin.getConfig().getInt("performance.database.connection_pool_size", 20));
     }
 
     @Override
@@ -28,25 +55,69 @@ public class MySQLDatabase implements Database {
             plugin.getLogger().severe("MySQL configuration section is missing from config.yml!");
             return;
         }
+        this.readYourWritesMs = Math.max(0, dbConfig.getLong("read_your_writes_ms", 5000));
+
+        ConfigurationSection perfConfig = plugin.getConfig().getConfigurationSection("performance.database");
+        int poolSize = perfConfig != null ? perfConfig.getInt("connection_pool_size", 20) : 20;
+        HikariConfig config = createPoolConfig(dbConfig.getString("host"), dbConfig.getInt("port"), dbConfig.getString("database"),
+                dbConfig.getString("username"), dbConfig.getString("password"), poolSize, perfConfig);
+        config.setPoolName("bShop-Primary");
+        this.dataSource = new HikariDataSource(config);
+        plugin.getLogger().info("MySQL connection pool established with " + config.getMaximumPoolSize() + " connections.");
 
+        // Optional read replicas; every field but the host defaults to the primary's
+        int replicaPoolSize = perfConfig != null ? perfConfig.getInt("replica_pool_size", poolSize) : poolSize;
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (Map<?, ?> replica : dbConfig.getMapList("replicas")) {
+            Object host = replica.get("host");
+            if (host == null) {
+                plugin.getLogger().warning("Ignoring a database.mysql.replicas entry without a host.");
+                continue;
+            }
+            Object port = replica.get("port");
+            HikariConfig replicaConfig = createPoolConfig(host.toString(),
+                    port instanceof Number ? ((Number) port).intValue() : dbConfig.getInt("port"),
+                    valueOr(replica, "database", dbConfig.getString("database")),
+                    valueOr(replica, "username", dbConfig.getString("username")),
+                    valueOr(replica, "password", dbConfig.getString("password")), replicaPoolSize, perfConfig);
+            replicaConfig.setPoolName("bShop-Replica-" + (pools.size() + 1));
+            replicaConfig.setReadOnly(true);
+            try {
+                pools.add(new HikariDataSource(replicaConfig));
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not connect to read replica " + host + "; its reads go to the primary.", e);
+            }
+        }
+        this.replicas = pools;
+        if (!pools.isEmpty()) {
+            plugin.getLogger().info("MySQL read replica pools established: " + pools.size() + ".");
+        }
+    }
+
+    private static String valueOr(Map<?, ?> map, String key, String fallback) {
+        Object value = map.get(key);
+        return value != null ? value.toString() : fallback;
+    }
+
+    private HikariConfig createPoolConfig(String host, int port, String database, String username, String password, int poolSize,
+                                          ConfigurationSection perfConfig) {
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://" + dbConfig.getString("host") + ":" + dbConfig.getInt("port") + "/" + dbConfig.getString("database"));
-        config.setUsername(dbConfig.getString("username"));
-        config.setPassword(dbConfig.getString("password"));
+        config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database);
+        config.setUsername(username);
+        config.setPassword(password);
         
         // Performance-optimized connection pool settings
-        ConfigurationSection perfConfig = plugin.getConfig().getConfigurationSection("performance.database");
         if (perfConfig != null) {
-            config.setMaximumPoolSize(perfConfig.getInt("connection_pool_size", 20));
-            config.setMinimumIdle(perfConfig.getInt("minimum_idle", 5));
+            config.setMaximumPoolSize(poolSize);
+            config.setMinimumIdle(Math.min(poolSize, perfConfig.getInt("minimum_idle", 5)));
             config.setConnectionTimeout(perfConfig.getLong("connection_timeout", 30000));
             config.setIdleTimeout(perfConfig.getLong("idle_timeout", 600000));
             config.setMaxLifetime(perfConfig.getLong("max_lifetime", 1800000));
             config.setLeakDetectionThreshold(perfConfig.getLong("leak_detection_threshold", 60000));
         } else {
             // Default high-performance settings
-            config.setMaximumPoolSize(20);
-            config.setMinimumIdle(5);
+            config.setMaximumPoolSize(poolSize);
+            config.setMinimumIdle(Math.min(poolSize, 5));
             config.setConnectionTimeout(30000);
             config.setIdleTimeout(600000);
             config.setMaxLifetime(1800000);
@@ -66,13 +137,17 @@ public class MySQLDatabase implements Database {
         config.addDataSourceProperty("maintainTimeStats", "false");
         config.addDataSourceProperty("useSSL", "false");
         config.addDataSourceProperty("allowPublicKeyRetrieval", "true");
-
-        this.dataSource = new HikariDataSource(config);
-        plugin.getLogger().info("MySQL connection pool established with " + config.getMaximumPoolSize() + " connections.");
+        return config;
     }
 
     @Override
     public void disconnect() {
+        executor.shutdown();
+        for (HikariDataSource replica : replicas) {
+            if (!replica.isClosed()) {
+                replica.close();
+            }
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             plugin.getLogger().info("MySQL connection pool closed.");
@@ -81,23 +156,112 @@ public class MySQLDatabase implements Database {
 
     @Override
     public CompletableFuture<Connection> getConnection() {
-        return CompletableFuture.supplyAsync(() -> {
+        return executor.supply(this::borrowPrimary);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> withConnection(SqlWork<T> work) {
+        return executor.withConnection(this::borrowPrimary, work, this::releaseConnection);
+    }
+
+    private Connection borrowPrimary() {
+        long start = System.nanoTime();
+        try {
+            Connection conn = dataSource.getConnection();
+            executor.recordConnectionWait(System.nanoTime() - start);
+            return conn;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to retrieve a connection from the pool.", e);
+            // Fail the future with the real cause instead of handing callers a null connection
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * A connection from the next replica pool in turn, or from the primary when there are no replicas,
+     * when {@code sessionPlayer} wrote within {@code read_your_writes_ms}, or when no replica answers.
+     */
+    @Override
+    public CompletableFuture<Connection> getReplicaConnection(UUID sessionPlayer) {
+        return executor.supply(() -> borrowForRead(sessionPlayer));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> withReplicaConnection(UUID sessionPlayer, SqlWork<T> work) {
+        return executor.withConnection(() -> borrowForRead(sessionPlayer), work, this::releaseConnection);
+    }
+
+    private Connection borrowForRead(UUID sessionPlayer) {
+        List<HikariDataSource> pools = replicas;
+        if (pools.isEmpty()) {
+            return borrowPrimary();
+        }
+        if (sessionPlayer != null) {
+            Long lastWrite = lastWrites.get(sessionPlayer);
+            if (lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesMs) {
+                sessionPrimaryReads.incrementAndGet();
+                return borrowPrimary();
+            }
+        }
+        long start = System.nanoTime();
+        int first = Math.floorMod(nextReplica.getAndIncrement(), pools.size());
+        for (int i = 0; i < pools.size(); i++) {
             try {
-                return dataSource.getConnection();
+                Connection conn = pools.get((first + i) % pools.size()).getConnection();
+                executor.recordConnectionWait(System.nanoTime() - start);
+                replicaReads.incrementAndGet();
+                return conn;
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to retrieve a connection from the pool.", e);
-                return null;
+                warnReplicaFailure(e);
             }
-        });
+        }
+        replicaFallbacks.incrementAndGet();
+        return borrowPrimary();
+    }
+
+    private void warnReplicaFailure(SQLException e) {
+        long now = System.currentTimeMillis();
+        long last = lastReplicaWarning.get();
+        if (now - last > 60000 && lastReplicaWarning.compareAndSet(last, now)) {
+            plugin.getLogger().log(Level.WARNING, "A read replica is unavailable; its reads go to another replica or the primary.", e);
+        }
     }
 
     @Override
-    public void createTables() {
-        // Run table creation asynchronously.
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = getConnection().join();
-                 Statement statement = conn.createStatement()) {
+    public void recordWrite(UUID player) {
+        if (replicas.isEmpty() || player == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastWrites.put(player, now);
+        if (lastWrites.size() > 1024) {
+            lastWrites.values().removeIf(time -> now - time >= readYourWritesMs);
+        }
+    }
+
+    @Override
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return statements.prepare(connection, sql);
+    }
+
+    @Override
+    public void releaseConnection(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        statements.evict(connection);
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Already closed or broken, nothing left to release
+        }
+    }
 
+    @Override
+    public void createTables() {
+        // Runs on the database executor, so it never blocks the main thread
+        write(conn -> {
+            try (Statement statement = conn.createStatement()) {
                 // Same table schema, but with MySQL syntax.
                 String createItemsTable = "CREATE TABLE IF NOT EXISTS `bshop_items` (" +
                         "`id` INT AUTO_INCREMENT PRIMARY KEY," +
@@ -110,11 +274,42 @@ public class MySQLDatabase implements Database {
                         "UNIQUE KEY `shop_item_idx` (`shop_id`, `item_id`));";
 
                 statement.execute(createItemsTable);
-                plugin.getLogger().info("Database tables initialized successfully.");
-
-            } catch (Exception e) { // Catch broader exceptions for CompletableFuture
+            }
+            return null;
+        }).whenComplete((ignored, e) -> {
+            if (e != null) {
                 plugin.getLogger().log(Level.SEVERE, "Failed to create database tables.", e);
+            } else {
+                plugin.getLogger().info("Database tables initialized successfully.");
             }
         });
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(executor.getStats());
+        statements.putStats(stats);
+        HikariPoolMXBean pool = dataSource != null && !dataSource.isClosed() ? dataSource.getHikariPoolMXBean() : null;
+        if (pool != null) {
+            stats.put("pool_active_connections", pool.getActiveConnections());
+            stats.put("pool_idle_connections", pool.getIdleConnections());
+            stats.put("pool_threads_awaiting_connection", pool.getThreadsAwaitingConnection());
+        }
+        int replicaActive = 0;
+        int replicaIdle = 0;
+        for (HikariDataSource replica : replicas) {
+            HikariPoolMXBean replicaPool = !replica.isClosed() ? replica.getHikariPoolMXBean() : null;
+            if (replicaPool != null) {
+                replicaActive += replicaPool.getActiveConnections();
+                replicaIdle += replicaPool.getIdleConnections();
+            }
+        }
+        stats.put("replica_pools", replicas.size());
+        stats.put("replica_active_connections", replicaActive);
+        stats.put("replica_idle_connections", replicaIdle);
+        stats.put("replica_reads", replicaReads.get());
+        stats.put("replica_session_primary_reads", sessionPrimaryReads.get());
+        stats.put("replica_fallbacks", replicaFallbacks.get());
+        return stats;
+    }
+}
@@ -0,0 +1,136 @@
+package net.bumpier.bshop.database;
+
+import java.util.UUID;
+
+/**
+ * Estimates how many distinct players traded an item in a period: a HyperLogLog with 512 registers,
+ * typically within 5%, and closer while only a few hundred players traded. Unlike counts, sketches of
+ * several periods or servers merge into the sketch of their union, so a player who traded in two hours,
+ * or on two servers, is still counted once.
+ * <p>
+ * Stored in {@code bshop_sales_rollup.players_sketch}: a leading 0 followed by (register, value) triples
+ * while few registers are set, otherwise a leading 1 followed by every register.
+ */
+final class PlayerSketch {
+
+    private static final int PRECISION = 9;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Adds a player; returns true if the sketch changed.
+     */
+    boolean add(UUID player) {
+        long hash = mix(player.getMostSignificantBits() ^ Long.rotateLeft(player.getLeastSignificantBits(), 32));
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Leading zeros of the remaining bits plus one; the guard bit caps it at 64 - PRECISION + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (registers[index] >= rank) {
+            return false;
+        }
+        registers[index] = rank;
+        return true;
+    }
+
+    /**
+     * Adds every player of {@code other} into this sketch.
+     */
+    void merge(PlayerSketch other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    PlayerSketch copy() {
+        PlayerSketch copy = new PlayerSketch();
+        System.arraycopy(registers, 0, copy.registers, 0, REGISTERS);
+        return copy;
+    }
+
+    /**
+     * Estimated number of distinct players added.
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    byte[] toBytes() {
+        int set = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                set++;
+            }
+        }
+        if (set * 3 >= REGISTERS) {
+            byte[] bytes = new byte[REGISTERS + 1];
+            bytes[0] = DENSE;
+            System.arraycopy(registers, 0, bytes, 1, REGISTERS);
+            return bytes;
+        }
+        byte[] bytes = new byte[set * 3 + 1];
+        bytes[0] = SPARSE;
+        int offset = 1;
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                bytes[offset++] = (byte) (i >>> 8);
+                bytes[offset++] = (byte) i;
+                bytes[offset++] = registers[i];
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a stored sketch. Null, empty or unreadable bytes give an empty sketch, so a damaged row is
+     * overwritten by the next flush instead of failing it forever.
+     */
+    static PlayerSketch fromBytes(byte[] bytes) {
+        PlayerSketch sketch = new PlayerSketch();
+        if (bytes == null || bytes.length == 0) {
+            return sketch;
+        }
+        if (bytes[0] == DENSE && bytes.length == REGISTERS + 1) {
+            System.arraycopy(bytes, 1, sketch.registers, 0, REGISTERS);
+            return sketch;
+        }
+        if (bytes[0] != SPARSE || (bytes.length - 1) % 3 != 0) {
+            return sketch;
+        }
+        for (int offset = 1; offset < bytes.length; offset += 3) {
+            int index = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+            if (index < REGISTERS && bytes[offset + 2] > sketch.registers[index]) {
+                sketch.registers[index] = bytes[offset + 2];
+            }
+        }
+        return sketch;
+    }
+
+    // Finalizer of MurmurHash3; spreads offline-mode and hand-made UUIDs over the registers
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
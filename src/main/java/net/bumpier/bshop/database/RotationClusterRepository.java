@@ -0,0 +1,144 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.ShopItem;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Data access for rotations shared by several servers: the versioned rows of {@code bshop_rotations}
+ * and the short leases in {@code bshop_rotation_leases} that decide which server rotates a shop. Only
+ * used with MySQL; the lease upsert needs MySQL 8.0.19 or later for its row alias.
+ */
+public class RotationClusterRepository extends SqlRepository {
+
+    // Assignments apply left to right, so the lease_until update already sees the new owner
+    private static final String LEASE = "INSERT INTO bshop_rotation_leases (shop_id, owner, lease_until) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE " +
+            "owner = IF(lease_until < ? OR owner = new.owner, new.owner, owner), " +
+            "lease_until = IF(owner = new.owner, new.lease_until, lease_until)";
+    private static final Query<String> LEASE_OWNER = new Query<>(
+            "SELECT owner FROM bshop_rotation_leases WHERE shop_id = ?", rs -> rs.getString("owner"));
+    private static final String COMPARE_AND_SET = "UPDATE bshop_rotations SET epoch = ?, active_items = ?, rotated_at = ?, " +
+            "next_rotation_at = ?, updated_at = ?, version = version + 1 WHERE shop_id = ? AND version = ?";
+    private static final Query<StoredRow> ROW = new Query<>(
+            "SELECT epoch, active_items, rotated_at, next_rotation_at, version FROM bshop_rotations WHERE shop_id = ?", rs -> {
+                String items = rs.getString("active_items");
+                List<String> itemIds = items.isEmpty() ? List.of() : Arrays.asList(items.split(RotationStateStore.ITEM_SEPARATOR));
+                return new StoredRow(new RotationStateStore.StoredRotation(rs.getLong("epoch"), itemIds,
+                        rs.getLong("rotated_at"), rs.getLong("next_rotation_at")), rs.getLong("version"));
+            });
+    private static final Query<Map.Entry<String, Long>> VERSIONS = new Query<>(
+            "SELECT shop_id, version FROM bshop_rotations", rs -> Map.entry(rs.getString("shop_id"), rs.getLong("version")));
+
+    private final String insertFirst;
+
+    public RotationClusterRepository(Database database) {
+        super(database);
+        this.insertFirst = dialect.insertIgnore("bshop_rotations",
+                Arrays.asList("shop_id", "epoch", "active_items", "rotated_at", "next_rotation_at", "updated_at", "version"));
+    }
+
+    /**
+     * Creates both tables if needed and adds {@code version} to rotation tables created before cluster
+     * support. Blocks.
+     */
+    public void createTables() {
+        write(conn -> {
+            try (Statement statement = conn.createStatement()) {
+                statement.execute(RotationStateStore.CREATE_TABLE);
+            }
+            return null;
+        }).join();
+        createTable("bshop_rotation_leases",
+                "shop_id VARCHAR(64) NOT NULL PRIMARY KEY," +
+                "owner VARCHAR(64) NOT NULL," +
+                "lease_until BIGINT NOT NULL");
+        addColumnIfMissing("bshop_rotations", "version", "BIGINT NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * Takes or renews the lease on a shop until {@code leaseUntil}; true if {@code owner} holds it
+     * afterwards.
+     */
+    public CompletableFuture<Boolean> acquireLease(String shopKey, String owner, long now, long leaseUntil) {
+        return write(conn -> {
+            update(conn, LEASE, statement -> {
+                statement.setString(1, shopKey);
+                statement.setString(2, owner);
+                statement.setLong(3, leaseUntil);
+                statement.setLong(4, now);
+            });
+            List<String> owners = list(conn, LEASE_OWNER, statement -> statement.setString(1, shopKey));
+            return !owners.isEmpty() && owner.equals(owners.get(0));
+        });
+    }
+
+    /**
+     * Writes a rotation if the row is still at {@code version}, bumping the version; false if another
+     * server got there first. Version 0 also creates the row when there is none yet.
+     */
+    public CompletableFuture<Boolean> writeRotation(String shopKey, RotationState state, long version) {
+        String items = state.activeItems().stream().map(ShopItem::id).collect(Collectors.joining(RotationStateStore.ITEM_SEPARATOR));
+        long now = System.currentTimeMillis();
+        return write(conn -> {
+            int updated = update(conn, COMPARE_AND_SET, statement -> {
+                statement.setLong(1, state.epoch());
+                statement.setString(2, items);
+                statement.setLong(3, state.rotatedAt());
+                statement.setLong(4, state.nextRotationAt());
+                statement.setLong(5, now);
+                statement.setString(6, shopKey);
+                statement.setLong(7, version);
+            });
+            if (updated == 1) {
+                return true;
+            }
+            if (version != 0) {
+                return false;
+            }
+            // First coordinated rotation of this shop
+            return update(conn, insertFirst, statement -> {
+                statement.setString(1, shopKey);
+                statement.setLong(2, state.epoch());
+                statement.setString(3, items);
+                statement.setLong(4, state.rotatedAt());
+                statement.setLong(5, state.nextRotationAt());
+                statement.setLong(6, now);
+                statement.setLong(7, 1L);
+            }) == 1;
+        });
+    }
+
+    /**
+     * The stored rotation of a shop and its version; null if it has none.
+     */
+    public CompletableFuture<StoredRow> readRow(String shopKey) {
+        return read(conn -> {
+            List<StoredRow> rows = list(conn, ROW, statement -> statement.setString(1, shopKey));
+            return rows.isEmpty() ? null : rows.get(0);
+        });
+    }
+
+    /**
+     * The version of every stored rotation, keyed by lower-case shop id; a cheap check before reading
+     * rows in full.
+     */
+    public CompletableFuture<Map<String, Long>> versions() {
+        return read(conn -> {
+            Map<String, Long> versions = new HashMap<>();
+            for (Map.Entry<String, Long> entry : list(conn, VERSIONS, statement -> {})) {
+                versions.put(entry.getKey(), entry.getValue());
+            }
+            return versions;
+        });
+    }
+
+    public record StoredRow(RotationStateStore.StoredRotation rotation, long version) {}
+}
@@ -0,0 +1,146 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.ShopItem;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the current rotation of every rotational shop in {@code bshop_rotations}, so restarts resume
+ * the same rotation (including forced ones) and purchase-limit windows carry over.
+ * <p>
+ * Reads happen once at startup on the calling thread; writes go through a single background thread so
+ * they reach the database in rotation order.
+ */
+public class RotationStateStore extends SqlRepository {
+
+    public static final String ITEM_SEPARATOR = "\n";
+    // version is bumped by every coordinated (cluster) rotation so other servers can spot changes cheaply
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS bshop_rotations (" +
+            "shop_id VARCHAR(64) NOT NULL PRIMARY KEY," +
+            "epoch BIGINT NOT NULL," +
+            "active_items TEXT NOT NULL," +
+            "rotated_at BIGINT NOT NULL," +
+            "next_rotation_at BIGINT NOT NULL," +
+            "updated_at BIGINT NOT NULL," +
+            "version BIGINT NOT NULL DEFAULT 0)";
+
+    private static final Query<Map.Entry<String, StoredRotation>> ALL = new Query<>(
+            "SELECT shop_id, epoch, active_items, rotated_at, next_rotation_at FROM bshop_rotations", rs -> {
+                String items = rs.getString("active_items");
+                List<String> itemIds = items.isEmpty() ? List.of() : Arrays.asList(items.split(ITEM_SEPARATOR));
+                return Map.entry(rs.getString("shop_id"), new StoredRotation(rs.getLong("epoch"), itemIds,
+                        rs.getLong("rotated_at"), rs.getLong("next_rotation_at")));
+            });
+
+    private final BShop plugin;
+    private final String upsert;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-RotationWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final boolean available;
+
+    public RotationStateStore(BShop plugin, Database database) {
+        super(database);
+        this.plugin = plugin;
+        this.upsert = dialect.upsert("bshop_rotations",
+                List.of("shop_id", "epoch", "active_items", "rotated_at", "next_rotation_at", "updated_at"), List.of("shop_id"));
+        this.available = createTable();
+    }
+
+    private boolean createTable() {
+        try {
+            write(conn -> {
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute(CREATE_TABLE);
+                }
+                return null;
+            }).join();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not create the rotation table; rotations will not survive restarts.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Loads every stored rotation, keyed by lower-case shop id.
+     */
+    public Map<String, StoredRotation> loadAll() {
+        Map<String, StoredRotation> rotations = new HashMap<>();
+        if (!available) {
+            return rotations;
+        }
+        try {
+            for (Map.Entry<String, StoredRotation> rotation : read(conn -> list(conn, ALL, statement -> {})).join()) {
+                rotations.put(rotation.getKey(), rotation.getValue());
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load stored shop rotations.", e);
+        }
+        return rotations;
+    }
+
+    /**
+     * Queues a write of a shop's current rotation.
+     */
+    public void save(String shopKey, RotationState state) {
+        if (!available) {
+            return;
+        }
+        String items = state.activeItems().stream().map(ShopItem::id).collect(Collectors.joining(ITEM_SEPARATOR));
+        try {
+            writer.execute(() -> saveNow(shopKey, state, items));
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+
+    private void saveNow(String shopKey, RotationState state, String items) {
+        try {
+            write(conn -> update(conn, upsert, ps -> {
+                ps.setString(1, shopKey);
+                ps.setLong(2, state.epoch());
+                ps.setString(3, items);
+                ps.setLong(4, state.rotatedAt());
+                ps.setLong(5, state.nextRotationAt());
+                ps.setLong(6, System.currentTimeMillis());
+            })).join();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not save the rotation of shop " + shopKey + ".", e);
+        }
+    }
+
+    /**
+     * Waits briefly for queued writes so the latest rotation is on disk before the database closes.
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A rotation as read back from the database; items are stored by id.
+     */
+    public record StoredRotation(long epoch, List<String> activeItemIds, long rotatedAt, long nextRotationAt) {}
+}
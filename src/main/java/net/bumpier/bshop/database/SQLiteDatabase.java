@@ -1,41 +1,65 @@
 package net.bumpier.bshop.database;
 
 import net.bumpier.bshop.BShop;
-import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+/**
+ * SQLite allows one writer at a time, so every write runs on a single thread that owns the only writable
+ * connection. Queued write jobs are taken in groups and committed together, each in its own savepoint so
+ * a failing job does not undo the others. Queries use a small pool of read-only connections; in WAL mode
+ * they read alongside the writer instead of waiting for it.
+ */
 public class SQLiteDatabase implements Database {
 
+    // Write jobs committed in one transaction at most
+    private static final int MAX_JOBS_PER_TRANSACTION = 128;
+    private static final long CONNECTION_TIMEOUT_MS = 5000;
+
     private final BShop plugin;
     private final File dbFile;
-    private final ConcurrentLinkedQueue<Connection> connectionPool;
-    private final AtomicInteger activeConnections;
+    private final BlockingQueue<Connection> readPool;
+    private final AtomicInteger openReadConnections;
     private final int maxPoolSize;
     private final int minPoolSize;
+    private final DatabaseExecutor executor;
+    private final StatementCache statements = new StatementCache();
+    private final BlockingQueue<WriteJob<?>> writeQueue = new LinkedBlockingQueue<>();
+    private final WriteJob<Void> stopSignal = new WriteJob<>(connection -> null);
+    private Thread writerThread;
+    private Connection writeConnection;
     private volatile boolean isShutdown = false;
 
     public SQLiteDatabase(BShop plugin) {
         this.plugin = plugin;
         this.dbFile = new File(plugin.getDataFolder(), "database.db");
-        
-        // Load pool settings from config
+
+        // Load pool settings from config; they size the read pool, writes always use one connection
         ConfigurationSection perfConfig = plugin.getConfig().getConfigurationSection("performance.database");
-        this.maxPoolSize = perfConfig != null ? perfConfig.getInt("connection_pool_size", 10) : 10;
-        this.minPoolSize = perfConfig != null ? perfConfig.getInt("minimum_idle", 2) : 2;
-        
-        this.connectionPool = new ConcurrentLinkedQueue<>();
-        this.activeConnections = new AtomicInteger(0);
+        this.maxPoolSize = Math.max(1, perfConfig != null ? perfConfig.getInt("connection_pool_size", 10) : 10);
+        this.minPoolSize = Math.min(maxPoolSize, Math.max(0, perfConfig != null ? perfConfig.getInt("minimum_idle", 2) : 2));
+
+        this.readPool = new LinkedBlockingQueue<>();
+        this.openReadConnections = new AtomicInteger(0);
+        this.executor = DatabaseExecutor.create(plugin, maxPoolSize);
     }
 
     @Override
@@ -49,38 +73,48 @@ public class SQLiteDatabase implements Database {
                 return;
             }
         }
-        
+
         try {
             Class.forName("org.sqlite.JDBC");
-            
-            // Initialize connection pool
-            for (int i = 0; i < minPoolSize; i++) {
-                Connection conn = createConnection();
-                if (conn != null) {
-                    connectionPool.offer(conn);
-                }
-            }
-            
-
         } catch (ClassNotFoundException e) {
             plugin.getLogger().log(Level.SEVERE, "SQLite JDBC driver not found.", e);
+            return;
+        }
+
+        // The write connection switches the file to WAL first, so readers open in WAL mode
+        writeConnection = createConnection(false);
+        writerThread = new Thread(this::runWriter, "bShop-SQLiteWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        for (int i = 0; i < minPoolSize; i++) {
+            Connection conn = createConnection(true);
+            if (conn != null) {
+                openReadConnections.incrementAndGet();
+                readPool.offer(conn);
+            }
         }
     }
 
-    private Connection createConnection() {
+    private Connection createConnection(boolean readOnly) {
         try {
             Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
-            
-            // Enable WAL mode for better concurrent performance
+
             try (Statement stmt = conn.createStatement()) {
-                stmt.execute("PRAGMA journal_mode=WAL");
-                stmt.execute("PRAGMA synchronous=NORMAL");
+                if (!readOnly) {
+                    // WAL lets readers run while the writer commits
+                    stmt.execute("PRAGMA journal_mode=WAL");
+                    stmt.execute("PRAGMA synchronous=NORMAL");
+                }
+                stmt.execute("PRAGMA busy_timeout=" + CONNECTION_TIMEOUT_MS);
                 stmt.execute("PRAGMA cache_size=10000");
                 stmt.execute("PRAGMA temp_store=MEMORY");
                 stmt.execute("PRAGMA mmap_size=268435456"); // 256MB
-                stmt.execute("PRAGMA optimize");
+                if (readOnly) {
+                    stmt.execute("PRAGMA query_only=ON");
+                }
             }
-            
+
             return conn;
         } catch (SQLException e) {
             plugin.getLogger().log(Level.SEVERE, "Failed to create SQLite connection.", e);
@@ -91,137 +125,271 @@ public class SQLiteDatabase implements Database {
     @Override
     public void disconnect() {
         isShutdown = true;
-        
-        // Close all connections in the pool
-        Connection conn;
-        while ((conn = connectionPool.poll()) != null) {
+
+        // Let the writer finish everything queued before the stop signal
+        if (writerThread != null) {
+            writeQueue.offer(stopSignal);
             try {
-                conn.close();
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.WARNING, "Error closing SQLite connection.", e);
+                writerThread.join(CONNECTION_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            if (writerThread.isAlive()) {
+                plugin.getLogger().warning("SQLite writer did not finish in time; remaining writes are discarded.");
+                writerThread.interrupt();
+            }
+        }
+        executor.shutdown();
+        WriteJob<?> abandoned;
+        while ((abandoned = writeQueue.poll()) != null) {
+            abandoned.future.completeExceptionally(new SQLException("Database is shutdown"));
         }
-        
-        plugin.getLogger().info("SQLite connection pool closed. Active connections: " + activeConnections.get());
+        if (writeConnection != null) {
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("PRAGMA optimize");
+            } catch (SQLException ignored) {
+                // Only an optimization hint
+            }
+            closeQuietly(writeConnection);
+        }
+
+        // Close all idle read connections; borrowed ones are closed when released
+        Connection conn;
+        while ((conn = readPool.poll()) != null) {
+            closeQuietly(conn);
+            openReadConnections.decrementAndGet();
+        }
+
+        plugin.getLogger().info("SQLite connections closed. Read connections still in use: " + openReadConnections.get());
     }
 
+    /**
+     * Borrows a read-only connection. Blocks (off the calling thread) until one is free when all
+     * {@code connection_pool_size} connections are in use.
+     */
     @Override
     public CompletableFuture<Connection> getConnection() {
-        return CompletableFuture.supplyAsync(() -> {
-            if (isShutdown) {
-                throw new RuntimeException("Database is shutdown");
-            }
-            
-            // Try to get connection from pool
-            Connection conn = connectionPool.poll();
-            if (conn != null) {
-                try {
-                    // Test if connection is still valid
-                    if (conn.isValid(1)) {
-                        activeConnections.incrementAndGet();
-                        return conn;
-                    } else {
-                        conn.close();
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().log(Level.WARNING, "Invalid connection in pool, creating new one.", e);
-                }
+        return executor.supply(this::borrowReadConnection);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> withConnection(SqlWork<T> work) {
+        return executor.withConnection(this::borrowReadConnection, work, this::releaseConnection);
+    }
+
+    private Connection borrowReadConnection() {
+        if (isShutdown) {
+            throw new RuntimeException("Database is shutdown");
+        }
+
+        long start = System.nanoTime();
+        Connection conn = readPool.poll();
+        if (conn == null) {
+            conn = openReadConnection();
+        }
+        if (conn == null) {
+            try {
+                conn = readPool.poll(CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            
-            // Create new connection if pool is not full
-            if (activeConnections.get() < maxPoolSize) {
-                conn = createConnection();
-                if (conn != null) {
-                    activeConnections.incrementAndGet();
-                    return conn;
-                }
+        }
+        if (conn == null) {
+            throw new RuntimeException("Could not obtain database connection within timeout");
+        }
+        executor.recordConnectionWait(System.nanoTime() - start);
+        return conn;
+    }
+
+    private Connection openReadConnection() {
+        while (true) {
+            int open = openReadConnections.get();
+            if (open >= maxPoolSize) {
+                return null;
             }
-            
-            // Wait for a connection to become available
-            long startTime = System.currentTimeMillis();
-            while (System.currentTimeMillis() - startTime < 5000) { // 5 second timeout
-                conn = connectionPool.poll();
-                if (conn != null) {
-                    try {
-                        if (conn.isValid(1)) {
-                            activeConnections.incrementAndGet();
-                            return conn;
-                        } else {
-                            conn.close();
-                        }
-                    } catch (SQLException e) {
-                        // Continue waiting
-                    }
-                }
-                
-                try {
-                    Thread.sleep(10); // Small delay to prevent busy waiting
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+            if (openReadConnections.compareAndSet(open, open + 1)) {
+                Connection conn = createConnection(true);
+                if (conn == null) {
+                    openReadConnections.decrementAndGet();
                 }
+                return conn;
             }
-            
-            throw new RuntimeException("Could not obtain database connection within timeout");
-        });
+        }
     }
 
-    public void returnConnection(Connection connection) {
-        if (connection == null || isShutdown) {
+    @Override
+    public void releaseConnection(Connection connection) {
+        if (connection == null) {
             return;
         }
-        
         try {
-            // Reset connection state
-            connection.setAutoCommit(true);
-            connection.clearWarnings();
-            
-            // Return to pool if not full
-            if (connectionPool.size() < maxPoolSize) {
-                connectionPool.offer(connection);
-            } else {
-                connection.close();
+            if (!isShutdown && !connection.isClosed()) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                connection.clearWarnings();
+                readPool.offer(connection);
+                return;
             }
         } catch (SQLException e) {
             plugin.getLogger().log(Level.WARNING, "Error returning connection to pool.", e);
+        }
+        closeQuietly(connection);
+        openReadConnections.decrementAndGet();
+    }
+
+    /**
+     * Queues {@code work} for the writer thread. It is committed together with whatever else is queued
+     * at that moment.
+     */
+    @Override
+    public <T> CompletableFuture<T> write(SqlWork<T> work) {
+        WriteJob<T> job = new WriteJob<>(work);
+        if (isShutdown || writerThread == null) {
+            job.future.completeExceptionally(new SQLException("Database is shutdown"));
+            return job.future;
+        }
+        writeQueue.offer(job);
+        return job.future;
+    }
+
+    private void runWriter() {
+        List<WriteJob<?>> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            writeQueue.drainTo(batch, MAX_JOBS_PER_TRANSACTION - 1);
+            stopping = batch.remove(stopSignal);
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void commit(List<WriteJob<?>> batch) {
+        try {
+            if (writeConnection == null || writeConnection.isClosed()) {
+                writeConnection = createConnection(false);
+                if (writeConnection == null) {
+                    throw new SQLException("SQLite write connection is unavailable");
+                }
+            }
+            writeConnection.setAutoCommit(false);
             try {
-                connection.close();
-            } catch (SQLException ex) {
-                // Ignore
+                for (WriteJob<?> job : batch) {
+                    Savepoint savepoint = writeConnection.setSavepoint();
+                    try {
+                        job.run(writeConnection);
+                        writeConnection.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        writeConnection.rollback(savepoint);
+                        job.failure = e;
+                    }
+                }
+                writeConnection.commit();
+            } catch (SQLException e) {
+                writeConnection.rollback();
+                throw e;
+            } finally {
+                writeConnection.setAutoCommit(true);
             }
-        } finally {
-            activeConnections.decrementAndGet();
+        } catch (SQLException e) {
+            for (WriteJob<?> job : batch) {
+                if (job.failure == null) {
+                    job.failure = e;
+                }
+            }
+        }
+        for (WriteJob<?> job : batch) {
+            job.finish();
+        }
+    }
+
+    @Override
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return statements.prepare(connection, sql);
+    }
+
+    private void closeQuietly(Connection connection) {
+        statements.evict(connection);
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Error closing SQLite connection.", e);
         }
     }
 
     @Override
     public void createTables() {
-        // Run table creation asynchronously to not block the main thread.
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = getConnection().join()) {
-                try (Statement statement = conn.createStatement()) {
-                    // Example Table: A table to store shop items.
-                    String createItemsTable = "CREATE TABLE IF NOT EXISTS bshop_items (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "shop_id VARCHAR(64) NOT NULL," +
-                            "item_id VARCHAR(128) NOT NULL," +
-                            "material VARCHAR(64) NOT NULL," +
-                            "buy_price DOUBLE DEFAULT -1," +
-                            "sell_price DOUBLE DEFAULT -1," +
-                            "stock INTEGER DEFAULT -1," +
-                            "UNIQUE(shop_id, item_id));";
-
-                    statement.execute(createItemsTable);
-
-                    // Create indexes for better performance
-                    statement.execute("CREATE INDEX IF NOT EXISTS idx_bshop_items_shop_id ON bshop_items(shop_id)");
-                    statement.execute("CREATE INDEX IF NOT EXISTS idx_bshop_items_item_id ON bshop_items(item_id)");
-
-                    plugin.getLogger().info("Database tables initialized successfully.");
-                }
-            } catch (Exception e) {
+        // Runs on the writer thread, so it never blocks the main thread
+        write(conn -> {
+            try (Statement statement = conn.createStatement()) {
+                // Example Table: A table to store shop items.
+                String createItemsTable = "CREATE TABLE IF NOT EXISTS bshop_items (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "shop_id VARCHAR(64) NOT NULL," +
+                        "item_id VARCHAR(128) NOT NULL," +
+                        "material VARCHAR(64) NOT NULL," +
+                        "buy_price DOUBLE DEFAULT -1," +
+                        "sell_price DOUBLE DEFAULT -1," +
+                        "stock INTEGER DEFAULT -1," +
+                        "UNIQUE(shop_id, item_id));";
+
+                statement.execute(createItemsTable);
+
+                // Create indexes for better performance
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_bshop_items_shop_id ON bshop_items(shop_id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_bshop_items_item_id ON bshop_items(item_id)");
+            }
+            return null;
+        }).whenComplete((ignored, e) -> {
+            if (e != null) {
                 plugin.getLogger().log(Level.SEVERE, "Failed to create database tables.", e);
+            } else {
+                plugin.getLogger().info("Database tables initialized successfully.");
             }
         });
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(executor.getStats());
+        stats.put("sqlite_write_queue_depth", writeQueue.size());
+        stats.put("sqlite_read_connections_open", openReadConnections.get());
+        stats.put("sqlite_read_connections_idle", readPool.size());
+        statements.putStats(stats);
+        return stats;
+    }
+
+    /**
+     * A queued write and the future completed once its transaction commits or fails.
+     */
+    private static final class WriteJob<T> {
+        private final SqlWork<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+
+        private WriteJob(SqlWork<T> work) {
+            this.work = work;
+        }
+
+        private void run(Connection connection) throws SQLException {
+            result = work.run(connection);
+        }
+
+        private void finish() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.bumpier.bshop.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Data access for {@code bshop_sales_rollup}: per item sales totals per hour ({@code h}) and per UTC day
+ * ({@code d}). A window is answered from whole days plus the hours before the first whole day, so even
+ * a month of history sums only a few rows per item. When those hours are older than the hourly rows
+ * still kept, their whole day is read instead. Reads may go to a MySQL read replica.
+ * <p>
+ * Distinct players cannot be summed, so each row keeps a {@link PlayerSketch} instead; a flush merges
+ * its sketch into the stored one and a window merges the sketches of its rows.
+ */
+public class SalesRollupRepository extends SqlRepository {
+
+    public static final String HOURLY = "h";
+    public static final String DAILY = "d";
+    public static final long HOUR_MS = 3_600_000L;
+    public static final long DAY_MS = 86_400_000L;
+
+    private static final String SUMS = "SELECT shop_id, item_id, SUM(units_bought) AS units_bought, SUM(units_sold) AS units_sold, " +
+            "SUM(money_in) AS money_in, SUM(money_out) AS money_out, SUM(transactions) AS transactions FROM bshop_sales_rollup ";
+    // Daily rows from the first whole day, hourly rows before it
+    private static final String WINDOW = "((granularity = '" + DAILY + "' AND period_start >= ?) OR (granularity = '" + HOURLY
+            + "' AND period_start >= ? AND period_start < ?))";
+    private static final Query<ItemSales> ITEM = new Query<>(
+            SUMS + "WHERE shop_id = ? AND item_id = ? AND " + WINDOW + " GROUP BY shop_id, item_id", SalesRollupRepository::map);
+    private static final Query<ItemSales> ALL = new Query<>(
+            SUMS + "WHERE " + WINDOW + " GROUP BY shop_id, item_id", SalesRollupRepository::map);
+    private static final String SKETCH_COLUMNS = "SELECT shop_id, item_id, players_sketch FROM bshop_sales_rollup WHERE players_sketch IS NOT NULL AND ";
+    private static final Query<SketchRow> SKETCHES = new Query<>(SKETCH_COLUMNS + WINDOW, SalesRollupRepository::mapSketch);
+    private static final Query<SketchRow> ITEM_SKETCHES = new Query<>(
+            SKETCH_COLUMNS + "shop_id = ? AND item_id = ? AND " + WINDOW, SalesRollupRepository::mapSketch);
+    private static final String KEY = " WHERE granularity = ? AND period_start = ? AND shop_id = ? AND item_id = ?";
+    private static final String SET_SKETCH = "UPDATE bshop_sales_rollup SET players_sketch = ?" + KEY;
+    private static final String PRUNE = "DELETE FROM bshop_sales_rollup WHERE granularity = ? AND period_start < ?";
+
+    private final String upsert;
+    private final Query<SketchRow> lockSketch;
+    private final Map<ItemSales.Metric, Query<ItemSales>> top = new EnumMap<>(ItemSales.Metric.class);
+
+    public SalesRollupRepository(Database database) {
+        super(database);
+        this.upsert = dialect.upsertAdding("bshop_sales_rollup",
+                Arrays.asList("granularity", "period_start", "shop_id", "item_id", "units_bought", "units_sold", "money_in",
+                        "money_out", "transactions"),
+                Arrays.asList("granularity", "period_start", "shop_id", "item_id"));
+        this.lockSketch = new Query<>(dialect.lockingRead("SELECT shop_id, item_id, players_sketch FROM bshop_sales_rollup" + KEY),
+                SalesRollupRepository::mapSketch);
+        for (ItemSales.Metric metric : ItemSales.Metric.values()) {
+            if (metric.column() == null) {
+                continue;
+            }
+            top.put(metric, new Query<>(SUMS + "WHERE " + WINDOW + " GROUP BY shop_id, item_id ORDER BY " + metric.column()
+                    + " DESC LIMIT ?", SalesRollupRepository::map));
+        }
+    }
+
+    /**
+     * Creates the table if needed, or adds the player sketch column to a table from an older version.
+     * Tables from that version keep their unused {@code unique_players} column. Blocks; only called while
+     * enabling.
+     */
+    public void createTable() {
+        createTable("bshop_sales_rollup",
+                "granularity VARCHAR(1) NOT NULL," +
+                "period_start BIGINT NOT NULL," +
+                "shop_id VARCHAR(64) NOT NULL," +
+                "item_id VARCHAR(128) NOT NULL," +
+                "units_bought BIGINT NOT NULL DEFAULT 0," +
+                "units_sold BIGINT NOT NULL DEFAULT 0," +
+                "money_in DOUBLE NOT NULL DEFAULT 0," +
+                "money_out DOUBLE NOT NULL DEFAULT 0," +
+                "transactions BIGINT NOT NULL DEFAULT 0," +
+                "players_sketch BLOB," +
+                "PRIMARY KEY (granularity, period_start, shop_id, item_id)");
+        addColumnIfMissing("bshop_sales_rollup", "players_sketch", "BLOB");
+    }
+
+    /**
+     * Adds every delta onto its row in one transaction, so several servers can share the table.
+     */
+    public CompletableFuture<Void> addAll(Collection<RollupDelta> deltas) {
+        return write(conn -> {
+            // The upsert creates and locks every row, so no other server can merge a sketch in between
+            batch(conn, upsert, deltas, (statement, delta) -> {
+                statement.setString(1, delta.granularity());
+                statement.setLong(2, delta.periodStart());
+                statement.setString(3, delta.shopId());
+                statement.setString(4, delta.itemId());
+                statement.setLong(5, delta.unitsBought());
+                statement.setLong(6, delta.unitsSold());
+                statement.setDouble(7, delta.moneyIn());
+                statement.setDouble(8, delta.moneyOut());
+                statement.setLong(9, delta.transactions());
+            });
+            List<SketchUpdate> sketches = new ArrayList<>();
+            for (RollupDelta delta : deltas) {
+                if (delta.players() == null) {
+                    continue;
+                }
+                PlayerSketch merged = delta.players().copy();
+                for (SketchRow stored : list(conn, lockSketch, statement -> bindKey(statement, 1, delta))) {
+                    merged.merge(stored.players());
+                }
+                sketches.add(new SketchUpdate(delta, merged.toBytes()));
+            }
+            batch(conn, SET_SKETCH, sketches, (statement, update) -> {
+                statement.setBytes(1, update.sketch());
+                bindKey(statement, 2, update.delta());
+            });
+            return null;
+        });
+    }
+
+    private static void bindKey(PreparedStatement statement, int index, RollupDelta delta) throws SQLException {
+        statement.setString(index, delta.granularity());
+        statement.setLong(index + 1, delta.periodStart());
+        statement.setString(index + 2, delta.shopId());
+        statement.setString(index + 3, delta.itemId());
+    }
+
+    /**
+     * Deletes rows of {@code granularity} that started before {@code before}.
+     */
+    public CompletableFuture<Integer> prune(String granularity, long before) {
+        return write(conn -> update(conn, PRUNE, statement -> {
+            statement.setString(1, granularity);
+            statement.setLong(2, before);
+        }));
+    }
+
+    /**
+     * The {@code limit} items with the highest {@code metric} since {@code since}, highest first.
+     *
+     * @param hourlySince start of the oldest hourly rows that are kept; older hours are read from daily rows
+     */
+    public CompletableFuture<List<ItemSales>> top(ItemSales.Metric metric, long since, long hourlySince, int limit) {
+        return readReplica(null, conn -> {
+            if (metric == ItemSales.Metric.PLAYERS) {
+                return topPlayers(conn, since, hourlySince, limit);
+            }
+            List<ItemSales> rows = list(conn, top.get(metric), statement -> {
+                int index = bindWindow(statement, 1, since, hourlySince);
+                statement.setInt(index, limit);
+            });
+            List<ItemSales> withPlayers = new ArrayList<>(rows.size());
+            for (ItemSales row : rows) {
+                withPlayers.add(withPlayers(row, itemPlayers(conn, row.shopId(), row.itemId(), since, hourlySince)));
+            }
+            return withPlayers;
+        });
+    }
+
+    /**
+     * Ranks every item traded in the window, since distinct players are only known after merging.
+     */
+    private List<ItemSales> topPlayers(Connection conn, long since, long hourlySince, int limit) throws SQLException {
+        Map<String, PlayerSketch> players = new HashMap<>();
+        for (SketchRow row : list(conn, SKETCHES, statement -> bindWindow(statement, 1, since, hourlySince))) {
+            players.computeIfAbsent(row.shopId() + ':' + row.itemId(), key -> new PlayerSketch()).merge(row.players());
+        }
+        return list(conn, ALL, statement -> bindWindow(statement, 1, since, hourlySince)).stream()
+                .map(row -> withPlayers(row, players.get(row.shopId() + ':' + row.itemId())))
+                .sorted(Comparator.comparingLong(ItemSales::uniquePlayers).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sales of one item since {@code since}; null if it had none.
+     *
+     * @param hourlySince start of the oldest hourly rows that are kept; older hours are read from daily rows
+     */
+    public CompletableFuture<ItemSales> item(String shopId, String itemId, long since, long hourlySince) {
+        return readReplica(null, conn -> {
+            List<ItemSales> rows = list(conn, ITEM, statement -> {
+                statement.setString(1, shopId);
+                statement.setString(2, itemId);
+                bindWindow(statement, 3, since, hourlySince);
+            });
+            return rows.isEmpty() ? null : withPlayers(rows.get(0), itemPlayers(conn, shopId, itemId, since, hourlySince));
+        });
+    }
+
+    private PlayerSketch itemPlayers(Connection conn, String shopId, String itemId, long since, long hourlySince) throws SQLException {
+        PlayerSketch players = new PlayerSketch();
+        for (SketchRow row : list(conn, ITEM_SKETCHES, statement -> {
+            statement.setString(1, shopId);
+            statement.setString(2, itemId);
+            bindWindow(statement, 3, since, hourlySince);
+        })) {
+            players.merge(row.players());
+        }
+        return players;
+    }
+
+    private static ItemSales withPlayers(ItemSales row, PlayerSketch players) {
+        return new ItemSales(row.shopId(), row.itemId(), row.unitsBought(), row.unitsSold(), row.moneyIn(), row.moneyOut(),
+                row.transactions(), players != null ? players.estimate() : 0);
+    }
+
+    private static int bindWindow(PreparedStatement statement, int index, long since, long hourlySince) throws SQLException {
+        long firstHour = floor(since, HOUR_MS);
+        long firstDay;
+        if (firstHour % DAY_MS == 0) {
+            firstDay = firstHour;
+        } else if (firstHour < hourlySince) {
+            // The leading hours may already be pruned; their whole day is the closest total left
+            firstDay = floor(firstHour, DAY_MS);
+        } else {
+            firstDay = floor(firstHour, DAY_MS) + DAY_MS;
+        }
+        statement.setLong(index, firstDay);
+        statement.setLong(index + 1, firstHour);
+        statement.setLong(index + 2, firstDay);
+        return index + 3;
+    }
+
+    /**
+     * Start of the period of {@code length} milliseconds that contains {@code time}.
+     */
+    public static long floor(long time, long length) {
+        return time - Math.floorMod(time, length);
+    }
+
+    private static ItemSales map(ResultSet rs) throws SQLException {
+        return new ItemSales(rs.getString("shop_id"), rs.getString("item_id"), rs.getLong("units_bought"), rs.getLong("units_sold"),
+                rs.getDouble("money_in"), rs.getDouble("money_out"), rs.getLong("transactions"), 0);
+    }
+
+    private static SketchRow mapSketch(ResultSet rs) throws SQLException {
+        return new SketchRow(rs.getString("shop_id"), rs.getString("item_id"), PlayerSketch.fromBytes(rs.getBytes("players_sketch")));
+    }
+
+    /**
+     * Sales of one item in one period since the last flush.
+     *
+     * @param players every player seen in the period so far; null if none was added since the last flush
+     */
+    public record RollupDelta(String granularity, long periodStart, String shopId, String itemId, long unitsBought, long unitsSold,
+                              double moneyIn, double moneyOut, long transactions, PlayerSketch players) {}
+
+    private record SketchRow(String shopId, String itemId, PlayerSketch players) {}
+
+    private record SketchUpdate(RollupDelta delta, byte[] sketch) {}
+}
@@ -0,0 +1,298 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Per item sales totals per hour and per day, for questions like "what sold most this week" without
+ * scanning {@code bshop_transactions}.
+ * <p>
+ * Every buy and sell is added to in-memory buckets for its hour and its day. A background thread adds the
+ * bucket totals onto {@code bshop_sales_rollup} every {@code flush_interval_ms}, so the table holds one
+ * row per item, period and granularity no matter how much is traded. Queries flush first, so they include
+ * trades that were not written yet. Hourly rows older than {@code hourly_retention_days} are deleted;
+ * daily rows are kept.
+ * <p>
+ * Unique players are kept as a {@link PlayerSketch} per bucket and merged into the row's sketch, so a
+ * player who traded on several servers sharing a MySQL database, or in several hours of a window, is
+ * counted once.
+ */
+public class SalesRollupStore {
+
+    private static final long PRUNE_INTERVAL_MS = SalesRollupRepository.HOUR_MS;
+    // Trades recorded just before a period ended may still be on their way into its bucket
+    private static final long BUCKET_GRACE_MS = 300_000L;
+
+    private final BShop plugin;
+    private final SalesRollupRepository repository;
+    private final long hourlyRetentionMs;
+    private final boolean available;
+
+    private final Map<Period, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-RollupWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastPrune;
+
+    // Metrics
+    private final AtomicLong recorded = new AtomicLong(0);
+    private final AtomicLong rowsWritten = new AtomicLong(0);
+    private final AtomicLong queries = new AtomicLong(0);
+    private final AtomicLong totalQueryNanos = new AtomicLong(0);
+
+    public SalesRollupStore(BShop plugin, Database database) {
+        this.plugin = plugin;
+        this.repository = new SalesRollupRepository(database);
+
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("database.rollups");
+        long flushIntervalMs = Math.max(1000, config != null ? config.getLong("flush_interval_ms", 60000) : 60000);
+        this.hourlyRetentionMs = Math.max(2, config != null ? config.getInt("hourly_retention_days", 14) : 14) * SalesRollupRepository.DAY_MS;
+
+        boolean enabled = config == null || config.getBoolean("enabled", true);
+        this.available = enabled && createTable();
+        if (available) {
+            writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean createTable() {
+        try {
+            repository.createTable();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not create the sales rollup table; shop statistics are disabled.", e);
+            return false;
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Adds a buy or sell to the buckets of its hour and day. Never touches the database.
+     *
+     * @param buy   true for a purchase, false for a sale
+     * @param price total price of the trade
+     */
+    public void record(String shopId, String itemId, UUID playerUuid, boolean buy, int amount, double price, long time) {
+        if (!available) {
+            return;
+        }
+        recorded.incrementAndGet();
+        String shop = shopId.toLowerCase();
+        long hour = SalesRollupRepository.floor(time, SalesRollupRepository.HOUR_MS);
+        long day = SalesRollupRepository.floor(time, SalesRollupRepository.DAY_MS);
+        buckets.computeIfAbsent(new Period(SalesRollupRepository.HOURLY, hour, shop, itemId), p -> new Bucket(hour + SalesRollupRepository.HOUR_MS))
+                .add(playerUuid, buy, amount, price);
+        buckets.computeIfAbsent(new Period(SalesRollupRepository.DAILY, day, shop, itemId), p -> new Bucket(day + SalesRollupRepository.DAY_MS))
+                .add(playerUuid, buy, amount, price);
+    }
+
+    private void flush() {
+        long now = System.currentTimeMillis();
+        List<SalesRollupRepository.RollupDelta> deltas = new ArrayList<>();
+        Map<Period, Bucket> drained = new HashMap<>();
+        for (Iterator<Map.Entry<Period, Bucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Period, Bucket> entry = it.next();
+            Period period = entry.getKey();
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                if (bucket.transactions > 0) {
+                    deltas.add(new SalesRollupRepository.RollupDelta(period.granularity(), period.start(), period.shopId(), period.itemId(),
+                            bucket.unitsBought, bucket.unitsSold, bucket.moneyIn, bucket.moneyOut, bucket.transactions,
+                            bucket.playersChanged ? bucket.players.copy() : null));
+                    drained.put(period, bucket.drain());
+                } else if (bucket.end + BUCKET_GRACE_MS <= now) {
+                    // The period is over and written; its player sketch is no longer needed
+                    it.remove();
+                }
+            }
+        }
+
+        if (!deltas.isEmpty()) {
+            try {
+                repository.addAll(deltas).join();
+                rowsWritten.addAndGet(deltas.size());
+            } catch (Exception e) {
+                // Put the totals back so they are retried with the next flush
+                drained.forEach((period, totals) -> buckets.computeIfAbsent(period, p -> new Bucket(totals.end)).restore(totals));
+                plugin.getLogger().log(Level.WARNING, "Could not save " + deltas.size() + " sales rollup row(s); retrying with the next flush.", e);
+                return;
+            }
+        }
+
+        if (now - lastPrune >= PRUNE_INTERVAL_MS) {
+            lastPrune = now;
+            try {
+                repository.prune(SalesRollupRepository.HOURLY, now - hourlyRetentionMs).join();
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Could not delete old hourly sales rollups.", e);
+            }
+        }
+    }
+
+    /**
+     * The {@code limit} items with the highest {@code metric} over the last {@code windowMs}, highest
+     * first, including trades not written yet (unless a read replica lags behind). Whole days are read
+     * from daily rows, so the window starts at the beginning of its first hour, or of its first day when
+     * that hour is older than {@code hourly_retention_days}.
+     */
+    public CompletableFuture<List<ItemSales>> top(ItemSales.Metric metric, long windowMs, int limit) {
+        long now = System.currentTimeMillis();
+        return query(() -> repository.top(metric, now - windowMs, hourlySince(now), Math.max(1, limit)).join(), new ArrayList<>());
+    }
+
+    /**
+     * Sales of one item over the last {@code windowMs}; null if it had none.
+     */
+    public CompletableFuture<ItemSales> item(String shopId, String itemId, long windowMs) {
+        long now = System.currentTimeMillis();
+        return query(() -> repository.item(shopId.toLowerCase(), itemId, now - windowMs, hourlySince(now)).join(), null);
+    }
+
+    /**
+     * Start of the oldest hourly rows that are always kept; anything older may have been pruned.
+     */
+    private long hourlySince(long now) {
+        return now - hourlyRetentionMs;
+    }
+
+    private <T> CompletableFuture<T> query(Supplier<T> read, T fallback) {
+        if (!available) {
+            return CompletableFuture.completedFuture(fallback);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                long start = System.nanoTime();
+                try {
+                    future.complete(read.get());
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "Could not read sales rollups.", e);
+                    future.complete(fallback);
+                } finally {
+                    queries.incrementAndGet();
+                    totalQueryNanos.addAndGet(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(fallback);
+        }
+        return future;
+    }
+
+    /**
+     * Writes every bucket and stops the writer thread; waits a few seconds at most.
+     */
+    public void shutdown() {
+        try {
+            writer.execute(this::flush);
+        } catch (RejectedExecutionException ignored) {
+            // Already shut down
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get sales rollup statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = queries.get();
+        stats.put("rollup_buckets", buckets.size());
+        stats.put("rollup_trades_recorded", recorded.get());
+        stats.put("rollup_rows_written", rowsWritten.get());
+        stats.put("rollup_queries", count);
+        stats.put("rollup_avg_query_ms", count > 0 ? totalQueryNanos.get() / 1_000_000.0 / count : 0.0);
+        return stats;
+    }
+
+    private record Period(String granularity, long start, String shopId, String itemId) {}
+
+    /**
+     * Totals of one period since the last flush, plus a sketch of every player seen in the period. The
+     * sketch is written whole whenever it changed; merging it again is harmless.
+     */
+    private static final class Bucket {
+
+        final long end;
+        final PlayerSketch players = new PlayerSketch();
+        long unitsBought;
+        long unitsSold;
+        double moneyIn;
+        double moneyOut;
+        long transactions;
+        boolean playersChanged;
+
+        Bucket(long end) {
+            this.end = end;
+        }
+
+        synchronized void add(UUID player, boolean buy, int amount, double price) {
+            if (buy) {
+                unitsBought += amount;
+                moneyIn += price;
+            } else {
+                unitsSold += amount;
+                moneyOut += price;
+            }
+            transactions++;
+            if (players.add(player)) {
+                playersChanged = true;
+            }
+        }
+
+        /**
+         * Returns a copy of the totals and resets them; the player sketch stays. Caller holds the lock.
+         */
+        Bucket drain() {
+            Bucket totals = new Bucket(end);
+            totals.restore(this);
+            unitsBought = 0;
+            unitsSold = 0;
+            moneyIn = 0;
+            moneyOut = 0;
+            transactions = 0;
+            playersChanged = false;
+            return totals;
+        }
+
+        synchronized void restore(Bucket totals) {
+            unitsBought += totals.unitsBought;
+            unitsSold += totals.unitsSold;
+            moneyIn += totals.moneyIn;
+            moneyOut += totals.moneyOut;
+            transactions += totals.transactions;
+            players.merge(totals.players);
+            playersChanged |= totals.playersChanged;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package net.bumpier.bshop.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The SQL that differs between MySQL and SQLite. Repositories build their DDL and upserts here instead of
+ * branching on the database type themselves.
+ */
+public enum SqlDialect {
+
+    MYSQL("BIGINT AUTO_INCREMENT PRIMARY KEY", 65535),
+    SQLITE("INTEGER PRIMARY KEY AUTOINCREMENT", 999);
+
+    private final String autoIncrementKey;
+    private final int maxParameters;
+
+    SqlDialect(String autoIncrementKey, int maxParameters) {
+        this.autoIncrementKey = autoIncrementKey;
+        this.maxParameters = maxParameters;
+    }
+
+    public static SqlDialect of(Database database) {
+        return database instanceof MySQLDatabase ? MYSQL : SQLITE;
+    }
+
+    /**
+     * Column type of an auto-incrementing {@code id} primary key.
+     */
+    public String autoIncrementKey() {
+        return autoIncrementKey;
+    }
+
+    /**
+     * Bind parameters one statement may use; {@code IN} lists longer than this are split. SQLite builds
+     * before 3.32 stop at 999.
+     */
+    public int maxParameters() {
+        return maxParameters;
+    }
+
+    /**
+     * Statements that create a table and its indexes if they do not exist. MySQL has no
+     * {@code CREATE INDEX IF NOT EXISTS}, so its indexes go into the table definition.
+     *
+     * @param columns column definitions, comma separated
+     */
+    public List<String> createTable(String table, String columns, Index... indexes) {
+        if (this == MYSQL) {
+            StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(table).append(" (").append(columns);
+            for (Index index : indexes) {
+                sql.append(", INDEX ").append(index.name()).append(" (").append(index.columns()).append(")");
+            }
+            return Collections.singletonList(sql.append(")").toString());
+        }
+        List<String> statements = new ArrayList<>();
+        statements.add("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")");
+        for (Index index : indexes) {
+            statements.add("CREATE INDEX IF NOT EXISTS " + index.name() + " ON " + table + "(" + index.columns() + ")");
+        }
+        return statements;
+    }
+
+    /**
+     * An INSERT that updates every non-key column when a row with the same key exists.
+     */
+    public String upsert(String table, List<String> columns, List<String> keyColumns) {
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+        List<String> updated = columns.stream().filter(column -> !keyColumns.contains(column)).collect(Collectors.toList());
+        if (this == MYSQL) {
+            return insert + " ON DUPLICATE KEY UPDATE " + updated.stream()
+                    .map(column -> column + " = VALUES(" + column + ")").collect(Collectors.joining(", "));
+        }
+        return insert + " ON CONFLICT(" + String.join(", ", keyColumns) + ") DO UPDATE SET " + updated.stream()
+                .map(column -> column + " = excluded." + column).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * An INSERT that adds every non-key column onto the existing row when a row with the same key exists,
+     * e.g. to accumulate counters from several servers.
+     */
+    public String upsertAdding(String table, List<String> columns, List<String> keyColumns) {
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders(columns.size()) + ")";
+        List<String> updated = columns.stream().filter(column -> !keyColumns.contains(column)).collect(Collectors.toList());
+        if (this == MYSQL) {
+            return insert + " ON DUPLICATE KEY UPDATE " + updated.stream()
+                    .map(column -> column + " = " + column + " + VALUES(" + column + ")").collect(Collectors.joining(", "));
+        }
+        return insert + " ON CONFLICT(" + String.join(", ", keyColumns) + ") DO UPDATE SET " + updated.stream()
+                .map(column -> column + " = " + column + " + excluded." + column).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * An INSERT that silently skips rows whose key already exists.
+     */
+    public String insertIgnore(String table, List<String> columns) {
+        return (this == MYSQL ? "INSERT IGNORE INTO " : "INSERT OR IGNORE INTO ") + table + " (" + String.join(", ", columns)
+                + ") VALUES (" + placeholders(columns.size()) + ")";
+    }
+
+    /**
+     * {@code select} locking the rows it reads until the transaction ends. SQLite already holds the
+     * database write lock inside a write transaction, so it needs no clause.
+     */
+    public String lockingRead(String select) {
+        return this == MYSQL ? select + " FOR UPDATE" : select;
+    }
+
+    /**
+     * {@code count} comma separated bind markers, e.g. for an {@code IN} list.
+     */
+    public static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * A secondary index; {@code columns} is comma separated.
+     */
+    public record Index(String name, String columns) {}
+}
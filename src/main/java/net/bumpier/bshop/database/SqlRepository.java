@@ -0,0 +1,174 @@
+package net.bumpier.bshop.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base class of the typed data-access objects. Subclasses declare their SQL as {@link Query} constants and
+ * bind parameters and map rows with lambdas; this class prepares the statements through the database's
+ * per-connection cache and builds dialect-specific SQL through {@link SqlDialect}.
+ * <p>
+ * Methods taking a {@link Connection} run inside a {@link #read} or {@link #write} block supplied by the
+ * caller, so several operations can share one connection and, for writes, one transaction.
+ */
+public abstract class SqlRepository {
+
+    protected final Database database;
+    protected final SqlDialect dialect;
+
+    protected SqlRepository(Database database) {
+        this.database = database;
+        this.dialect = SqlDialect.of(database);
+    }
+
+    public SqlDialect dialect() {
+        return dialect;
+    }
+
+    /**
+     * Creates a table and its indexes if they do not exist. Blocks; only called while enabling.
+     */
+    protected void createTable(String table, String columns, SqlDialect.Index... indexes) {
+        List<String> statements = dialect.createTable(table, columns, indexes);
+        write(conn -> {
+            try (Statement statement = conn.createStatement()) {
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            }
+            return null;
+        }).join();
+    }
+
+    /**
+     * Adds a column to a table created by an older version. Blocks; only called while enabling.
+     *
+     * @param definition type and default, e.g. {@code BIGINT DEFAULT -1}
+     */
+    protected void addColumnIfMissing(String table, String column, String definition) {
+        write(conn -> {
+            try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+                if (rs.next()) {
+                    return null;
+                }
+            }
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+            }
+            return null;
+        }).join();
+    }
+
+    /**
+     * Runs {@code work} on a pooled (possibly read-only) connection off the calling thread.
+     */
+    protected <T> CompletableFuture<T> read(Database.SqlWork<T> work) {
+        return database.withConnection(work);
+    }
+
+    /**
+     * Runs {@code work} on a connection that may come from a read replica; only for reads that tolerate
+     * replication lag. See {@link Database#getReplicaConnection(UUID)}.
+     */
+    protected <T> CompletableFuture<T> readReplica(UUID sessionPlayer, Database.SqlWork<T> work) {
+        return database.withReplicaConnection(sessionPlayer, work);
+    }
+
+    /**
+     * Runs {@code work} in a write transaction; see {@link Database#write(Database.SqlWork)}.
+     */
+    protected <T> CompletableFuture<T> write(Database.SqlWork<T> work) {
+        return database.write(work);
+    }
+
+    protected <T> List<T> list(Connection conn, Query<T> query, Binder binder) throws SQLException {
+        PreparedStatement statement = database.prepare(conn, query.sql());
+        binder.bind(statement);
+        List<T> rows = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rows.add(query.mapper().map(rs));
+            }
+        }
+        return rows;
+    }
+
+    protected int update(Connection conn, String sql, Binder binder) throws SQLException {
+        PreparedStatement statement = database.prepare(conn, sql);
+        binder.bind(statement);
+        return statement.executeUpdate();
+    }
+
+    /**
+     * Runs {@code sql} once per row as one JDBC batch (one multi-row INSERT on MySQL).
+     */
+    protected <E> void batch(Connection conn, String sql, Collection<? extends E> rows, RowBinder<? super E> binder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = database.prepare(conn, sql);
+        for (E row : rows) {
+            binder.bind(statement, row);
+            statement.addBatch();
+        }
+        statement.executeBatch();
+    }
+
+    /**
+     * Splits {@code values} into chunks small enough for one {@code IN} list each, leaving
+     * {@code otherParameters} bind markers free per statement.
+     */
+    protected <E> List<List<E>> chunksForIn(Collection<E> values, int otherParameters) {
+        int size = Math.max(1, dialect.maxParameters() - otherParameters);
+        List<List<E>> chunks = new ArrayList<>();
+        List<E> chunk = new ArrayList<>(Math.min(size, values.size()));
+        for (E value : values) {
+            chunk.add(value);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Length to give an {@code IN} list of {@code count} values: the next power of two, so queries over
+     * varying numbers of values share a few cached statements. Pad by repeating a value.
+     */
+    protected int paddedInSize(int count, int otherParameters) {
+        int size = Integer.bitCount(count) == 1 ? count : Integer.highestOneBit(count) << 1;
+        return Math.max(count, Math.min(size, dialect.maxParameters() - otherParameters));
+    }
+
+    /**
+     * A query and how to turn one of its rows into a {@code T}.
+     */
+    public record Query<T>(String sql, RowMapper<T> mapper) {}
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowBinder<E> {
+        void bind(PreparedStatement statement, E row) throws SQLException;
+    }
+}
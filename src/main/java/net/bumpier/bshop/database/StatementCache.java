@@ -0,0 +1,64 @@
+package net.bumpier.bshop.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statements kept per connection and reused by SQL text, so a statement is compiled once per
+ * connection instead of once per use. A connection is only used by one thread at a time, so the
+ * statements of one connection need no locking; only the map of connections is shared.
+ */
+final class StatementCache {
+
+    private final Map<Connection, Map<String, PreparedStatement>> statements = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * The cached statement for {@code sql} on {@code connection} with its parameters and batch cleared,
+     * prepared on first use. Callers must not close it.
+     */
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        Map<String, PreparedStatement> cached = statements.computeIfAbsent(connection, c -> new HashMap<>());
+        PreparedStatement statement = cached.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            statement.clearBatch();
+            hits.incrementAndGet();
+            return statement;
+        }
+        statement = connection.prepareStatement(sql);
+        cached.put(sql, statement);
+        misses.incrementAndGet();
+        return statement;
+    }
+
+    /**
+     * Closes and forgets every statement of a connection; call before the connection is closed.
+     */
+    void evict(Connection connection) {
+        Map<String, PreparedStatement> cached = statements.remove(connection);
+        if (cached == null) {
+            return;
+        }
+        for (PreparedStatement statement : cached.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // The connection is going away anyway
+            }
+        }
+    }
+
+    void putStats(Map<String, Object> stats) {
+        long total = hits.get() + misses.get();
+        stats.put("statement_cache_connections", statements.size());
+        stats.put("statement_cache_hit_rate_percent", total > 0 ? hits.get() * 100.0 / total : 0.0);
+    }
+}
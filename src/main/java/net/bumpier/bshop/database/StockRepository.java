@@ -0,0 +1,95 @@
+package net.bumpier.bshop.database;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Data access for the global stock kept in {@code bshop_items.stock}. {@code stock_epoch} is the rotation
+ * the stock belongs to: the first server to reach a new rotation refills the row, and sales of an older
+ * rotation no longer apply.
+ */
+public class StockRepository extends SqlRepository {
+
+    private static final String CLAIM = "UPDATE bshop_items SET stock = ?, stock_epoch = ? WHERE shop_id = ? AND item_id = ? AND stock_epoch < ?";
+    // Relative, so concurrent sales from several servers never overwrite each other
+    private static final String TAKE = "UPDATE bshop_items SET stock = stock - ? WHERE shop_id = ? AND item_id = ? AND stock_epoch = ?";
+    private static final Query<StockRow> ALL = new Query<>(
+            "SELECT shop_id, item_id, stock, stock_epoch FROM bshop_items WHERE stock_epoch >= 0",
+            rs -> new StockRow(rs.getString("shop_id"), rs.getString("item_id"), rs.getInt("stock"), rs.getLong("stock_epoch")));
+
+    private final String insertMissing;
+
+    public StockRepository(Database database) {
+        super(database);
+        this.insertMissing = dialect.insertIgnore("bshop_items", Arrays.asList("shop_id", "item_id", "material", "stock", "stock_epoch"));
+    }
+
+    /**
+     * Creates the table if needed and adds {@code stock_epoch} to tables of older versions. Blocks; only
+     * called while enabling.
+     */
+    public void createTable() {
+        createTable("bshop_items",
+                "id " + dialect.autoIncrementKey() + "," +
+                "shop_id VARCHAR(64) NOT NULL," +
+                "item_id VARCHAR(128) NOT NULL," +
+                "material VARCHAR(64) NOT NULL," +
+                "buy_price DOUBLE DEFAULT -1," +
+                "sell_price DOUBLE DEFAULT -1," +
+                "stock INT DEFAULT -1," +
+                "stock_epoch BIGINT DEFAULT -1," +
+                "UNIQUE (shop_id, item_id)");
+        addColumnIfMissing("bshop_items", "stock_epoch", "BIGINT DEFAULT -1");
+    }
+
+    /**
+     * Refills the stock of every claim whose row still belongs to an older rotation, then subtracts every
+     * sale, all in one transaction.
+     */
+    public CompletableFuture<Void> save(Collection<StockClaim> claims, Collection<StockSale> sales) {
+        return write(conn -> {
+            batch(conn, insertMissing, claims, (statement, claim) -> {
+                statement.setString(1, claim.shopId());
+                statement.setString(2, claim.itemId());
+                statement.setString(3, claim.material());
+                statement.setInt(4, claim.stock());
+                statement.setLong(5, claim.epoch());
+            });
+            batch(conn, CLAIM, claims, (statement, claim) -> {
+                statement.setInt(1, claim.stock());
+                statement.setLong(2, claim.epoch());
+                statement.setString(3, claim.shopId());
+                statement.setString(4, claim.itemId());
+                statement.setLong(5, claim.epoch());
+            });
+            batch(conn, TAKE, sales, (statement, sale) -> {
+                statement.setInt(1, sale.amount());
+                statement.setString(2, sale.shopId());
+                statement.setString(3, sale.itemId());
+                statement.setLong(4, sale.epoch());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Every row with tracked stock.
+     */
+    public CompletableFuture<List<StockRow>> loadAll() {
+        return read(conn -> list(conn, ALL, statement -> {}));
+    }
+
+    /**
+     * The full stock of an item for a rotation.
+     */
+    public record StockClaim(String shopId, String itemId, String material, int stock, long epoch) {}
+
+    /**
+     * Units sold since the last save; negative when released reservations outweigh sales.
+     */
+    public record StockSale(String shopId, String itemId, long epoch, int amount) {}
+
+    public record StockRow(String shopId, String itemId, int stock, long epoch) {}
+}
@@ -0,0 +1,13 @@
+package net.bumpier.bshop.database;
+
+import java.util.UUID;
+
+/**
+ * One completed buy or sell as stored in {@code bshop_transactions}.
+ *
+ * @param type      "Buy" or "Sell"
+ * @param createdAt epoch milliseconds
+ */
+public record TransactionRecord(String transactionId, UUID playerUuid, String playerName, String shopId, String itemId,
+                                String itemName, String material, int amount, double price, String type,
+                                double balanceAfter, long createdAt) {}
@@ -0,0 +1,125 @@
+package net.bumpier.bshop.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Data access for {@code bshop_transactions}.
+ */
+public class TransactionRepository extends SqlRepository {
+
+    private static final String COLUMNS = "transaction_id, player_uuid, player_name, shop_id, item_id, item_name, material, " +
+            "amount, price, type, balance_after, created_at";
+    private static final String INSERT = "INSERT INTO bshop_transactions (" + COLUMNS + ") VALUES (" + SqlDialect.placeholders(12) + ")";
+    private static final Query<TransactionRecord> RECENT = new Query<>(
+            "SELECT " + COLUMNS + " FROM bshop_transactions WHERE player_uuid = ? ORDER BY created_at DESC, id DESC LIMIT ?",
+            TransactionRepository::map);
+
+    public TransactionRepository(Database database) {
+        super(database);
+    }
+
+    /**
+     * Creates the table if needed. Blocks; only called while enabling.
+     */
+    public void createTable() {
+        createTable("bshop_transactions",
+                "id " + dialect.autoIncrementKey() + "," +
+                "transaction_id VARCHAR(16) NOT NULL," +
+                "player_uuid VARCHAR(36) NOT NULL," +
+                "player_name VARCHAR(16) NOT NULL," +
+                "shop_id VARCHAR(64) NOT NULL," +
+                "item_id VARCHAR(128)," +
+                "item_name VARCHAR(255) NOT NULL," +
+                "material VARCHAR(64) NOT NULL," +
+                "amount INT NOT NULL," +
+                "price DOUBLE NOT NULL," +
+                "type VARCHAR(8) NOT NULL," +
+                "balance_after DOUBLE NOT NULL," +
+                "created_at BIGINT NOT NULL",
+                new SqlDialect.Index("idx_bshop_transactions_player", "player_uuid, created_at"),
+                new SqlDialect.Index("idx_bshop_transactions_created", "created_at"));
+    }
+
+    /**
+     * Inserts every record in one transaction.
+     */
+    public CompletableFuture<Void> saveAll(Collection<TransactionRecord> records) {
+        return write(conn -> {
+            batch(conn, INSERT, records, (statement, record) -> {
+                statement.setString(1, record.transactionId());
+                statement.setString(2, record.playerUuid().toString());
+                statement.setString(3, record.playerName());
+                statement.setString(4, record.shopId());
+                statement.setString(5, record.itemId());
+                statement.setString(6, record.itemName());
+                statement.setString(7, record.material());
+                statement.setInt(8, record.amount());
+                statement.setDouble(9, record.price());
+                statement.setString(10, record.type());
+                statement.setDouble(11, record.balanceAfter());
+                statement.setLong(12, record.createdAt());
+            });
+            return null;
+        }).thenRun(() -> {
+            for (TransactionRecord record : records) {
+                database.recordWrite(record.playerUuid());
+            }
+        });
+    }
+
+    /**
+     * A player's most recent transactions, newest first. May be read from a replica, except right after
+     * the player's own transactions were saved.
+     */
+    public CompletableFuture<List<TransactionRecord>> loadRecent(UUID playerUuid, int limit) {
+        return readReplica(playerUuid, conn -> list(conn, RECENT, statement -> {
+            statement.setString(1, playerUuid.toString());
+            statement.setInt(2, limit);
+        }));
+    }
+
+    /**
+     * Transactions of several players since {@code since}, oldest first, keyed by player. Players without
+     * transactions are missing from the map. May be read from a replica and lag behind the latest saves.
+     */
+    public CompletableFuture<Map<UUID, List<TransactionRecord>>> loadByPlayers(Collection<UUID> players, long since) {
+        List<String> ids = new ArrayList<>();
+        for (UUID player : new LinkedHashSet<>(players)) {
+            ids.add(player.toString());
+        }
+        return readReplica(null, conn -> {
+            Map<UUID, List<TransactionRecord>> byPlayer = new HashMap<>();
+            for (List<String> chunk : chunksForIn(ids, 1)) {
+                int size = paddedInSize(chunk.size(), 1);
+                Query<TransactionRecord> query = new Query<>("SELECT " + COLUMNS + " FROM bshop_transactions WHERE player_uuid IN (" +
+                        SqlDialect.placeholders(size) + ") AND created_at >= ? ORDER BY created_at, id", TransactionRepository::map);
+                for (TransactionRecord record : list(conn, query, statement -> {
+                    for (int i = 0; i < size; i++) {
+                        // Padding repeats the last id, which does not change the result
+                        statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    statement.setLong(size + 1, since);
+                })) {
+                    byPlayer.computeIfAbsent(record.playerUuid(), k -> new ArrayList<>()).add(record);
+                }
+            }
+            return byPlayer;
+        });
+    }
+
+    private static TransactionRecord map(ResultSet rs) throws SQLException {
+        return new TransactionRecord(rs.getString("transaction_id"), UUID.fromString(rs.getString("player_uuid")), rs.getString("player_name"),
+                rs.getString("shop_id"), rs.getString("item_id"), rs.getString("item_name"), rs.getString("material"),
+                rs.getInt("amount"), rs.getDouble("price"), rs.getString("type"), rs.getDouble("balance_after"),
+                rs.getLong("created_at"));
+    }
+}
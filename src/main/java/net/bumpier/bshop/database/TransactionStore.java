@@ -0,0 +1,228 @@
+package net.bumpier.bshop.database;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Records every buy and sell in {@code bshop_transactions}.
+ * <p>
+ * Transactions are queued and group-committed by a single background thread every
+ * {@code flush_interval_ms}, or sooner once {@code batch_size} rows are waiting. The queue is bounded:
+ * when it is full the caller triggers a flush and, unless it is the server thread, waits up to
+ * {@code offer_timeout_ms} for room before the record is dropped (it is still in the transaction log
+ * file). The server thread drops at once rather than stall the tick on the database.
+ * <p>
+ * MySQL commits every {@code batch_size} rows; with {@code rewriteBatchedStatements} each batch is sent
+ * as one multi-row INSERT. SQLite writes everything queued in a single transaction, since its cost is the
+ * sync per commit rather than the rows.
+ */
+public class TransactionStore {
+
+    private final BShop plugin;
+    private final TransactionRepository repository;
+    private final boolean mysql;
+    private final int batchSize;
+    private final long offerTimeoutMs;
+    private final boolean available;
+
+    private final BlockingQueue<TransactionRecord> queue;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-TransactionWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    // Metrics
+    private final AtomicLong rowsWritten = new AtomicLong(0);
+    private final AtomicLong batchesWritten = new AtomicLong(0);
+    private final AtomicLong droppedRecords = new AtomicLong(0);
+    private final AtomicLong backpressureWaits = new AtomicLong(0);
+    private final AtomicLong lastDropWarning = new AtomicLong(0);
+
+    public TransactionStore(BShop plugin, Database database) {
+        this.plugin = plugin;
+        this.repository = new TransactionRepository(database);
+        this.mysql = repository.dialect() == SqlDialect.MYSQL;
+
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("database.transactions");
+        long flushIntervalMs = config != null ? config.getLong("flush_interval_ms", 1000) : 1000;
+        this.batchSize = Math.max(1, config != null ? config.getInt("batch_size", 500) : 500);
+        this.offerTimeoutMs = Math.max(0, config != null ? config.getLong("offer_timeout_ms", 50) : 50);
+        int capacity = Math.max(batchSize, config != null ? config.getInt("queue_capacity", 10000) : 10000);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        boolean enabled = config == null || config.getBoolean("enabled", true);
+        this.available = enabled && createTable();
+        if (available) {
+            long interval = Math.max(10, flushIntervalMs);
+            writer.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean createTable() {
+        try {
+            repository.createTable();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not create the transaction table; transactions will only be written to the log file.", e);
+            return false;
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Queues a transaction for the next group commit. Never touches the database on the calling thread.
+     */
+    public void record(TransactionRecord record) {
+        if (!available) {
+            return;
+        }
+        if (queue.offer(record)) {
+            if (queue.size() >= batchSize) {
+                requestFlush();
+            }
+            return;
+        }
+
+        // Queue full: flush now and, off the server thread, give the writer a moment to make room
+        requestFlush();
+        if (!Bukkit.isPrimaryThread() && offerTimeoutMs > 0) {
+            backpressureWaits.incrementAndGet();
+            try {
+                if (queue.offer(record, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        droppedRecords.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long last = lastDropWarning.get();
+        if (now - last > 60000 && lastDropWarning.compareAndSet(last, now)) {
+            plugin.getLogger().warning("Transaction queue is full; " + droppedRecords.get() + " transaction(s) were only written to the log file so far.");
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        while (!queue.isEmpty()) {
+            List<TransactionRecord> batch = new ArrayList<>(Math.min(queue.size(), mysql ? batchSize : queue.size()));
+            queue.drainTo(batch, mysql ? batchSize : Integer.MAX_VALUE);
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (!write(batch)) {
+                return;
+            }
+        }
+    }
+
+    private boolean write(List<TransactionRecord> batch) {
+        try {
+            repository.saveAll(batch).join();
+            rowsWritten.addAndGet(batch.size());
+            batchesWritten.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            droppedRecords.addAndGet(batch.size());
+            plugin.getLogger().log(Level.WARNING, "Could not save " + batch.size() + " transaction(s); they remain in the transaction log file.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Loads a player's most recent transactions, newest first, after every queued transaction has been
+     * written.
+     */
+    public CompletableFuture<List<TransactionRecord>> loadRecent(UUID playerUuid, int limit) {
+        if (!available) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        CompletableFuture<List<TransactionRecord>> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                future.complete(readRecent(playerUuid, Math.max(1, limit)));
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(new ArrayList<>());
+        }
+        return future;
+    }
+
+    private List<TransactionRecord> readRecent(UUID playerUuid, int limit) {
+        try {
+            return repository.loadRecent(playerUuid, limit).join();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load the transactions of " + playerUuid + ".", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Writes every queued transaction and stops the writer thread; waits a few seconds at most.
+     */
+    public void shutdown() {
+        try {
+            writer.execute(this::flush);
+        } catch (RejectedExecutionException ignored) {
+            // Already shut down
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get transaction store statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long batches = batchesWritten.get();
+        stats.put("queued_transactions", queue.size());
+        stats.put("transactions_written", rowsWritten.get());
+        stats.put("transaction_batches", batches);
+        stats.put("average_transaction_batch", batches > 0 ? (double) rowsWritten.get() / batches : 0.0);
+        stats.put("transactions_dropped", droppedRecords.get());
+        stats.put("transaction_backpressure_waits", backpressureWaits.get());
+        return stats;
+    }
+}
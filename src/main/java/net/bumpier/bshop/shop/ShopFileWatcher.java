@@ -0,0 +1,118 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.BShop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Watches plugins/bShop/shops/ and hot reloads shop files as they are created, edited or deleted.
+ * Events are debounced: a file is only re-parsed once it has been quiet for the configured delay,
+ * so editors that save in several steps trigger a single reload.
+ */
+public class ShopFileWatcher {
+
+    private final BShop plugin;
+    private final ShopManager shopManager;
+    private final File shopsDirectory;
+    private final long debounceMs;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public ShopFileWatcher(BShop plugin, ShopManager shopManager, File shopsDirectory, long debounceMs) {
+        this.plugin = plugin;
+        this.shopManager = shopManager;
+        this.shopsDirectory = shopsDirectory;
+        this.debounceMs = Math.max(50L, debounceMs);
+    }
+
+    public void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            shopsDirectory.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not watch the shops directory; hot reload is disabled", e);
+            return;
+        }
+        thread = new Thread(this::run, "bShop-ShopFileWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {}
+            watchService = null;
+        }
+    }
+
+    private void run() {
+        Set<String> pending = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // Quiet period is over, reload everything that changed
+                    for (String fileName : pending) {
+                        try {
+                            shopManager.reloadShopFile(fileName);
+                        } catch (Exception e) {
+                            plugin.getLogger().log(Level.WARNING, "Error hot reloading shop file " + fileName, e);
+                        }
+                    }
+                    pending.clear();
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost; recheck every file we know of, unchanged ones are skipped by hash
+                        pending.addAll(shopManager.getLoadedShopFiles());
+                        File[] files = shopsDirectory.listFiles((dir, name) -> name.endsWith(".yml"));
+                        if (files != null) {
+                            for (File file : files) {
+                                pending.add(file.getName());
+                            }
+                        }
+                        continue;
+                    }
+                    String fileName = ((Path) event.context()).getFileName().toString();
+                    if (fileName.endsWith(".yml")) {
+                        pending.add(fileName);
+                    }
+                }
+
+                if (!key.reset()) {
+                    plugin.getLogger().warning("The shops directory is no longer accessible; hot reload has stopped.");
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Shutting down
+        }
+    }
+}
@@ -1,40 +1,74 @@
 package net.bumpier.bshop.shop;
 
 import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.database.DatabaseManager;
+import net.bumpier.bshop.database.MySQLDatabase;
+import net.bumpier.bshop.database.RotationStateStore;
 import net.bumpier.bshop.shop.model.PaginationItem;
+import net.bumpier.bshop.shop.model.RarityRule;
+import net.bumpier.bshop.shop.model.RotationState;
 import net.bumpier.bshop.shop.model.Shop;
 import net.bumpier.bshop.shop.model.ShopItem;
+import net.bumpier.bshop.shop.ui.ShopGuiManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.plugin.RegisteredServiceProvider;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ShopManager {
 
     private final BShop plugin;
-    private final Map<String, Shop> loadedShops = new HashMap<>();
+    // Immutable catalogue, replaced as a whole on every load or hot reload so readers never lock
+    // and never see a half-loaded catalogue
+    private volatile ShopRegistry registry = ShopRegistry.EMPTY;
     private final File shopsDirectory;
-    private final Map<String, Long> nextRotationTimes = new ConcurrentHashMap<>();
+    // Current rotation of every rotational shop, keyed by lower-case shop id. Each state is immutable and
+    // swapped atomically, so readers never need a lock and never see a half-applied rotation.
+    private final Map<String, AtomicReference<RotationState>> rotationStates = new ConcurrentHashMap<>();
+    private final ShopRotationScheduler rotationScheduler;
+    private final ShopRotationPlanner rotationPlanner;
+    // Rotations saved before the last shutdown, consumed as each shop gets its first rotation
+    private final RotationStateStore rotationStore;
+    private final Map<String, RotationStateStore.StoredRotation> restoredRotations = new ConcurrentHashMap<>();
+    // Set when rotations are coordinated across servers sharing one MySQL database
+    private final ShopRotationCoordinator rotationCoordinator;
+    private final List<ShopRotationListener> rotationListeners = new CopyOnWriteArrayList<>();
 
-    // --- Announcements ---
-    private final Map<String, ShopAnnouncement> shopAnnouncements = new ConcurrentHashMap<>();
+    // Shop files are parsed in parallel on this pool
+    private final ForkJoinPool loadPool;
+    private volatile long lastLoadTimeMs = 0;
+
+    // Compiled binary copy of the parsed shop files, reused while the file contents are unchanged
+    private final ShopSnapshotCache snapshotCache;
+    private boolean snapshotEnabled = true;
+    // Serialises full loads and single-file hot reloads so neither overwrites the other's result
+    private final Object registryLock = new Object();
+    private ShopFileWatcher fileWatcher;
+
+    // Announcement settings parsed from a rotational shop file
     private static class ShopAnnouncement {
         final boolean announce;
         final String message;
@@ -44,106 +78,39 @@ public class ShopManager {
         }
     }
 
-    // Add caching fields
-    private final Map<String, Shop> shopCache = new ConcurrentHashMap<>();
-    private final Map<String, Long> cacheTimestamps = new ConcurrentHashMap<>();
-    private final Map<String, List<ShopItem>> itemCache = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService cleanupExecutor = Executors.newScheduledThreadPool(1);
-    private long cacheDuration = 300000; // 5 minutes default
-    private int maxCachedShops = 100;
-    
-    // Add performance monitoring
-    private final AtomicLong cacheHits = new AtomicLong(0);
-    private final AtomicLong cacheMisses = new AtomicLong(0);
-    private final AtomicLong totalRequests = new AtomicLong(0);
-
     public ShopManager(BShop plugin) {
         this.plugin = plugin;
         this.shopsDirectory = new File(plugin.getDataFolder(), "shops");
-        
-        // Load performance settings
-        ConfigurationSection perfConfig = plugin.getConfig().getConfigurationSection("performance.caching");
-        if (perfConfig != null) {
-            this.cacheDuration = perfConfig.getLong("shop_cache_duration", 300000);
-            this.maxCachedShops = perfConfig.getInt("max_cached_shops", 100);
+
+        ConfigurationSection loadingConfig = plugin.getConfig().getConfigurationSection("performance.loading");
+        int parallelism = loadingConfig != null ? loadingConfig.getInt("parallelism", 0) : 0;
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        this.loadPool = new ForkJoinPool(parallelism);
+        this.snapshotEnabled = loadingConfig == null || loadingConfig.getBoolean("snapshot_cache", true);
+        this.snapshotCache = new ShopSnapshotCache(plugin);
+        this.rotationScheduler = new ShopRotationScheduler(plugin, this::rotateIfDue);
+        this.rotationPlanner = new ShopRotationPlanner(this, plugin.getConfig().getString("rotation.seed_salt", "bshop"));
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        if (plugin.getConfig().getBoolean("rotation.persist", true) && databaseManager != null && databaseManager.getDatabase() != null) {
+            this.rotationStore = new RotationStateStore(plugin, databaseManager.getDatabase());
+            this.restoredRotations.putAll(rotationStore.loadAll());
+        } else {
+            this.rotationStore = null;
         }
+        this.rotationCoordinator = createRotationCoordinator(databaseManager);
         
         loadShops();
-        startCleanupTask();
-    }
 
-    private void startCleanupTask() {
-        ConfigurationSection perfConfig = plugin.getConfig().getConfigurationSection("performance.memory");
-        long cleanupInterval = perfConfig != null ? perfConfig.getLong("cleanup_interval", 300000) : 300000;
-        
-        cleanupExecutor.scheduleAtFixedRate(() -> {
-            try {
-                long cutoff = System.currentTimeMillis() - cacheDuration;
-                int removedShops = 0;
-                int removedItems = 0;
-                
-                // Clean expired shop cache entries
-                Iterator<Map.Entry<String, Shop>> shopIterator = shopCache.entrySet().iterator();
-                while (shopIterator.hasNext()) {
-                    Map.Entry<String, Shop> entry = shopIterator.next();
-                    if (cacheTimestamps.getOrDefault(entry.getKey(), 0L) < cutoff) {
-                        shopIterator.remove();
-                        cacheTimestamps.remove(entry.getKey());
-                        removedShops++;
-                    }
-                }
-                
-                // Clean expired item cache entries
-                Iterator<Map.Entry<String, List<ShopItem>>> itemIterator = itemCache.entrySet().iterator();
-                while (itemIterator.hasNext()) {
-                    Map.Entry<String, List<ShopItem>> entry = itemIterator.next();
-                    if (cacheTimestamps.getOrDefault(entry.getKey(), 0L) < cutoff) {
-                        itemIterator.remove();
-                        cacheTimestamps.remove(entry.getKey());
-                        removedItems++;
-                    }
-                }
-                
-                // Limit cache size with LRU eviction
-                if (shopCache.size() > maxCachedShops) {
-                    List<String> oldestKeys = cacheTimestamps.entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue())
-                            .limit(shopCache.size() - maxCachedShops)
-                            .map(Map.Entry::getKey)
-                            .collect(Collectors.toList());
-                    
-                    for (String key : oldestKeys) {
-                        shopCache.remove(key);
-                        itemCache.remove(key);
-                        cacheTimestamps.remove(key);
-                        removedShops++;
-                    }
-                }
-                
-                // Log cleanup statistics periodically
-                if (removedShops > 0 || removedItems > 0) {
-                    plugin.getLogger().fine("Cache cleanup: removed " + removedShops + " shops, " + removedItems + " item lists");
-                }
-                
-                // Log cache statistics every 10 minutes
-                if (System.currentTimeMillis() % 600000 < cleanupInterval) {
-                    long hits = cacheHits.get();
-                    long misses = cacheMisses.get();
-                    long total = totalRequests.get();
-                    double hitRate = total > 0 ? (double) hits / total * 100 : 0;
-                    
-                    plugin.getLogger().info(String.format("Cache stats: %d hits, %d misses, %.1f%% hit rate, %d cached shops", 
-                        hits, misses, hitRate, shopCache.size()));
-                }
-                
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.WARNING, "Error during cache cleanup", e);
-            }
-        }, cleanupInterval / 1000, cleanupInterval / 1000, TimeUnit.SECONDS);
+        if (loadingConfig == null || loadingConfig.getBoolean("hot_reload", true)) {
+            long debounceMs = loadingConfig != null ? loadingConfig.getLong("hot_reload_debounce_ms", 500) : 500;
+            this.fileWatcher = new ShopFileWatcher(plugin, this, shopsDirectory, debounceMs);
+            this.fileWatcher.start();
+        }
     }
 
     public void loadShops() {
-        loadedShops.clear();
         if (!shopsDirectory.exists()) {
             shopsDirectory.mkdirs();
         }
@@ -159,35 +126,284 @@ public class ShopManager {
         File[] shopFiles = shopsDirectory.listFiles((dir, name) -> name.endsWith(".yml"));
         if (shopFiles == null || shopFiles.length == 0) {
             plugin.getLogger().warning("Could not find any .yml files in the shops directory. No shops will be loaded.");
+            synchronized (registryLock) {
+                registry = ShopRegistry.EMPTY;
+                rotationStates.keySet().forEach(rotationScheduler::cancel);
+                rotationStates.clear();
+            }
             return;
         }
 
+        long start = System.nanoTime();
+        rotationPlanner.setSalt(plugin.getConfig().getString("rotation.seed_salt", "bshop"));
+        Map<String, ShopSnapshotCache.Entry> snapshot = snapshotEnabled ? snapshotCache.read() : Collections.emptyMap();
+
+        // Start the largest files first so the total load time tracks the largest file
+        Arrays.sort(shopFiles, Comparator.comparingLong(File::length).reversed());
+        List<ForkJoinTask<ShopLoadResult>> tasks = new ArrayList<>(shopFiles.length);
         for (File shopFile : shopFiles) {
-            String shopId = shopFile.getName().replace(".yml", "");
+            tasks.add(loadPool.submit(() -> parseShopFile(shopFile, snapshot)));
+        }
 
-            FileConfiguration shopConfig = YamlConfiguration.loadConfiguration(shopFile);
+        Map<String, Shop> shops = new HashMap<>();
+        Map<String, ShopSnapshotCache.Entry> snapshotEntries = new HashMap<>();
+        int totalItems = 0;
+        int fromSnapshot = 0;
+        for (ForkJoinTask<ShopLoadResult> task : tasks) {
+            ShopLoadResult result = task.join();
+            if (result.shop() == null) {
+                continue; // Failure already logged by the parser
+            }
+            String key = result.shop().id().toLowerCase();
+            if (shops.containsKey(key)) {
+                plugin.getLogger().warning("   - FAILED: " + result.fileName() + " uses the same shop id as another file (ids are case-insensitive). Skipping.");
+                continue;
+            }
+            shops.put(key, result.shop());
+            totalItems += result.itemCount();
+            if (result.fromSnapshot()) {
+                fromSnapshot++;
+            }
+            snapshotEntries.put(result.fileName(), toSnapshotEntry(result));
+            plugin.getLogger().info(String.format("   - Loaded %s (%d items) in %.1fms%s",
+                    result.fileName(), result.itemCount(), result.elapsedNanos() / 1_000_000.0, result.fromSnapshot() ? " [cached]" : ""));
+        }
+
+        // Publish the new catalogue in one step
+        synchronized (registryLock) {
+            registry = ShopRegistry.of(snapshotEntries.values());
+            for (String key : new ArrayList<>(rotationStates.keySet())) {
+                if (!shops.containsKey(key)) {
+                    rotationStates.remove(key);
+                    rotationScheduler.cancel(key);
+                    rotationPlanner.forget(key);
+                }
+            }
+            shops.values().forEach(this::reconcileRotation);
+        }
+
+        lastLoadTimeMs = (System.nanoTime() - start) / 1_000_000L;
+        plugin.getLogger().info("Loaded " + shops.size() + "/" + shopFiles.length + " shops (" + totalItems + " items, "
+                + fromSnapshot + " from snapshot) in " + lastLoadTimeMs + "ms");
+
+        // Only rewrite the snapshot when something was actually parsed from YAML or a file went away
+        if (snapshotEnabled && (fromSnapshot != snapshotEntries.size() || snapshot.size() != snapshotEntries.size())) {
+            loadPool.execute(() -> snapshotCache.write(snapshotEntries.values()));
+        }
+    }
+
+    /**
+     * Re-parses a single shop file after it changed on disk and swaps only that shop into the registry.
+     * Called from the file watcher thread; open GUIs of the shop are refreshed on the main thread afterwards.
+     * A file that fails to parse leaves the previously loaded version in place.
+     */
+    public void reloadShopFile(String fileName) {
+        File shopFile = new File(shopsDirectory, fileName);
+        ShopSnapshotCache.Entry previous = registry.file(fileName);
+        String shopId;
+
+        if (!shopFile.isFile()) {
+            if (previous == null) {
+                return; // Never loaded, nothing to unload
+            }
+            shopId = previous.shop().id();
+            synchronized (registryLock) {
+                registry = registry.without(fileName);
+                rotationStates.remove(shopId.toLowerCase());
+                rotationScheduler.cancel(shopId.toLowerCase());
+                rotationPlanner.forget(shopId);
+            }
+            plugin.getLogger().info("Shop file " + fileName + " was removed; unloaded shop '" + shopId + "'.");
+        } else {
+            // Reusing the current entry as the snapshot makes repeated events for unchanged content a no-op
+            Map<String, ShopSnapshotCache.Entry> current = previous != null ? Map.of(fileName, previous) : Collections.emptyMap();
+            ShopLoadResult result = parseShopFile(shopFile, current);
+            if (result.fromSnapshot()) {
+                return;
+            }
+            if (result.shop() == null) {
+                if (previous != null) {
+                    plugin.getLogger().warning("Keeping the previously loaded version of " + fileName + " until the file is fixed.");
+                }
+                return;
+            }
 
-            // Check if the file was empty or had a major syntax error
+            Shop shop = result.shop();
+            shopId = shop.id();
+            String key = shopId.toLowerCase();
+            synchronized (registryLock) {
+                ShopSnapshotCache.Entry owner = registry.fileOf(key);
+                if (owner != null && !owner.fileName().equals(fileName)) {
+                    plugin.getLogger().warning("   - FAILED: " + fileName + " uses the same shop id as another file (ids are case-insensitive). Skipping.");
+                    return;
+                }
+                registry = registry.with(toSnapshotEntry(result));
+                reconcileRotation(shop);
+            }
+            plugin.getLogger().info(String.format("Hot reloaded %s (%d items) in %.1fms",
+                    fileName, result.itemCount(), result.elapsedNanos() / 1_000_000.0));
+        }
+
+        if (snapshotEnabled) {
+            Collection<ShopSnapshotCache.Entry> entries = registry.files().values();
+            loadPool.execute(() -> snapshotCache.write(entries));
+        }
+
+        if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                ShopGuiManager guiManager = plugin.getShopGuiManager();
+                if (guiManager != null) {
+                    guiManager.invalidateShop(shopId);
+                    guiManager.refreshOpenShop(shopId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes sure a freshly (re)loaded rotational shop is on its scheduled rotation. Items are recomputed from
+     * the new definition, which leaves them unchanged unless the item list itself changed. A rotation that was
+     * forced ahead of schedule keeps its epoch until its regular end. Non-rotational shops lose any rotation.
+     */
+    private void reconcileRotation(Shop shop) {
+        String key = shop.id().toLowerCase();
+        if (!isRotational(shop)) {
+            if (rotationStates.remove(key) != null) {
+                rotationScheduler.cancel(key);
+                rotationPlanner.forget(key);
+            }
+            return;
+        }
+        AtomicReference<RotationState> ref = rotationStates.computeIfAbsent(key, k -> new AtomicReference<>());
+        RotationState current = ref.get();
+        long now = System.currentTimeMillis();
+        long epoch = rotationPlanner.epochAt(shop, now);
+        RotationState reconciled = current == null ? restoreRotation(shop, key, epoch, now) : null;
+        if (reconciled == null) {
+            if (current != null && current.epoch() > epoch
+                    && current.nextRotationAt() == (current.epoch() + 1) * rotationPlanner.intervalMs(shop)) {
+                reconciled = new RotationState(rotationPlanner.selectItems(shop, current.epoch()), current.epoch(),
+                        current.rotatedAt(), current.nextRotationAt());
+            } else {
+                reconciled = rotationPlanner.plan(shop, epoch);
+            }
+            if (!sameRotation(current, reconciled)) {
+                if (rotationCoordinator != null) {
+                    // The shared row is versioned; writing it directly would hide the change from other servers
+                    rotationCoordinator.publish(shop, reconciled);
+                } else if (rotationStore != null) {
+                    rotationStore.save(key, reconciled);
+                }
+            }
+        }
+        ref.set(reconciled);
+        rotationScheduler.schedule(key, reconciled.nextRotationAt(), reconciled.epoch());
+    }
+
+    /**
+     * Rebuilds the rotation saved before the last shutdown if it is still running. The saved items are kept
+     * as long as they all still exist; otherwise the items of that epoch are recomputed.
+     */
+    private RotationState restoreRotation(Shop shop, String key, long epoch, long now) {
+        RotationStateStore.StoredRotation stored = restoredRotations.remove(key);
+        if (stored == null || stored.epoch() < epoch || stored.nextRotationAt() <= now) {
+            return null;
+        }
+        return resolveStoredRotation(shop, stored);
+    }
+
+    private RotationState resolveStoredRotation(Shop shop, RotationStateStore.StoredRotation stored) {
+        Map<String, ShopItem> itemsById = new HashMap<>();
+        for (ShopItem item : shop.items()) {
+            itemsById.put(item.id(), item);
+        }
+        List<ShopItem> activeItems = new ArrayList<>(stored.activeItemIds().size());
+        for (String itemId : stored.activeItemIds()) {
+            ShopItem item = itemsById.get(itemId);
+            if (item == null) {
+                activeItems = rotationPlanner.selectItems(shop, stored.epoch());
+                break;
+            }
+            activeItems.add(item);
+        }
+        return new RotationState(activeItems, stored.epoch(), stored.rotatedAt(), stored.nextRotationAt());
+    }
+
+    private static boolean sameRotation(RotationState a, RotationState b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.epoch() != b.epoch() || a.nextRotationAt() != b.nextRotationAt() || a.activeItems().size() != b.activeItems().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.activeItems().size(); i++) {
+            if (!a.activeItems().get(i).id().equals(b.activeItems().get(i).id())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * File names of all currently loaded shops.
+     */
+    Set<String> getLoadedShopFiles() {
+        return registry.files().keySet();
+    }
+
+    private static ShopSnapshotCache.Entry toSnapshotEntry(ShopLoadResult result) {
+        ShopAnnouncement announcement = result.announcement();
+        return new ShopSnapshotCache.Entry(result.fileName(), result.contentHash(), result.shop(),
+                announcement != null && announcement.announce, announcement != null ? announcement.message : null);
+    }
+
+
+    /**
+     * Parses and validates a single shop file. Runs on the load pool, so it must not touch shared state.
+     */
+    private ShopLoadResult parseShopFile(File shopFile, Map<String, ShopSnapshotCache.Entry> snapshot) {
+        long start = System.nanoTime();
+        String fileName = shopFile.getName();
+        try {
+            String shopId = fileName.replace(".yml", "");
+            byte[] content = Files.readAllBytes(shopFile.toPath());
+            String contentHash = ShopSnapshotCache.hash(content);
+
+            ShopSnapshotCache.Entry cached = snapshot.get(fileName);
+            if (cached != null && cached.contentHash().equals(contentHash) && cached.shop().id().equals(shopId)) {
+                Shop shop = cached.shop();
+                ShopAnnouncement announcement = isRotational(shop) ? new ShopAnnouncement(cached.announceRotation(), cached.rotationMessage()) : null;
+                return new ShopLoadResult(fileName, shop, announcement, countItems(shop), System.nanoTime() - start, contentHash, true);
+            }
+
+            YamlConfiguration shopConfig = new YamlConfiguration();
+            try {
+                shopConfig.loadFromString(new String(content, StandardCharsets.UTF_8));
+            } catch (InvalidConfigurationException e) {
+                plugin.getLogger().log(Level.SEVERE, "   - FAILED: " + fileName + " contains a YAML syntax error. Skipping.", e);
+                return ShopLoadResult.failed(fileName, System.nanoTime() - start);
+            }
+
+            // Check if the file was empty
             if (shopConfig.getKeys(false).isEmpty()) {
-                plugin.getLogger().warning("   - FAILED: " + shopFile.getName() + " is empty or contains a major YAML syntax error. Skipping.");
-                continue;
+                plugin.getLogger().warning("   - FAILED: " + fileName + " is empty or contains a major YAML syntax error. Skipping.");
+                return ShopLoadResult.failed(fileName, System.nanoTime() - start);
             }
 
             String title = shopConfig.getString("title", "Shop");
             int size = Math.max(1, Math.min(6, shopConfig.getInt("size", 3))) * 9;
 
             Map<String, PaginationItem> paginationItems = loadPaginationItems(shopConfig.getConfigurationSection("pagination"));
-            List<ShopItem> items = loadShopItems(shopConfig.getMapList("items"));
+            List<ShopItem> items = loadShopItems(shopConfig.getMapList("items"), fileName);
 
             String type = shopConfig.getString("type", null);
             String rotationInterval = null;
             int slots = 0;
-            List<ShopItem> activeItems = null;
             List<Integer> itemSlots = null;
             List<ShopItem> featuredItems = null;
             List<Integer> featuredSlots = null;
-            boolean announceRotation = false;
-            String rotationMessage = null;
+            Map<String, RarityRule> rarities = Collections.emptyMap();
+            ShopAnnouncement announcement = null;
             if (type != null && type.equalsIgnoreCase("rotational")) {
                 rotationInterval = shopConfig.getString("rotation-interval", "24h");
                 slots = shopConfig.getInt("slots", 5);
@@ -197,81 +413,243 @@ public class ShopManager {
                 }
                 // Read featured-items and featured-slots if present
                 if (shopConfig.contains("featured-items")) {
-                    featuredItems = loadShopItems(shopConfig.getMapList("featured-items"));
+                    featuredItems = loadShopItems(shopConfig.getMapList("featured-items"), fileName);
                 }
                 if (shopConfig.contains("featured-slots")) {
                     featuredSlots = shopConfig.getIntegerList("featured-slots");
                 }
+                rarities = loadRarities(shopConfig.getConfigurationSection("rarities"), items, slots, fileName);
                 // Announcements
-                announceRotation = shopConfig.getBoolean("announce-rotation", false);
-                rotationMessage = shopConfig.getString("rotation-message", "<gold>The %shop% shop has rotated!");
-                // Randomly select initial active items
-                List<ShopItem> shuffled = new ArrayList<>(items);
-                java.util.Collections.shuffle(shuffled);
-                activeItems = new ArrayList<>(shuffled.subList(0, Math.min(slots, shuffled.size())));
+                announcement = new ShopAnnouncement(
+                        shopConfig.getBoolean("announce-rotation", false),
+                        shopConfig.getString("rotation-message", "<gold>The %shop% shop has rotated!"));
             }
 
-            Shop shop = new Shop(shopId, title, size, paginationItems, items, type, rotationInterval, slots, activeItems, itemSlots, featuredItems, featuredSlots);
-            if (type != null && type.equalsIgnoreCase("rotational")) {
-                shopAnnouncements.put(shopId, new ShopAnnouncement(announceRotation, rotationMessage));
-            }
-            loadedShops.put(shopId.toLowerCase(), shop);
+            Shop shop = new Shop(shopId, title, size, paginationItems, items, type, rotationInterval, slots, itemSlots, featuredItems, featuredSlots, rarities);
+            return new ShopLoadResult(fileName, shop, announcement, countItems(shop), System.nanoTime() - start, contentHash, false);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "   - FAILED: Could not load shop file " + fileName + ".", e);
+            return ShopLoadResult.failed(fileName, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isRotational(Shop shop) {
+        return shop.type() != null && shop.type().equalsIgnoreCase("rotational");
+    }
+
+    private static int countItems(Shop shop) {
+        return shop.items().size() + (shop.featuredItems() != null ? shop.featuredItems().size() : 0);
+    }
+
+    /**
+     * Outcome of parsing one shop file; {@code shop} is null when the file was skipped.
+     */
+    private record ShopLoadResult(String fileName, Shop shop, ShopAnnouncement announcement, int itemCount, long elapsedNanos,
+                                  String contentHash, boolean fromSnapshot) {
+        static ShopLoadResult failed(String fileName, long elapsedNanos) {
+            return new ShopLoadResult(fileName, null, null, 0, elapsedNanos, null, false);
         }
     }
 
+    /**
+     * Starts firing rotations. Each rotation is scheduled for the exact tick it is due.
+     */
     public void startRotationTask(BShop plugin) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    long now = System.currentTimeMillis();
-                    int rotatedShops = 0;
-                    
-                    for (Shop shop : loadedShops.values()) {
-                        if (shop.type() != null && shop.type().equalsIgnoreCase("rotational")) {
-                            long next = nextRotationTimes.getOrDefault(shop.id(), 0L);
-                            if (now >= next) {
-                                // Rotate items
-                                List<ShopItem> shuffled = new ArrayList<>(shop.items());
-                                Collections.shuffle(shuffled);
-                                List<ShopItem> newActive = new ArrayList<>(shuffled.subList(0, Math.min(shop.slots(), shuffled.size())));
-                                
-                                // Update activeItems via reflection (since record is immutable)
-                                try {
-                                    java.lang.reflect.Field f = shop.getClass().getDeclaredField("activeItems");
-                                    f.setAccessible(true);
-                                    f.set(shop, newActive);
-                                } catch (Exception ignored) {}
-                                
-                                // Schedule next rotation
-                                long intervalMs = parseInterval(shop.rotationInterval());
-                                nextRotationTimes.put(shop.id(), now + intervalMs);
-                                
-                                // Announce rotation if enabled
-                                ShopAnnouncement announcement = shopAnnouncements.get(shop.id());
-                                if (announcement != null && announcement.announce) {
-                                    String msg = announcement.message.replace("%shop%", shop.title());
-                                    Bukkit.broadcastMessage(msg);
-                                }
-                                
-                                rotatedShops++;
-                                
-                                // Clear cache for this shop since items changed
-                                shopCache.remove(shop.id());
-                                cacheTimestamps.remove(shop.id());
-                            }
-                        }
-                    }
-                    
-                    if (rotatedShops > 0) {
-                        plugin.getLogger().fine("Rotated " + rotatedShops + " shops");
-                    }
-                    
-                } catch (Exception e) {
-                    plugin.getLogger().log(Level.WARNING, "Error during shop rotation", e);
-                }
+        rotationScheduler.start();
+        if (rotationCoordinator != null) {
+            rotationCoordinator.start();
+        }
+    }
+
+    private ShopRotationCoordinator createRotationCoordinator(DatabaseManager databaseManager) {
+        ConfigurationSection clusterConfig = plugin.getConfig().getConfigurationSection("rotation.cluster");
+        if (clusterConfig == null || !clusterConfig.getBoolean("enabled", false)) {
+            return null;
+        }
+        if (databaseManager == null || !(databaseManager.getDatabase() instanceof MySQLDatabase)) {
+            plugin.getLogger().warning("rotation.cluster.enabled requires database.type MySQL; rotations stay local to this server.");
+            return null;
+        }
+        String nodeId = clusterConfig.getString("node_id", "");
+        if (nodeId == null || nodeId.isEmpty()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+        return new ShopRotationCoordinator(plugin, this, databaseManager.getDatabase(), nodeId,
+                clusterConfig.getLong("lease_ms", 10000), clusterConfig.getLong("poll_interval_ms", 1000));
+    }
+
+    /**
+     * Called by the rotation scheduler when a rotation is due. Does nothing if the shop was rotated,
+     * reloaded or removed since the rotation was scheduled.
+     */
+    private void rotateIfDue(String shopKey, long epoch) {
+        Shop shop = registry.get(shopKey);
+        AtomicReference<RotationState> ref = rotationStates.get(shopKey);
+        if (shop == null || ref == null) {
+            return;
+        }
+        RotationState current = ref.get();
+        long now = System.currentTimeMillis();
+        if (current != null && current.epoch() == epoch && now >= current.nextRotationAt()) {
+            advanceRotation(shop, ref, current, now);
+        }
+    }
+
+    public void addRotationListener(ShopRotationListener listener) {
+        rotationListeners.add(listener);
+    }
+
+    public void removeRotationListener(ShopRotationListener listener) {
+        rotationListeners.remove(listener);
+    }
+
+    /**
+     * Rotates a shop immediately to its next epoch, bringing that epoch's items forward. The forced
+     * rotation keeps the end of its own slot, so it runs for the rest of the current slot plus the whole
+     * next one: the regular rotation at the next boundary is skipped, and later boundaries are unchanged.
+     * Forcing again in the same slot brings the epoch after that forward too. When rotations are
+     * coordinated across servers this only asks the server holding the shop's lease to rotate, and the new
+     * rotation is applied here once it is stored.
+     * @return false if the shop does not exist or is not rotational
+     */
+    public boolean rotateShop(String shopId) {
+        Shop shop = registry.get(shopId);
+        AtomicReference<RotationState> ref = shop != null ? rotationStates.get(shop.id().toLowerCase()) : null;
+        if (ref == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        RotationState current;
+        do {
+            current = ref.get();
+        } while (!advanceRotation(shop, ref, current, now));
+        return true;
+    }
+
+    /**
+     * Publishes the next rotation if the state is still {@code expected}; a concurrent rotation wins otherwise.
+     */
+    private boolean advanceRotation(Shop shop, AtomicReference<RotationState> ref, RotationState expected, long now) {
+        if (rotationCoordinator != null) {
+            // Only the server holding the shop's lease rotates; everyone applies the stored result
+            rotationCoordinator.requestRotation(shop, expected);
+            return true;
+        }
+        RotationState next = planNextRotation(shop, expected, now);
+        if (!applyRotation(shop, ref, expected, next)) {
+            return false;
+        }
+        if (rotationStore != null) {
+            rotationStore.save(shop.id().toLowerCase(), next);
+        }
+        return true;
+    }
+
+    /**
+     * The rotation that follows {@code expected}: the scheduled epoch, or one ahead of it when forced early.
+     */
+    RotationState planNextRotation(Shop shop, RotationState expected, long now) {
+        long epoch = Math.max(expected != null ? expected.epoch() + 1 : 0, rotationPlanner.epochAt(shop, now));
+        RotationState planned = rotationPlanner.plan(shop, epoch);
+        // A rotation forced ahead of its slot starts now and ends with its slot, so the next boundary is skipped
+        return planned.rotatedAt() > now
+                ? new RotationState(planned.activeItems(), epoch, now, planned.nextRotationAt())
+                : planned;
+    }
+
+    /**
+     * Swaps in {@code next} if the shop is still on {@code expected}, then reschedules and notifies.
+     */
+    boolean applyRotation(Shop shop, AtomicReference<RotationState> ref, RotationState expected, RotationState next) {
+        if (ref == null || !ref.compareAndSet(expected, next)) {
+            return false;
+        }
+        rotationScheduler.schedule(shop.id().toLowerCase(), next.nextRotationAt(), next.epoch());
+        if (Bukkit.isPrimaryThread()) {
+            onRotated(shop, expected, next);
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, () -> onRotated(shop, expected, next));
+        }
+        return true;
+    }
+
+    boolean applyRotation(Shop shop, RotationState expected, RotationState next) {
+        return applyRotation(shop, rotationStates.get(shop.id().toLowerCase()), expected, next);
+    }
+
+    /**
+     * Adopts a rotation another server stored. Ignored when the shop is unknown here or already on it.
+     */
+    void applyStoredRotation(String shopKey, RotationStateStore.StoredRotation stored) {
+        Shop shop = registry.get(shopKey);
+        AtomicReference<RotationState> ref = rotationStates.get(shopKey);
+        if (shop == null || ref == null) {
+            return;
+        }
+        RotationState next = resolveStoredRotation(shop, stored);
+        RotationState current;
+        do {
+            current = ref.get();
+            if (sameRotation(current, next)) {
+                return;
             }
-        }.runTaskTimer(plugin, 20L, 1200L); // Run every minute
+        } while (!applyRotation(shop, ref, current, next));
+    }
+
+    /**
+     * Shops loaded on this server, for background tasks that need to walk all of them.
+     */
+    Collection<Shop> loadedShopDefinitions() {
+        return registry.asMap().values();
+    }
+
+    /**
+     * Main-thread follow-up of a rotation: announcement, open GUIs and listeners.
+     */
+    private void onRotated(Shop shop, RotationState previous, RotationState current) {
+        // Announce rotation if enabled
+        ShopSnapshotCache.Entry file = registry.fileOf(shop.id());
+        if (file != null && file.announceRotation() && file.rotationMessage() != null) {
+            String msg = file.rotationMessage().replace("%shop%", shop.title());
+            Bukkit.broadcastMessage(msg);
+        }
+
+        ShopGuiManager guiManager = plugin.getShopGuiManager();
+        if (guiManager != null) {
+            guiManager.refreshOpenShop(shop.id());
+        }
+
+        for (ShopRotationListener listener : rotationListeners) {
+            notifyRotationListener(listener, shop, previous, current);
+        }
+        // Listeners registered as a service outlive this manager and may be registered before it exists
+        for (RegisteredServiceProvider<ShopRotationListener> registration : Bukkit.getServicesManager().getRegistrations(ShopRotationListener.class)) {
+            notifyRotationListener(registration.getProvider(), shop, previous, current);
+        }
+    }
+
+    private void notifyRotationListener(ShopRotationListener listener, Shop shop, RotationState previous, RotationState current) {
+        try {
+            listener.onRotation(shop, previous, current);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Rotation listener failed for shop " + shop.id(), e);
+        }
+    }
+
+    /**
+     * Current rotation of a rotational shop, or null if the shop is unknown or not rotational.
+     */
+    public RotationState getRotationState(String shopId) {
+        AtomicReference<RotationState> ref = rotationStates.get(shopId.toLowerCase());
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Items currently on offer: the active rotation for rotational shops, all items otherwise.
+     */
+    public List<ShopItem> getActiveItems(Shop shop) {
+        RotationState state = getRotationState(shop.id());
+        return state != null ? state.activeItems() : shop.items();
     }
 
     public long parseInterval(String interval) {
@@ -289,19 +667,29 @@ public class ShopManager {
     }
 
     public long getTimeUntilNextRotation(String shopId) {
-        long now = System.currentTimeMillis();
-        return Math.max(0, nextRotationTimes.getOrDefault(shopId, now) - now);
+        RotationState state = getRotationState(shopId);
+        return state != null ? Math.max(0, state.nextRotationAt() - System.currentTimeMillis()) : 0;
     }
 
-    private List<ShopItem> loadShopItems(List<Map<?, ?>> itemsList) {
+    private List<ShopItem> loadShopItems(List<Map<?, ?>> itemsList, String fileName) {
         if (itemsList == null) {
             return Collections.emptyList();
         }
-        List<ShopItem> items = new ArrayList<>();
+        List<ShopItem> items = new ArrayList<>(itemsList.size());
+        Set<String> seenIds = new HashSet<>();
         for (Map<?, ?> itemMap : itemsList) {
             try {
                 String id = (String) itemMap.get("id");
-                Material material = Material.valueOf(((String) itemMap.get("material")).toUpperCase());
+                if (id == null || !seenIds.add(id)) {
+                    plugin.getLogger().warning("   - CONFIG ERROR: Item in " + fileName + " has a missing or duplicate 'id' (" + id + "). This item will be ignored.");
+                    continue;
+                }
+                String materialName = (String) itemMap.get("material");
+                Material material = materialName != null ? Material.matchMaterial(materialName) : null;
+                if (material == null) {
+                    plugin.getLogger().warning("   - CONFIG ERROR: Item '" + id + "' in " + fileName + " has an unknown material '" + materialName + "'. This item will be ignored.");
+                    continue;
+                }
                 String displayName = (String) itemMap.get("display-name");
                 List<String> lore = (List<String>) itemMap.get("lore");
                 int customModelData = itemMap.get("custom-model-data") != null ? (int) itemMap.get("custom-model-data") : 0;
@@ -330,14 +718,59 @@ public class ShopManager {
                 
                 Integer buyLimit = itemMap.get("buy-limit") != null ? (Integer) itemMap.get("buy-limit") : null;
                 Integer sellLimit = itemMap.get("sell-limit") != null ? (Integer) itemMap.get("sell-limit") : null;
-                items.add(new ShopItem(id, material, displayName, lore, customModelData, buyPrice, sellPrice, pinnedPage, pinnedSlot, commandBased, buyCommand, sellCommand, quantityGui, base64Head, texture, currencyCommand, currencyRequirement, buyCurrencyCommand, sellCurrencyCommand, buyCurrencyRequirement, sellCurrencyRequirement, buyLimit, sellLimit));
+
+                // Parse rotation weight and rarity
+                Double weight = itemMap.get("weight") != null ? ((Number) itemMap.get("weight")).doubleValue() : null;
+                if (weight != null && (weight < 0 || weight.isNaN() || weight.isInfinite())) {
+                    plugin.getLogger().warning("   - CONFIG ERROR: Item '" + id + "' in " + fileName + " has an invalid 'weight' (" + weight + "). Using the default weight.");
+                    weight = null;
+                }
+                String rarity = itemMap.get("rarity") != null ? itemMap.get("rarity").toString() : null;
+
+                // Global stock shared by all players, refilled every rotation
+                Integer stock = itemMap.get("stock") != null ? ((Number) itemMap.get("stock")).intValue() : null;
+                if (stock != null && stock < 0) {
+                    plugin.getLogger().warning("   - CONFIG ERROR: Item '" + id + "' in " + fileName + " has a negative 'stock' (" + stock + "). Stock will be unlimited.");
+                    stock = null;
+                }
+                items.add(new ShopItem(id, material, displayName, lore, customModelData, buyPrice, sellPrice, pinnedPage, pinnedSlot, commandBased, buyCommand, sellCommand, quantityGui, base64Head, texture, currencyCommand, currencyRequirement, buyCurrencyCommand, sellCurrencyCommand, buyCurrencyRequirement, sellCurrencyRequirement, buyLimit, sellLimit, weight, rarity, stock));
             } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to parse an item in a shop file.", e);
+                plugin.getLogger().log(Level.SEVERE, "Failed to parse an item in shop file " + fileName + ".", e);
             }
         }
         return items;
     }
 
+    /**
+     * Reads the optional rarities section of a rotational shop (weight, min and max per rarity).
+     */
+    private Map<String, RarityRule> loadRarities(ConfigurationSection section, List<ShopItem> items, int slots, String fileName) {
+        Map<String, RarityRule> rarities = new HashMap<>();
+        if (section != null) {
+            int totalMin = 0;
+            for (String key : section.getKeys(false)) {
+                double weight = section.getDouble(key + ".weight", 1.0);
+                int min = Math.max(0, section.getInt(key + ".min", 0));
+                int max = section.getInt(key + ".max", -1);
+                if (weight < 0) {
+                    plugin.getLogger().warning("   - CONFIG ERROR: Rarity '" + key + "' in " + fileName + " has a negative weight. Using 1.0.");
+                    weight = 1.0;
+                }
+                rarities.put(key.toLowerCase(), new RarityRule(weight, min, max < 0 ? -1 : max));
+                totalMin += min;
+            }
+            if (totalMin > slots) {
+                plugin.getLogger().warning("   - CONFIG WARNING: Rarity minimums in " + fileName + " add up to " + totalMin + " but the shop only has " + slots + " slots.");
+            }
+        }
+        for (ShopItem item : items) {
+            if (item.getRarity() != null && !rarities.containsKey(item.getRarity().toLowerCase())) {
+                plugin.getLogger().warning("   - CONFIG WARNING: Item '" + item.id() + "' in " + fileName + " uses rarity '" + item.getRarity() + "', which is not defined under 'rarities'.");
+            }
+        }
+        return rarities.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(rarities);
+    }
+
     private Map<String, PaginationItem> loadPaginationItems(ConfigurationSection section) {
         if (section == null) {
             return Collections.emptyMap();
@@ -377,82 +810,53 @@ public class ShopManager {
         return paginationItems;
     }
 
+    /**
+     * Looks up a shop by id, ignoring case.
+     */
     public Shop getShop(String id) {
-        totalRequests.incrementAndGet();
-        
-        // Check cache first
-        Shop cached = shopCache.get(id);
-        if (cached != null && System.currentTimeMillis() - cacheTimestamps.getOrDefault(id, 0L) < cacheDuration) {
-            cacheHits.incrementAndGet();
-            return cached;
-        }
-        
-        cacheMisses.incrementAndGet();
-        
-        // Load from database/file
-        Shop shop = loadedShops.get(id.toLowerCase());
-        if (shop != null) {
-            shopCache.put(id, shop);
-            cacheTimestamps.put(id, System.currentTimeMillis());
-        }
-        return shop;
+        return registry.get(id);
     }
 
     /**
-     * Returns a copy of the loaded shops map for tab completion and other read-only operations.
+     * The loaded shop that defines {@code item}, or null if none or several do; see {@link ShopRegistry#shopOf(ShopItem)}.
+     */
+    public Shop getShopOf(ShopItem item) {
+        return registry.shopOf(item);
+    }
+
+    /**
+     * Read-only view of the loaded shops, keyed by lower-case shop id. The view is a snapshot: it does
+     * not change when shops are reloaded, so callers can iterate it freely.
      * @return Map of shop ID to Shop object
      */
     public Map<String, Shop> getLoadedShops() {
-        return new HashMap<>(loadedShops);
+        return registry.asMap();
     }
 
     public void shutdown() {
-        if (cleanupExecutor != null && !cleanupExecutor.isShutdown()) {
-            cleanupExecutor.shutdown();
-            try {
-                if (!cleanupExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    cleanupExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                cleanupExecutor.shutdownNow();
-            }
+        rotationScheduler.shutdown();
+        if (rotationCoordinator != null) {
+            rotationCoordinator.shutdown();
         }
-        
-        // Clear caches
-        shopCache.clear();
-        itemCache.clear();
-        cacheTimestamps.clear();
-        
-        // Log final statistics
-        long hits = cacheHits.get();
-        long misses = cacheMisses.get();
-        long total = totalRequests.get();
-        double hitRate = total > 0 ? (double) hits / total * 100 : 0;
-        
-        plugin.getLogger().info(String.format("Final cache stats: %d hits, %d misses, %.1f%% hit rate", 
-            hits, misses, hitRate));
+        if (rotationStore != null) {
+            rotationStore.shutdown();
+        }
+        if (fileWatcher != null) {
+            fileWatcher.shutdown();
+        }
+        loadPool.shutdownNow();
     }
-    
+
     /**
      * Get cache statistics for monitoring
      */
     public Map<String, Object> getCacheStats() {
+        ShopRegistry current = registry;
         Map<String, Object> stats = new HashMap<>();
-        stats.put("cache_hits", cacheHits.get());
-        stats.put("cache_misses", cacheMisses.get());
-        stats.put("total_requests", totalRequests.get());
-        stats.put("cached_shops", shopCache.size());
-        stats.put("cached_items", itemCache.size());
-        stats.put("cache_duration_ms", cacheDuration);
-        stats.put("max_cached_shops", maxCachedShops);
-        
-        long total = totalRequests.get();
-        if (total > 0) {
-            stats.put("hit_rate_percent", (double) cacheHits.get() / total * 100);
-        } else {
-            stats.put("hit_rate_percent", 0.0);
-        }
-        
+        stats.put("loaded_shops", current.size());
+        stats.put("loaded_shop_files", current.files().size());
+        stats.put("last_load_time_ms", lastLoadTimeMs);
+        stats.putAll(rotationScheduler.getStats());
         return stats;
     }
 }
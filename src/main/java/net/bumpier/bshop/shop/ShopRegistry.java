@@ -0,0 +1,143 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of every loaded shop. A new registry is built for each load or hot reload and
+ * published through a single volatile field, so lookups never lock and never see a partial update.
+ * Shop ids are case-insensitive.
+ */
+public final class ShopRegistry {
+
+    static final ShopRegistry EMPTY = new ShopRegistry(Collections.emptyMap(), Collections.emptyMap());
+
+    // Lower-case shop id -> shop
+    private final Map<String, Shop> shops;
+    // Shop file name -> parsed file (shop definition plus announcement settings)
+    private final Map<String, ShopSnapshotCache.Entry> files;
+    // Lower-case shop id -> parsed file
+    private final Map<String, ShopSnapshotCache.Entry> filesByShop;
+    // Item instance -> shop that defines it, and item id -> shop for ids used by a single shop only
+    private final Map<ShopItem, Shop> shopsByItem;
+    private final Map<String, Shop> shopsByItemId;
+
+    private ShopRegistry(Map<String, Shop> shops, Map<String, ShopSnapshotCache.Entry> files) {
+        this.shops = Collections.unmodifiableMap(shops);
+        this.files = Collections.unmodifiableMap(files);
+        Map<String, ShopSnapshotCache.Entry> byShop = new HashMap<>();
+        for (ShopSnapshotCache.Entry entry : files.values()) {
+            byShop.put(key(entry.shop().id()), entry);
+        }
+        this.filesByShop = Collections.unmodifiableMap(byShop);
+
+        Map<ShopItem, Shop> byItem = new IdentityHashMap<>();
+        Map<String, Shop> byItemId = new HashMap<>();
+        Set<String> sharedIds = new HashSet<>();
+        for (Shop shop : shops.values()) {
+            for (List<ShopItem> items : Arrays.asList(shop.items(), shop.featuredItems())) {
+                if (items == null) {
+                    continue;
+                }
+                for (ShopItem item : items) {
+                    byItem.put(item, shop);
+                    Shop previous = byItemId.putIfAbsent(item.id(), shop);
+                    if (previous != null && previous != shop) {
+                        sharedIds.add(item.id());
+                    }
+                }
+            }
+        }
+        byItemId.keySet().removeAll(sharedIds);
+        this.shopsByItem = byItem;
+        this.shopsByItemId = byItemId;
+    }
+
+    /**
+     * Builds a registry from parsed shop files. Files must not share a (case-insensitive) shop id.
+     */
+    static ShopRegistry of(Collection<ShopSnapshotCache.Entry> entries) {
+        Map<String, Shop> shops = new HashMap<>();
+        Map<String, ShopSnapshotCache.Entry> files = new HashMap<>();
+        for (ShopSnapshotCache.Entry entry : entries) {
+            shops.put(key(entry.shop().id()), entry.shop());
+            files.put(entry.fileName(), entry);
+        }
+        return new ShopRegistry(shops, files);
+    }
+
+    /**
+     * A copy with one file added or replaced.
+     */
+    ShopRegistry with(ShopSnapshotCache.Entry entry) {
+        Map<String, ShopSnapshotCache.Entry> updated = new HashMap<>(files);
+        updated.put(entry.fileName(), entry);
+        return of(updated.values());
+    }
+
+    /**
+     * A copy without the given file.
+     */
+    ShopRegistry without(String fileName) {
+        Map<String, ShopSnapshotCache.Entry> updated = new HashMap<>(files);
+        updated.remove(fileName);
+        return of(updated.values());
+    }
+
+    public Shop get(String shopId) {
+        return shopId != null ? shops.get(key(shopId)) : null;
+    }
+
+    /**
+     * The shop that defines {@code item}: the shop holding this exact instance, otherwise the only shop
+     * with an item of the same id. Null if no shop or several shops match.
+     */
+    public Shop shopOf(ShopItem item) {
+        if (item == null) {
+            return null;
+        }
+        Shop shop = shopsByItem.get(item);
+        return shop != null ? shop : shopsByItemId.get(item.id());
+    }
+
+    public boolean contains(String shopId) {
+        return get(shopId) != null;
+    }
+
+    public int size() {
+        return shops.size();
+    }
+
+    /**
+     * Read-only view keyed by lower-case shop id.
+     */
+    public Map<String, Shop> asMap() {
+        return shops;
+    }
+
+    ShopSnapshotCache.Entry file(String fileName) {
+        return files.get(fileName);
+    }
+
+    ShopSnapshotCache.Entry fileOf(String shopId) {
+        return filesByShop.get(key(shopId));
+    }
+
+    Map<String, ShopSnapshotCache.Entry> files() {
+        return files;
+    }
+
+    static String key(String shopId) {
+        return shopId.toLowerCase();
+    }
+}
@@ -0,0 +1,185 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.database.Database;
+import net.bumpier.bshop.database.RotationClusterRepository;
+import net.bumpier.bshop.database.RotationClusterRepository.StoredRow;
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.Shop;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Coordinates rotations between servers that share one MySQL database.
+ * <p>
+ * When a rotation is due, each server tries to take a short lease on the shop in
+ * {@code bshop_rotation_leases}. Only the lease holder computes the rotation and writes it to
+ * {@code bshop_rotations} with a compare-and-set on the row's {@code version}. Every server polls the
+ * version column and adopts rows that changed, so all servers show the same offers within one poll
+ * interval. If the lease holder dies mid-rotation, its lease runs out and another server takes over.
+ * Rotations a server works out on its own after a (re)load go through {@link #publish(Shop, RotationState)},
+ * so the row never changes without its version changing too.
+ * <p>
+ * Rotations, publishes and polls run one at a time on a background thread, which waits for the SQL in
+ * {@link RotationClusterRepository} to finish on the database executor.
+ */
+public class ShopRotationCoordinator {
+
+    private final BShop plugin;
+    private final ShopManager shopManager;
+    private final RotationClusterRepository repository;
+    private final String nodeId;
+    private final long leaseMs;
+    private final long pollIntervalMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-RotationCluster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Last version of each bshop_rotations row this server has applied
+    private final Map<String, Long> knownVersions = new ConcurrentHashMap<>();
+
+    public ShopRotationCoordinator(BShop plugin, ShopManager shopManager, Database database, String nodeId, long leaseMs, long pollIntervalMs) {
+        this.plugin = plugin;
+        this.shopManager = shopManager;
+        this.repository = new RotationClusterRepository(database);
+        this.nodeId = nodeId;
+        this.leaseMs = Math.max(1000L, leaseMs);
+        this.pollIntervalMs = Math.max(100L, pollIntervalMs);
+        // Queued first so the tables exist before anything published while the shops load
+        executor.execute(this::createTables);
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        plugin.getLogger().info("Cluster rotation enabled as node " + nodeId + " (poll every " + pollIntervalMs + "ms).");
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Asks for the rotation that follows {@code expected}. Returns immediately; the rotation is applied
+     * here if this server wins the lease, or picked up by the next poll if another server does.
+     */
+    public void requestRotation(Shop shop, RotationState expected) {
+        try {
+            executor.execute(() -> rotate(shop, expected));
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Publishes a rotation this server worked out on its own, e.g. after loading or reloading a shop. A
+     * stored rotation of the same or a later epoch is adopted instead; an older or missing one is replaced
+     * with the same compare-and-set as a regular rotation. Returns immediately.
+     */
+    public void publish(Shop shop, RotationState state) {
+        try {
+            executor.execute(() -> publishNow(shop, state));
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+
+    private void publishNow(Shop shop, RotationState state) {
+        String shopKey = shop.id().toLowerCase();
+        try {
+            StoredRow row = repository.readRow(shopKey).join();
+            if (row != null && row.rotation().epoch() >= state.epoch()) {
+                adopt(shopKey, row);
+                return;
+            }
+            long version = row != null ? row.version() : 0L;
+            if (repository.writeRotation(shopKey, state, version).join()) {
+                knownVersions.put(shopKey, version + 1);
+            }
+            // Otherwise another server wrote first and the next poll adopts its row
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not publish the rotation of shop " + shopKey + "; the next poll adopts the stored one.", e);
+            knownVersions.remove(shopKey);
+        }
+    }
+
+    private void createTables() {
+        try {
+            repository.createTables();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not create the cluster rotation tables.", e);
+        }
+    }
+
+    private void rotate(Shop shop, RotationState expected) {
+        String shopKey = shop.id().toLowerCase();
+        try {
+            long now = System.currentTimeMillis();
+            if (!repository.acquireLease(shopKey, nodeId, now, now + leaseMs).join()) {
+                return; // Another server rotates this shop; poll() will pick up its result
+            }
+            // Re-read the stored row so a rotation written while we waited is not overwritten
+            pollShop(shopKey);
+            if (shopManager.getRotationState(shopKey) != expected) {
+                return;
+            }
+
+            RotationState next = shopManager.planNextRotation(shop, expected, System.currentTimeMillis());
+            long version = knownVersions.getOrDefault(shopKey, 0L);
+            if (repository.writeRotation(shopKey, next, version).join()) {
+                knownVersions.put(shopKey, version + 1);
+                shopManager.applyRotation(shop, expected, next);
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Cluster rotation of shop " + shopKey + " failed; retrying on the next poll.", e);
+        }
+    }
+
+    private void poll() {
+        try {
+            // Cheap check first: only rows whose version moved are read in full
+            for (Map.Entry<String, Long> entry : repository.versions().join().entrySet()) {
+                if (entry.getValue() > 0 && !entry.getValue().equals(knownVersions.get(entry.getKey()))) {
+                    pollShop(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not poll cluster rotations.", e);
+        }
+
+        // Take over rotations whose lease holder never delivered
+        long now = System.currentTimeMillis();
+        for (Shop shop : shopManager.loadedShopDefinitions()) {
+            RotationState state = shopManager.getRotationState(shop.id());
+            if (state != null && now >= state.nextRotationAt() + leaseMs) {
+                rotate(shop, state);
+            }
+        }
+    }
+
+    /**
+     * Reads one stored rotation and applies it locally if its version is new to this server.
+     */
+    private void pollShop(String shopKey) {
+        StoredRow row = repository.readRow(shopKey).join();
+        if (row == null || Long.valueOf(row.version()).equals(knownVersions.get(shopKey))) {
+            return;
+        }
+        knownVersions.put(shopKey, row.version());
+        if (row.version() > 0) {
+            shopManager.applyStoredRotation(shopKey, row.rotation());
+        }
+    }
+
+    private void adopt(String shopKey, StoredRow row) {
+        knownVersions.put(shopKey, row.version());
+        shopManager.applyStoredRotation(shopKey, row.rotation());
+    }
+}
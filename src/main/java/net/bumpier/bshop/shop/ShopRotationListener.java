@@ -0,0 +1,19 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.Shop;
+
+/**
+ * Notified on the main thread after a rotational shop has rotated. Register with
+ * {@link ShopManager#addRotationListener(ShopRotationListener)}, or as a Bukkit service to keep receiving
+ * rotations across reloads of the shop manager.
+ */
+@FunctionalInterface
+public interface ShopRotationListener {
+
+    /**
+     * @param previous the rotation that just ended, or null if the shop had none
+     * @param current  the rotation that is now active
+     */
+    void onRotation(Shop shop, RotationState previous, RotationState current);
+}
@@ -0,0 +1,88 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Derives the contents and timing of every rotation from (salt, shop id, rotation epoch) alone.
+ * Rotation {@code n} of a shop covers {@code [n * interval, (n + 1) * interval)} in epoch millis, so any
+ * server can work out the current and upcoming rotations without storing or sharing state.
+ */
+public class ShopRotationPlanner {
+
+    private static final long MIN_INTERVAL_MS = 1000L;
+
+    private final ShopManager shopManager;
+    private volatile String salt;
+    // Compiled candidate pools by lower-case shop id, rebuilt whenever the shop definition is replaced
+    private final Map<String, ShopRotationPool> pools = new ConcurrentHashMap<>();
+
+    public ShopRotationPlanner(ShopManager shopManager, String salt) {
+        this.shopManager = shopManager;
+        this.salt = salt != null ? salt : "";
+    }
+
+    public void setSalt(String salt) {
+        this.salt = salt != null ? salt : "";
+    }
+
+    public long intervalMs(Shop shop) {
+        return Math.max(MIN_INTERVAL_MS, shopManager.parseInterval(shop.rotationInterval()));
+    }
+
+    /**
+     * The rotation epoch that is active at the given time.
+     */
+    public long epochAt(Shop shop, long timeMs) {
+        return Math.floorDiv(timeMs, intervalMs(shop));
+    }
+
+    /**
+     * The scheduled rotation for an epoch: its items, start and end.
+     */
+    public RotationState plan(Shop shop, long epoch) {
+        long interval = intervalMs(shop);
+        return new RotationState(selectItems(shop, epoch), epoch, epoch * interval, (epoch + 1) * interval);
+    }
+
+    /**
+     * Items of an epoch, drawn by weight and rarity quotas. Always the same for the same salt, shop id,
+     * epoch and shop definition.
+     */
+    public List<ShopItem> selectItems(Shop shop, long epoch) {
+        ShopRotationPool pool = pools.compute(shop.id().toLowerCase(),
+                (key, existing) -> existing != null && existing.shop() == shop ? existing : new ShopRotationPool(shop));
+        // java.util.Random is fully specified, so every JVM draws the same sequence for a seed
+        return pool.sample(shop.slots(), new Random(seed(shop.id(), epoch)));
+    }
+
+    /**
+     * Drops the compiled pool of a shop that was unloaded.
+     */
+    public void forget(String shopId) {
+        pools.remove(shopId.toLowerCase());
+    }
+
+    private long seed(String shopId, long epoch) {
+        // 64-bit FNV-1a over the inputs, finished with the SplitMix64 mixer
+        byte[] bytes = (salt + '\0' + shopId.toLowerCase() + '\0' + epoch).getBytes(StandardCharsets.UTF_8);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 30;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 27;
+        hash *= 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        return hash;
+    }
+}
@@ -0,0 +1,195 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.shop.model.RarityRule;
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+import net.bumpier.bshop.util.AliasTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The candidate items of one rotational shop, compiled once per load into alias tables so that picking
+ * a rotation costs O(slots) regardless of pool size.
+ * <p>
+ * Items are drawn by weight without repeats: a draw that hits an item already picked (or a rarity at its
+ * maximum) is retried. That is exactly weighted sampling without replacement. Rarity minimums are filled
+ * first from per-rarity tables. If retries keep failing, e.g. because a few heavy items are already taken,
+ * the remaining picks fall back to a linear scan over what is still eligible.
+ */
+final class ShopRotationPool {
+
+    private static final double DEFAULT_WEIGHT = 1.0;
+
+    private final Shop shop;
+    private final ShopItem[] items;
+    private final double[] weights;
+    private final String[] rarities;
+    private final AliasTable table;
+    private final List<Quota> quotas = new ArrayList<>();
+    private final Map<String, Integer> maxPerRarity = new HashMap<>();
+
+    ShopRotationPool(Shop shop) {
+        this.shop = shop;
+        Map<String, RarityRule> rules = shop.rarities() != null ? shop.rarities() : Collections.emptyMap();
+
+        List<ShopItem> eligible = new ArrayList<>(shop.items().size());
+        List<Double> eligibleWeights = new ArrayList<>(shop.items().size());
+        for (ShopItem item : shop.items()) {
+            String rarity = item.getRarity() != null ? item.getRarity().toLowerCase() : null;
+            RarityRule rule = rarity != null ? rules.get(rarity) : null;
+            double weight = item.getWeight() != null ? item.getWeight() : rule != null ? rule.weight() : DEFAULT_WEIGHT;
+            if (weight > 0) {
+                eligible.add(item);
+                eligibleWeights.add(weight);
+            }
+        }
+
+        int n = eligible.size();
+        this.items = eligible.toArray(new ShopItem[0]);
+        this.weights = new double[n];
+        this.rarities = new String[n];
+        Map<String, List<Integer>> indicesByRarity = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            weights[i] = eligibleWeights.get(i);
+            rarities[i] = items[i].getRarity() != null ? items[i].getRarity().toLowerCase() : null;
+            if (rarities[i] != null) {
+                indicesByRarity.computeIfAbsent(rarities[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+        this.table = n > 0 ? new AliasTable(weights) : null;
+
+        for (Map.Entry<String, RarityRule> entry : rules.entrySet()) {
+            RarityRule rule = entry.getValue();
+            if (rule.max() >= 0) {
+                maxPerRarity.put(entry.getKey(), rule.max());
+            }
+            List<Integer> members = indicesByRarity.get(entry.getKey());
+            if (rule.min() > 0 && members != null) {
+                int[] indices = members.stream().mapToInt(Integer::intValue).toArray();
+                double[] memberWeights = new double[indices.length];
+                for (int i = 0; i < indices.length; i++) {
+                    memberWeights[i] = weights[indices[i]];
+                }
+                int min = rule.max() >= 0 ? Math.min(rule.min(), rule.max()) : rule.min();
+                quotas.add(new Quota(entry.getKey(), min, indices, new AliasTable(memberWeights)));
+            }
+        }
+        // Fixed order keeps the draw sequence, and therefore the seeded result, stable
+        quotas.sort((a, b) -> a.rarity().compareTo(b.rarity()));
+    }
+
+    Shop shop() {
+        return shop;
+    }
+
+    List<ShopItem> sample(int slots, Random random) {
+        int target = Math.min(slots, items.length);
+        List<ShopItem> picked = new ArrayList<>(Math.max(0, target));
+        if (target <= 0) {
+            return picked;
+        }
+        boolean[] taken = new boolean[items.length];
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (Quota quota : quotas) {
+            int need = Math.min(quota.min(), target - picked.size());
+            int attempts = 8 * need + 32;
+            while (need > 0 && attempts-- > 0) {
+                int index = quota.indices()[quota.table().sample(random)];
+                if (!taken[index]) {
+                    take(index, taken, counts, picked);
+                    need--;
+                }
+            }
+            while (need > 0) {
+                int index = scan(random, taken, counts, quota.rarity());
+                if (index < 0) {
+                    break; // Fewer items of this rarity than its minimum
+                }
+                take(index, taken, counts, picked);
+                need--;
+            }
+        }
+
+        int attempts = 8 * (target - picked.size()) + 32;
+        while (picked.size() < target && attempts-- > 0) {
+            int index = table.sample(random);
+            if (!taken[index] && allowed(index, counts)) {
+                take(index, taken, counts, picked);
+            }
+        }
+        while (picked.size() < target) {
+            int index = scan(random, taken, counts, null);
+            if (index < 0) {
+                break; // Rarity maximums leave nothing else to pick
+            }
+            take(index, taken, counts, picked);
+        }
+
+        // Quota picks come first; mix them in so rare items are not always in the first slots
+        Collections.shuffle(picked, random);
+        return picked;
+    }
+
+    private void take(int index, boolean[] taken, Map<String, Integer> counts, List<ShopItem> picked) {
+        taken[index] = true;
+        if (rarities[index] != null) {
+            counts.merge(rarities[index], 1, Integer::sum);
+        }
+        picked.add(items[index]);
+    }
+
+    private boolean allowed(int index, Map<String, Integer> counts) {
+        String rarity = rarities[index];
+        if (rarity == null) {
+            return true;
+        }
+        Integer max = maxPerRarity.get(rarity);
+        return max == null || counts.getOrDefault(rarity, 0) < max;
+    }
+
+    /**
+     * Linear weighted pick among items that are still eligible, optionally limited to one rarity.
+     * Returns -1 when nothing is eligible.
+     */
+    private int scan(Random random, boolean[] taken, Map<String, Integer> counts, String onlyRarity) {
+        double total = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (eligible(i, taken, counts, onlyRarity)) {
+                total += weights[i];
+            }
+        }
+        if (total <= 0) {
+            return -1;
+        }
+        double target = random.nextDouble() * total;
+        int last = -1;
+        for (int i = 0; i < items.length; i++) {
+            if (eligible(i, taken, counts, onlyRarity)) {
+                last = i;
+                target -= weights[i];
+                if (target < 0) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+
+    private boolean eligible(int index, boolean[] taken, Map<String, Integer> counts, String onlyRarity) {
+        if (taken[index]) {
+            return false;
+        }
+        if (onlyRarity != null) {
+            return onlyRarity.equals(rarities[index]);
+        }
+        return allowed(index, counts);
+    }
+
+    private record Quota(String rarity, int min, int[] indices, AliasTable table) {}
+}
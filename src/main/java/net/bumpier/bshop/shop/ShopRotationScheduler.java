@@ -0,0 +1,162 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Fires shop rotations on the tick they are due instead of polling every shop once a minute.
+ * Pending rotations sit in a queue ordered by due time and a single delayed task is armed for the
+ * head of the queue, so the cost of waiting does not depend on how many shops exist.
+ * <p>
+ * Entries are never removed eagerly: rescheduling a shop supersedes its previous entry, and
+ * superseded entries are dropped when they reach the head of the queue.
+ * <p>
+ * Ticks stretch when the server lags, so a long delay is never armed in one go: the task wakes up at
+ * least every {@link #MAX_ARM_TICKS} ticks and re-arms from the wall clock, which keeps rotations within
+ * a fraction of that horizon of their due time.
+ */
+public class ShopRotationScheduler {
+
+    private static final long MILLIS_PER_TICK = 50L;
+    // 60 seconds at 20 TPS
+    private static final long MAX_ARM_TICKS = 1200L;
+
+    private final BShop plugin;
+    // Called on the main thread with (shop key, rotation epoch) when a rotation is due
+    private final BiConsumer<String, Long> rotationHandler;
+
+    private final PriorityQueue<ScheduledRotation> queue = new PriorityQueue<>(Comparator.comparingLong(ScheduledRotation::dueAt));
+    // Latest entry per shop; anything else in the queue for that shop is stale
+    private final Map<String, ScheduledRotation> latest = new HashMap<>();
+    private BukkitTask task;
+    private long taskDueAt = Long.MAX_VALUE;
+    private boolean running;
+
+    // Metrics
+    private final AtomicLong firedRotations = new AtomicLong(0);
+    private final AtomicLong totalLagMs = new AtomicLong(0);
+    private final AtomicLong maxLagMs = new AtomicLong(0);
+
+    public ShopRotationScheduler(BShop plugin, BiConsumer<String, Long> rotationHandler) {
+        this.plugin = plugin;
+        this.rotationHandler = rotationHandler;
+    }
+
+    public synchronized void start() {
+        running = true;
+        arm();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        cancelTask();
+        queue.clear();
+        latest.clear();
+    }
+
+    /**
+     * Schedules (or reschedules) the rotation of a shop. Safe to call from any thread.
+     */
+    public synchronized void schedule(String shopKey, long dueAt, long epoch) {
+        ScheduledRotation rotation = new ScheduledRotation(shopKey, dueAt, epoch);
+        latest.put(shopKey, rotation);
+        queue.add(rotation);
+        if (dueAt < taskDueAt) {
+            arm();
+        }
+    }
+
+    /**
+     * Forgets a shop, e.g. after its file was removed.
+     */
+    public synchronized void cancel(String shopKey) {
+        latest.remove(shopKey);
+    }
+
+    private void fireDue() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            ScheduledRotation rotation;
+            synchronized (this) {
+                task = null;
+                taskDueAt = Long.MAX_VALUE;
+                rotation = queue.peek();
+                if (!running || rotation == null || rotation.dueAt() > now) {
+                    break;
+                }
+                queue.poll();
+                if (latest.get(rotation.shopKey()) != rotation) {
+                    continue; // Superseded by a later schedule() call
+                }
+                latest.remove(rotation.shopKey());
+            }
+
+            long lag = now - rotation.dueAt();
+            firedRotations.incrementAndGet();
+            totalLagMs.addAndGet(lag);
+            maxLagMs.accumulateAndGet(lag, Math::max);
+            try {
+                rotationHandler.accept(rotation.shopKey(), rotation.epoch());
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error rotating shop " + rotation.shopKey() + ": " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            arm();
+        }
+    }
+
+    /**
+     * Arms a single delayed task for the head of the queue, or for the arm horizon if the head is due
+     * later. Must hold the monitor.
+     */
+    private void arm() {
+        cancelTask();
+        // Drop superseded entries so they do not keep an early task alive
+        while (!queue.isEmpty() && latest.get(queue.peek().shopKey()) != queue.peek()) {
+            queue.poll();
+        }
+        ScheduledRotation head = queue.peek();
+        if (!running || head == null || !plugin.isEnabled()) {
+            return;
+        }
+        long delayMs = head.dueAt() - System.currentTimeMillis();
+        // Round up so the task never runs before the rotation is due; fireDue re-arms if it wakes up early
+        long delayTicks = Math.min(MAX_ARM_TICKS, Math.max(1L, (delayMs + MILLIS_PER_TICK - 1) / MILLIS_PER_TICK));
+        taskDueAt = head.dueAt();
+        task = Bukkit.getScheduler().runTaskLater(plugin, this::fireDue, delayTicks);
+    }
+
+    private void cancelTask() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        taskDueAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Get rotation scheduler statistics
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long fired = firedRotations.get();
+        ScheduledRotation head = queue.peek();
+        stats.put("scheduled_rotations", latest.size());
+        stats.put("rotations_fired", fired);
+        stats.put("next_rotation_in_ms", head != null ? Math.max(0, head.dueAt() - System.currentTimeMillis()) : -1L);
+        stats.put("average_rotation_lag_ms", fired > 0 ? (double) totalLagMs.get() / fired : 0.0);
+        stats.put("max_rotation_lag_ms", maxLagMs.get());
+        return stats;
+    }
+
+    private record ScheduledRotation(String shopKey, long dueAt, long epoch) {}
+}
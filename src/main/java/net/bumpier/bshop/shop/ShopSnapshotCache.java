@@ -0,0 +1,375 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.shop.model.PaginationItem;
+import net.bumpier.bshop.shop.model.RarityRule;
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+import org.bukkit.Material;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Compiled binary cache of parsed shop files, stored in plugins/bShop/cache/shops.bin.
+ * <p>
+ * Every entry is keyed by the shop file name and the SHA-256 of its contents, so an edited file
+ * simply misses the cache and is parsed from YAML again while untouched files are decoded straight
+ * from the memory-mapped snapshot. Only the shop definition is stored; rotation state is derived
+ * after loading.
+ */
+public class ShopSnapshotCache {
+
+    private static final int MAGIC = 0x42534850; // "BSHP"
+    // Bump whenever the encoded layout of Shop, ShopItem or PaginationItem changes
+    private static final int FORMAT_VERSION = 3;
+
+    private final BShop plugin;
+    private final File snapshotFile;
+
+    public ShopSnapshotCache(BShop plugin) {
+        this.plugin = plugin;
+        this.snapshotFile = new File(new File(plugin.getDataFolder(), "cache"), "shops.bin");
+    }
+
+    /**
+     * A compiled shop file: the parsed shop definition plus its rotation announcement settings.
+     */
+    public record Entry(String fileName, String contentHash, Shop shop, boolean announceRotation, String rotationMessage) {}
+
+    /**
+     * Reads the snapshot. Returns an empty map when there is no usable snapshot.
+     */
+    public Map<String, Entry> read() {
+        if (!snapshotFile.isFile()) {
+            return Collections.emptyMap();
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                plugin.getLogger().info("Shop snapshot was written by another version, rebuilding from YAML.");
+                return Collections.emptyMap();
+            }
+            int count = buffer.getInt();
+            Map<String, Entry> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Entry entry = readEntry(buffer);
+                if (entry != null) {
+                    entries.put(entry.fileName(), entry);
+                }
+            }
+            return entries;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read shop snapshot, falling back to YAML parsing.", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Writes a new snapshot. The file is written next to the old one and moved into place,
+     * so a crash mid-write never leaves a truncated snapshot behind.
+     */
+    public synchronized void write(Collection<Entry> entries) {
+        Path target = snapshotFile.toPath();
+        Path temp = target.resolveSibling(snapshotFile.getName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException atomicMoveFailed) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.FINE, "Could not write shop snapshot", e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    public static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // --- Encoding ---
+
+    private void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        Shop shop = entry.shop();
+        writeString(out, entry.fileName());
+        writeString(out, entry.contentHash());
+        out.writeBoolean(entry.announceRotation());
+        writeString(out, entry.rotationMessage());
+
+        writeString(out, shop.id());
+        writeString(out, shop.title());
+        out.writeInt(shop.size());
+        out.writeInt(shop.paginationItems().size());
+        for (Map.Entry<String, PaginationItem> pagination : shop.paginationItems().entrySet()) {
+            writeString(out, pagination.getKey());
+            writeString(out, pagination.getValue().material().name());
+            writeString(out, pagination.getValue().displayName());
+            writeStringList(out, pagination.getValue().lore());
+            out.writeInt(pagination.getValue().slot());
+        }
+        writeItems(out, shop.items());
+        writeString(out, shop.type());
+        writeString(out, shop.rotationInterval());
+        out.writeInt(shop.slots());
+        writeIntList(out, shop.itemSlots());
+        writeItems(out, shop.featuredItems());
+        writeIntList(out, shop.featuredSlots());
+        out.writeInt(shop.rarities().size());
+        for (Map.Entry<String, RarityRule> rarity : shop.rarities().entrySet()) {
+            writeString(out, rarity.getKey());
+            out.writeDouble(rarity.getValue().weight());
+            out.writeInt(rarity.getValue().min());
+            out.writeInt(rarity.getValue().max());
+        }
+    }
+
+    private void writeItems(DataOutputStream out, List<ShopItem> items) throws IOException {
+        if (items == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(items.size());
+        for (ShopItem item : items) {
+            writeString(out, item.id());
+            writeString(out, item.material().name());
+            writeString(out, item.displayName());
+            writeStringList(out, item.lore());
+            out.writeInt(item.customModelData());
+            out.writeDouble(item.buyPrice());
+            out.writeDouble(item.sellPrice());
+            writeInteger(out, item.getPinnedPage().orElse(null));
+            writeInteger(out, item.getPinnedSlot().orElse(null));
+            out.writeBoolean(item.isCommandBased());
+            writeString(out, item.getBuyCommand());
+            writeString(out, item.getSellCommand());
+            out.writeBoolean(item.isQuantityGui());
+            writeString(out, item.getBase64Head());
+            writeString(out, item.getTexture());
+            writeString(out, item.getCurrencyCommand());
+            writeString(out, item.getCurrencyRequirement());
+            writeString(out, item.getBuyCurrencyCommand());
+            writeString(out, item.getSellCurrencyCommand());
+            writeString(out, item.getBuyCurrencyRequirement());
+            writeString(out, item.getSellCurrencyRequirement());
+            writeInteger(out, item.getBuyLimit());
+            writeInteger(out, item.getSellLimit());
+            out.writeBoolean(item.getWeight() != null);
+            if (item.getWeight() != null) {
+                out.writeDouble(item.getWeight());
+            }
+            writeString(out, item.getRarity());
+            writeInteger(out, item.getStock());
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeStringList(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private void writeIntList(DataOutputStream out, List<Integer> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (Integer value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    // --- Decoding ---
+
+    /**
+     * Decodes one entry. Returns null when the entry references a material this server does not
+     * know (e.g. after a version downgrade); the buffer is still advanced past the entry.
+     */
+    private Entry readEntry(ByteBuffer buffer) {
+        boolean[] valid = {true};
+        String fileName = readString(buffer);
+        String contentHash = readString(buffer);
+        boolean announceRotation = buffer.get() != 0;
+        String rotationMessage = readString(buffer);
+
+        String id = readString(buffer);
+        String title = readString(buffer);
+        int size = buffer.getInt();
+        int paginationCount = buffer.getInt();
+        Map<String, PaginationItem> paginationItems = new LinkedHashMap<>();
+        for (int i = 0; i < paginationCount; i++) {
+            String key = readString(buffer);
+            Material material = readMaterial(buffer, valid);
+            String displayName = readString(buffer);
+            List<String> lore = readStringList(buffer);
+            int slot = buffer.getInt();
+            paginationItems.put(key, new PaginationItem(material, displayName, lore, slot));
+        }
+        List<ShopItem> items = readItems(buffer, valid);
+        String type = readString(buffer);
+        String rotationInterval = readString(buffer);
+        int slots = buffer.getInt();
+        List<Integer> itemSlots = readIntList(buffer);
+        List<ShopItem> featuredItems = readItems(buffer, valid);
+        List<Integer> featuredSlots = readIntList(buffer);
+        int rarityCount = buffer.getInt();
+        Map<String, RarityRule> rarities = rarityCount == 0 ? Collections.emptyMap() : new HashMap<>();
+        for (int i = 0; i < rarityCount; i++) {
+            String rarity = readString(buffer);
+            rarities.put(rarity, new RarityRule(buffer.getDouble(), buffer.getInt(), buffer.getInt()));
+        }
+
+        if (!valid[0]) {
+            return null;
+        }
+        Shop shop = new Shop(id, title, size, paginationItems, items, type, rotationInterval, slots, itemSlots, featuredItems, featuredSlots,
+                rarities.isEmpty() ? rarities : Collections.unmodifiableMap(rarities));
+        return new Entry(fileName, contentHash, shop, announceRotation, rotationMessage);
+    }
+
+    private List<ShopItem> readItems(ByteBuffer buffer, boolean[] valid) {
+        int count = buffer.getInt();
+        if (count < 0) {
+            return null;
+        }
+        List<ShopItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = readString(buffer);
+            Material material = readMaterial(buffer, valid);
+            String displayName = readString(buffer);
+            List<String> lore = readStringList(buffer);
+            int customModelData = buffer.getInt();
+            double buyPrice = buffer.getDouble();
+            double sellPrice = buffer.getDouble();
+            Integer pinnedPage = readInteger(buffer);
+            Integer pinnedSlot = readInteger(buffer);
+            boolean commandBased = buffer.get() != 0;
+            String buyCommand = readString(buffer);
+            String sellCommand = readString(buffer);
+            boolean quantityGui = buffer.get() != 0;
+            String base64Head = readString(buffer);
+            String texture = readString(buffer);
+            String currencyCommand = readString(buffer);
+            String currencyRequirement = readString(buffer);
+            String buyCurrencyCommand = readString(buffer);
+            String sellCurrencyCommand = readString(buffer);
+            String buyCurrencyRequirement = readString(buffer);
+            String sellCurrencyRequirement = readString(buffer);
+            Integer buyLimit = readInteger(buffer);
+            Integer sellLimit = readInteger(buffer);
+            Double weight = buffer.get() != 0 ? buffer.getDouble() : null;
+            String rarity = readString(buffer);
+            Integer stock = readInteger(buffer);
+            items.add(new ShopItem(id, material, displayName, lore, customModelData, buyPrice, sellPrice, pinnedPage, pinnedSlot, commandBased, buyCommand, sellCommand, quantityGui, base64Head, texture, currencyCommand, currencyRequirement, buyCurrencyCommand, sellCurrencyCommand, buyCurrencyRequirement, sellCurrencyRequirement, buyLimit, sellLimit, weight, rarity, stock));
+        }
+        return items;
+    }
+
+    private Material readMaterial(ByteBuffer buffer, boolean[] valid) {
+        Material material = Material.getMaterial(readString(buffer));
+        if (material == null) {
+            valid[0] = false;
+        }
+        return material;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<String> readStringList(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+
+    private List<Integer> readIntList(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0) {
+            return null;
+        }
+        List<Integer> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(buffer.getInt());
+        }
+        return values;
+    }
+
+    private Integer readInteger(ByteBuffer buffer) {
+        return buffer.get() != 0 ? buffer.getInt() : null;
+    }
+}
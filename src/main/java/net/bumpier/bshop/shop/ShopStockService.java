@@ -0,0 +1,366 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.database.Database;
+import net.bumpier.bshop.database.SqlDialect;
+import net.bumpier.bshop.database.StockRepository;
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.ShopItem;
+import net.bumpier.bshop.shop.ui.ShopGuiManager;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Global stock of items with a {@code stock} amount, shared by all players and refilled every rotation
+ * (non-rotational shops have a single rotation).
+ * <p>
+ * Purchases reserve units from an in-memory counter per item, so a buy never waits for the database. A
+ * background thread writes the units sold since the last flush every {@code flush_interval_ms} as a
+ * relative {@code stock - n} update, then reads the rows back so sales made on other servers sharing a
+ * MySQL database show up here. Between flushes each server can only oversell by what the others sold in
+ * that interval.
+ */
+public class ShopStockService {
+
+    private final BShop plugin;
+    private final ShopManager shopManager;
+    private final StockRepository repository;
+    private final boolean mysql;
+    private final boolean persistent;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    // Rows read at startup, consumed when the matching counter is first used
+    private final Map<String, StockRepository.StockRow> persisted = new ConcurrentHashMap<>();
+    // Shops whose displayed stock changed since the last display refresh
+    private final Set<String> changedShops = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bShop-StockWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final BukkitTask displayTask;
+
+    // Metrics
+    private final AtomicLong reservations = new AtomicLong(0);
+    private final AtomicLong outOfStock = new AtomicLong(0);
+    private final AtomicLong flushes = new AtomicLong(0);
+    private final AtomicLong flushFailures = new AtomicLong(0);
+
+    public ShopStockService(BShop plugin, ShopManager shopManager, Database database) {
+        this.plugin = plugin;
+        this.shopManager = shopManager;
+        this.repository = new StockRepository(database);
+        this.mysql = repository.dialect() == SqlDialect.MYSQL;
+
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("database.stock");
+        long flushIntervalMs = Math.max(100, config != null ? config.getLong("flush_interval_ms", 1000) : 1000);
+        long displayRefreshTicks = Math.max(1, config != null ? config.getLong("display_refresh_ticks", 20) : 20);
+
+        this.persistent = createTable() && loadPersisted();
+        if (persistent) {
+            writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        this.displayTask = Bukkit.getScheduler().runTaskTimer(plugin, this::refreshChangedShops, displayRefreshTicks, displayRefreshTicks);
+    }
+
+    private boolean createTable() {
+        try {
+            repository.createTable();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not prepare the stock table; item stock will not survive a restart.", e);
+            return false;
+        }
+    }
+
+    private boolean loadPersisted() {
+        try {
+            for (StockRepository.StockRow row : repository.loadAll().join()) {
+                persisted.put(key(row.shopId(), row.itemId()), row);
+            }
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load item stock; item stock will not survive a restart.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Units of {@code item} left in the current rotation of a shop, or -1 if its stock is unlimited.
+     */
+    public int getRemaining(String shopId, ShopItem item) {
+        if (!item.hasStock() || shopId == null) {
+            return -1;
+        }
+        return counter(shopId, item).remaining();
+    }
+
+    /**
+     * Takes {@code quantity} units of {@code item} for a purchase. Returns null when fewer are left, or
+     * when the item has stock but no shop is given; otherwise {@link Reservation#release()} must be called
+     * if the purchase does not go through.
+     */
+    public Reservation reserve(String shopId, ShopItem item, int quantity) {
+        if (!item.hasStock()) {
+            return Reservation.NONE;
+        }
+        if (shopId == null) {
+            outOfStock.incrementAndGet();
+            return null;
+        }
+        Counter counter = counter(shopId, item);
+        if (!counter.tryTake(quantity)) {
+            outOfStock.incrementAndGet();
+            return null;
+        }
+        reservations.incrementAndGet();
+        changedShops.add(counter.shopId);
+        return new Reservation(this, counter, quantity);
+    }
+
+    private Counter counter(String shopId, ShopItem item) {
+        long epoch = currentEpoch(shopId);
+        return counters.compute(key(shopId, item.id()), (key, existing) -> {
+            if (existing != null && existing.epoch == epoch) {
+                return existing;
+            }
+            // First use, or a new rotation: take the persisted stock of this rotation if there is any
+            StockRepository.StockRow row = persisted.remove(key);
+            if (row != null && row.epoch() == epoch) {
+                return new Counter(shopId.toLowerCase(), item.id(), item.material().name(), item.getStock(), epoch, Math.max(0, row.stock()), true);
+            }
+            changedShops.add(shopId.toLowerCase());
+            return new Counter(shopId.toLowerCase(), item.id(), item.material().name(), item.getStock(), epoch, item.getStock(), false);
+        });
+    }
+
+    private long currentEpoch(String shopId) {
+        RotationState state = shopManager.getRotationState(shopId);
+        return state != null ? state.epoch() : 0L;
+    }
+
+    private static String key(String shopId, String itemId) {
+        return shopId.toLowerCase() + ":" + itemId;
+    }
+
+    private void flush() {
+        List<StockRepository.StockClaim> claims = new ArrayList<>();
+        List<StockRepository.StockSale> sales = new ArrayList<>();
+        List<Counter> claimed = new ArrayList<>();
+        Map<Counter, Integer> flushed = new IdentityHashMap<>();
+        for (Counter counter : counters.values()) {
+            if (!counter.claimed) {
+                claims.add(new StockRepository.StockClaim(counter.shopId, counter.itemId, counter.material, counter.fullStock, counter.epoch));
+                claimed.add(counter);
+            }
+            int taken = Counter.taken(counter.state.get());
+            if (taken != 0) {
+                sales.add(new StockRepository.StockSale(counter.shopId, counter.itemId, counter.epoch, taken));
+                flushed.put(counter, taken);
+            }
+        }
+        // SQLite is only ever used by this server, so without writes there is nothing new to read
+        if (claims.isEmpty() && sales.isEmpty() && !mysql) {
+            return;
+        }
+
+        try {
+            if (!claims.isEmpty() || !sales.isEmpty()) {
+                repository.save(claims, sales).join();
+                for (Counter counter : claimed) {
+                    counter.claimed = true;
+                }
+            }
+            Map<String, StockRepository.StockRow> rows = new HashMap<>();
+            for (StockRepository.StockRow row : repository.loadAll().join()) {
+                rows.put(key(row.shopId(), row.itemId()), row);
+            }
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                Counter counter = entry.getValue();
+                StockRepository.StockRow row = rows.get(entry.getKey());
+                if (row != null && row.epoch() == counter.epoch && counter.settle(row.stock(), flushed.getOrDefault(counter, 0))) {
+                    changedShops.add(counter.shopId);
+                }
+            }
+            flushes.incrementAndGet();
+        } catch (Exception e) {
+            // The sold units stay counted locally and are written with the next flush
+            flushFailures.incrementAndGet();
+            plugin.getLogger().log(Level.WARNING, "Could not save item stock; retrying with the next flush.", e);
+        }
+    }
+
+    private void refreshChangedShops() {
+        if (changedShops.isEmpty()) {
+            return;
+        }
+        ShopGuiManager guiManager = plugin.getShopGuiManager();
+        for (String shopId : new ArrayList<>(changedShops)) {
+            changedShops.remove(shopId);
+            if (guiManager != null) {
+                guiManager.refreshOpenShop(shopId);
+            }
+        }
+    }
+
+    /**
+     * Writes the units sold since the last flush and stops the writer thread; waits a few seconds at most.
+     */
+    public void shutdown() {
+        displayTask.cancel();
+        if (persistent) {
+            try {
+                writer.execute(this::flush);
+            } catch (RejectedExecutionException ignored) {
+                // Already shut down
+            }
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get stock statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int unflushed = 0;
+        for (Counter counter : counters.values()) {
+            unflushed += Counter.taken(counter.state.get());
+        }
+        stats.put("stock_items_tracked", counters.size());
+        stats.put("stock_units_unflushed", unflushed);
+        stats.put("stock_reservations", reservations.get());
+        stats.put("stock_out_of_stock", outOfStock.get());
+        stats.put("stock_flushes", flushes.get());
+        stats.put("stock_flush_failures", flushFailures.get());
+        stats.put("stock_persistent", persistent);
+        return stats;
+    }
+
+    /**
+     * Units taken for one purchase.
+     */
+    public static final class Reservation {
+
+        // Returned for items without stock; releasing it does nothing
+        static final Reservation NONE = new Reservation(null, null, 0);
+
+        private final ShopStockService service;
+        private final Counter counter;
+        private final int quantity;
+        private boolean released;
+
+        private Reservation(ShopStockService service, Counter counter, int quantity) {
+            this.service = service;
+            this.counter = counter;
+            this.quantity = quantity;
+        }
+
+        /**
+         * Puts the units back, e.g. because the player could not pay. Only the first call has an effect.
+         */
+        public void release() {
+            if (counter == null || released) {
+                return;
+            }
+            released = true;
+            counter.giveBack(quantity);
+            service.changedShops.add(counter.shopId);
+        }
+    }
+
+    /**
+     * Stock of one item in one rotation. The stock last read from the database and the units taken here
+     * since are packed into one long, so a purchase is a single compare-and-set and a flush can swap in the
+     * new database value without losing purchases made while it ran.
+     */
+    private static final class Counter {
+
+        final String shopId;
+        final String itemId;
+        final String material;
+        final int fullStock;
+        final long epoch;
+        // High 32 bits: stock in the database; low 32 bits: units taken here and not yet written
+        final AtomicLong state;
+        // Whether the database row has been set up for this rotation
+        volatile boolean claimed;
+
+        Counter(String shopId, String itemId, String material, int fullStock, long epoch, int stock, boolean claimed) {
+            this.shopId = shopId;
+            this.itemId = itemId;
+            this.material = material;
+            this.fullStock = fullStock;
+            this.epoch = epoch;
+            this.state = new AtomicLong(pack(stock, 0));
+            this.claimed = claimed;
+        }
+
+        int remaining() {
+            long current = state.get();
+            return Math.max(0, stock(current) - taken(current));
+        }
+
+        boolean tryTake(int quantity) {
+            while (true) {
+                long current = state.get();
+                if (stock(current) - taken(current) < quantity) {
+                    return false;
+                }
+                if (state.compareAndSet(current, pack(stock(current), taken(current) + quantity))) {
+                    return true;
+                }
+            }
+        }
+
+        void giveBack(int quantity) {
+            state.getAndUpdate(current -> pack(stock(current), taken(current) - quantity));
+        }
+
+        /**
+         * Replaces the stock with the database value after {@code written} taken units were saved.
+         * Returns whether the remaining stock changed.
+         */
+        boolean settle(int databaseStock, int written) {
+            int before = remaining();
+            state.getAndUpdate(current -> pack(Math.max(0, databaseStock), taken(current) - written));
+            return remaining() != before;
+        }
+
+        static long pack(int stock, int taken) {
+            return ((long) stock << 32) | (taken & 0xFFFFFFFFL);
+        }
+
+        static int stock(long state) {
+            return (int) (state >> 32);
+        }
+
+        static int taken(long state) {
+            return (int) state;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package net.bumpier.bshop.shop.model;
+
+/**
+ * Rotation settings shared by all items of one rarity in a rotational shop.
+ */
+public record RarityRule(
+        double weight, // Selection weight of items that do not set their own
+        int min, // Minimum number of items of this rarity per rotation (0 = no minimum)
+        int max // Maximum number of items of this rarity per rotation (-1 = no maximum)
+) {}
@@ -0,0 +1,18 @@
+package net.bumpier.bshop.shop.model;
+
+import java.util.List;
+
+/**
+ * The current rotation of a rotational shop. Instances are immutable and replaced as a whole on every
+ * rotation, so readers always see an item list and timestamps that belong together.
+ */
+public record RotationState(
+        List<ShopItem> activeItems, // Items shown in this rotation
+        long epoch, // Rotation counter, incremented on every rotation
+        long rotatedAt, // When this rotation started (epoch millis)
+        long nextRotationAt // When the next rotation is due (epoch millis)
+) {
+    public RotationState {
+        activeItems = List.copyOf(activeItems);
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 
 /**
  * Represents a configurable shop GUI, updated to support pagination.
+ * The items currently on offer in a rotational shop are tracked separately in {@link RotationState}.
  */
 public record Shop(
         String id,
@@ -15,8 +16,8 @@ public record Shop(
         String type, // "rotational" or null
         String rotationInterval, // e.g. "24h" or null
         int slots, // Number of items to show per rotation (0 for non-rotational)
-        List<ShopItem> activeItems, // Items currently active in this rotation (null for non-rotational)
         List<Integer> itemSlots, // Slots for rotational shop items (null for non-rotational)
         List<ShopItem> featuredItems, // Always-present featured items (null for non-rotational)
-        List<Integer> featuredSlots // Slots for featured items (null for non-rotational)
+        List<Integer> featuredSlots, // Slots for featured items (null for non-rotational)
+        Map<String, RarityRule> rarities // Rotation weights and quotas by lower-case rarity name (empty if none)
 ) {}
\ No newline at end of file
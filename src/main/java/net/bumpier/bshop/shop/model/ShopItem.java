@@ -40,10 +40,17 @@ public final class ShopItem {
     private final Integer buyLimit;
     private final Integer sellLimit;
 
+    // Rotation selection: explicit weight (null = use the rarity's weight) and optional rarity name
+    private final Double weight;
+    private final String rarity;
+
+    // Global stock shared by all players per rotation (null = unlimited)
+    private final Integer stock;
+
     // The final slot this item is assigned to on a generated GUI page.
     private int assignedSlot;
 
-    public ShopItem(String id, Material material, String displayName, List<String> lore, int customModelData, double buyPrice, double sellPrice, Integer pinnedPage, Integer pinnedSlot, Boolean commandBased, String buyCommand, String sellCommand, Boolean quantityGui, String base64Head, String texture, String currencyCommand, String currencyRequirement, String buyCurrencyCommand, String sellCurrencyCommand, String buyCurrencyRequirement, String sellCurrencyRequirement, Integer buyLimit, Integer sellLimit) {
+    public ShopItem(String id, Material material, String displayName, List<String> lore, int customModelData, double buyPrice, double sellPrice, Integer pinnedPage, Integer pinnedSlot, Boolean commandBased, String buyCommand, String sellCommand, Boolean quantityGui, String base64Head, String texture, String currencyCommand, String currencyRequirement, String buyCurrencyCommand, String sellCurrencyCommand, String buyCurrencyRequirement, String sellCurrencyRequirement, Integer buyLimit, Integer sellLimit, Double weight, String rarity, Integer stock) {
         this.id = id;
         this.material = material;
         this.displayName = displayName;
@@ -68,6 +75,19 @@ public final class ShopItem {
         this.sellCurrencyRequirement = sellCurrencyRequirement;
         this.buyLimit = buyLimit;
         this.sellLimit = sellLimit;
+        this.weight = weight;
+        this.rarity = rarity;
+        this.stock = stock;
+    }
+
+    // Constructor without global stock
+    public ShopItem(String id, Material material, String displayName, List<String> lore, int customModelData, double buyPrice, double sellPrice, Integer pinnedPage, Integer pinnedSlot, Boolean commandBased, String buyCommand, String sellCommand, Boolean quantityGui, String base64Head, String texture, String currencyCommand, String currencyRequirement, String buyCurrencyCommand, String sellCurrencyCommand, String buyCurrencyRequirement, String sellCurrencyRequirement, Integer buyLimit, Integer sellLimit, Double weight, String rarity) {
+        this(id, material, displayName, lore, customModelData, buyPrice, sellPrice, pinnedPage, pinnedSlot, commandBased, buyCommand, sellCommand, quantityGui, base64Head, texture, currencyCommand, currencyRequirement, buyCurrencyCommand, sellCurrencyCommand, buyCurrencyRequirement, sellCurrencyRequirement, buyLimit, sellLimit, weight, rarity, null);
+    }
+
+    // Constructor without rotation weight/rarity
+    public ShopItem(String id, Material material, String displayName, List<String> lore, int customModelData, double buyPrice, double sellPrice, Integer pinnedPage, Integer pinnedSlot, Boolean commandBased, String buyCommand, String sellCommand, Boolean quantityGui, String base64Head, String texture, String currencyCommand, String currencyRequirement, String buyCurrencyCommand, String sellCurrencyCommand, String buyCurrencyRequirement, String sellCurrencyRequirement, Integer buyLimit, Integer sellLimit) {
+        this(id, material, displayName, lore, customModelData, buyPrice, sellPrice, pinnedPage, pinnedSlot, commandBased, buyCommand, sellCommand, quantityGui, base64Head, texture, currencyCommand, currencyRequirement, buyCurrencyCommand, sellCurrencyCommand, buyCurrencyRequirement, sellCurrencyRequirement, buyLimit, sellLimit, null, null);
     }
 
     // Add legacy constructor for backward compatibility
@@ -114,6 +134,12 @@ public final class ShopItem {
     public Integer getBuyLimit() { return buyLimit; }
     public Integer getSellLimit() { return sellLimit; }
 
+    public Double getWeight() { return weight; }
+    public String getRarity() { return rarity; }
+
+    public Integer getStock() { return stock; }
+    public boolean hasStock() { return stock != null; }
+
     public int getAssignedSlot() { return assignedSlot; }
     public void setAssignedSlot(int slot) { this.assignedSlot = slot; }
 }
\ No newline at end of file
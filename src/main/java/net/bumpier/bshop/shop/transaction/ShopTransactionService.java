@@ -1,6 +1,9 @@
 package net.bumpier.bshop.shop.transaction;
 
 import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.shop.ShopStockService;
+import net.bumpier.bshop.shop.model.RotationState;
+import net.bumpier.bshop.shop.model.Shop;
 import net.bumpier.bshop.shop.model.ShopItem;
 import net.bumpier.bshop.util.message.MessageService;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
@@ -9,7 +12,6 @@ import net.bumpier.bshop.shop.ui.ShopGuiManager;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import java.util.concurrent.ConcurrentHashMap;
-import net.bumpier.bshop.shop.ShopManager;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -98,19 +100,63 @@ public class ShopTransactionService {
         }
     }
 
-    private long getCurrentRotationTimestamp(String shopId) {
-        // Use the ShopManager's nextRotationTimes minus interval as the start of the current rotation
-        long now = System.currentTimeMillis();
-        ShopManager shopManager = shopGuiManager.getShopManager();
-        long next = shopManager.getTimeUntilNextRotation(shopId) + now;
-        long interval = shopManager.parseInterval(shopManager.getShop(shopId).rotationInterval());
-        return next - interval;
+    private long getCurrentRotationEpoch(String shopId) {
+        // Limits are counted per rotation epoch, which every server derives the same way;
+        // non-rotational shops share a single bucket
+        RotationState state = shopGuiManager.getShopManager().getRotationState(shopId);
+        return state != null ? state.epoch() : 0L;
+    }
+
+    /**
+     * The shop a trade happens in: the open shop page, else the shop the quantity menu was opened from,
+     * else the shop that defines the item. Null if none applies.
+     */
+    private String resolveShopId(Player player, ShopItem item) {
+        // The quantity menu replaces the shop page, so fall back to the shop it was opened from
+        var pageInfo = shopGuiManager.getOpenPageInfo(player);
+        if (pageInfo != null) return pageInfo.shopId();
+        TransactionContext context = shopGuiManager.getTransactionContext(player);
+        if (context != null && context.getSourceShopId() != null) return context.getSourceShopId();
+        // Trades made without a menu (e.g. through the API) use the shop that defines the item
+        Shop owner = shopGuiManager.getShopManager().getShopOf(item);
+        return owner != null ? owner.id() : null;
     }
 
     public void buyItem(Player player, ShopItem item, int quantity) {
+        buyItem(player, item, quantity, null);
+    }
+
+    /**
+     * Buys an item from a known shop. Stocked items are taken from that shop's stock; without a shop id
+     * the shop is taken from the player's open menu or, failing that, from the shop that defines the item.
+     */
+    public void buyItem(Player player, ShopItem item, int quantity, String sourceShopId) {
         totalTransactions.incrementAndGet();
+        String tradeShopId = sourceShopId != null ? sourceShopId : resolveShopId(player, item);
+        ShopStockService.Reservation stockReservation = null;
+        boolean purchased = false;
         
         try {
+            // Take the units from the global stock; released again below if the purchase fails
+            ShopStockService stockService = plugin.getStockService();
+            if (stockService != null && item.hasStock()) {
+                String stockShopId = tradeShopId;
+                if (stockShopId == null) {
+                    // Without a shop there is no stock to take from; never sell a stocked item unlimited
+                    messageService.send(player, "shop.stock_shop_unknown");
+                    failedTransactions.incrementAndGet();
+                    return;
+                }
+                stockReservation = stockService.reserve(stockShopId, item, quantity);
+                if (stockReservation == null) {
+                    java.util.Map<String, String> placeholders = new java.util.HashMap<>();
+                    placeholders.put("stock", String.valueOf(stockService.getRemaining(stockShopId, item)));
+                    messageService.send(player, "shop.out_of_stock", placeholders);
+                    failedTransactions.incrementAndGet();
+                    return;
+                }
+            }
+            
             // Enforce buy-limit if set
             Integer buyLimit = item.getBuyLimit();
             if (buyLimit != null) {
@@ -119,7 +165,7 @@ public class ShopTransactionService {
                 var pageInfo = shopGuiManager.getOpenPageInfo(player);
                 if (pageInfo != null) shopId = pageInfo.shopId();
                 if (shopId != null) {
-                    long rotation = getCurrentRotationTimestamp(shopId);
+                    long rotation = getCurrentRotationEpoch(shopId);
                     purchaseCounts.putIfAbsent(playerId, new ConcurrentHashMap<>());
                     purchaseCounts.get(playerId).putIfAbsent(shopId, new ConcurrentHashMap<>());
                     purchaseCounts.get(playerId).get(shopId).putIfAbsent(item.id(), new ConcurrentHashMap<>());
@@ -177,19 +223,14 @@ public class ShopTransactionService {
                 if (command.startsWith("/")) command = command.substring(1);
                 // Always run from console by default
                 org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), command);
+                purchased = true;
                 java.util.Map<String, String> placeholders = new java.util.HashMap<>();
                 placeholders.put("amount", String.valueOf(quantity));
                 placeholders.put("item", item.displayName());
                 placeholders.put("price", String.format("%,.2f", item.buyPrice() * quantity));
                 messageService.send(player, "shop.buy_success", placeholders);
                 // Record transaction
-                {
-                    String shopId = null;
-                    var pageInfo = shopGuiManager.getOpenPageInfo(player);
-                    if (pageInfo != null) shopId = pageInfo.shopId();
-                    if (shopId == null) shopId = "unknown";
-                    shopGuiManager.recordRecentTransaction(player, shopId, item.displayName(), item.material().name(), quantity, item.buyPrice() * quantity, "Buy", item.id());
-                }
+                shopGuiManager.recordRecentTransaction(player, tradeShopId != null ? tradeShopId : "unknown", item.displayName(), item.material().name(), quantity, item.buyPrice() * quantity, "Buy", item.id());
                 successfulTransactions.incrementAndGet();
                 return;
             }
@@ -222,25 +263,24 @@ public class ShopTransactionService {
             }
             economy.withdrawPlayer(player, totalPrice);
             player.getInventory().addItem(new ItemStack(item.material(), quantity));
+            purchased = true;
             java.util.Map<String, String> placeholders = new java.util.HashMap<>();
             placeholders.put("amount", String.valueOf(quantity));
             placeholders.put("item", item.displayName());
             placeholders.put("price", String.format("%,.2f", totalPrice));
             messageService.send(player, "shop.buy_success", placeholders);
             // Record transaction
-            {
-                String shopId = null;
-                var pageInfo = shopGuiManager.getOpenPageInfo(player);
-                if (pageInfo != null) shopId = pageInfo.shopId();
-                if (shopId == null) shopId = "unknown";
-                shopGuiManager.recordRecentTransaction(player, shopId, item.displayName(), item.material().name(), quantity, totalPrice, "Buy", item.id());
-            }
+            shopGuiManager.recordRecentTransaction(player, tradeShopId != null ? tradeShopId : "unknown", item.displayName(), item.material().name(), quantity, totalPrice, "Buy", item.id());
             successfulTransactions.incrementAndGet();
             
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error during buy transaction for " + player.getName(), e);
             failedTransactions.incrementAndGet();
             messageService.send(player, "shop.transaction_error");
+        } finally {
+            if (stockReservation != null && !purchased) {
+                stockReservation.release();
+            }
         }
     }
 
@@ -270,7 +310,16 @@ public class ShopTransactionService {
     }
 
     public void sellItem(Player player, ShopItem item, int quantity) {
+        sellItem(player, item, quantity, null);
+    }
+
+    /**
+     * Sells an item to a known shop, which scopes shop and item multipliers; without a shop id the shop is
+     * resolved like for purchases.
+     */
+    public void sellItem(Player player, ShopItem item, int quantity, String sourceShopId) {
         totalTransactions.incrementAndGet();
+        String tradeShopId = sourceShopId != null ? sourceShopId : resolveShopId(player, item);
         
         try {
             // Enforce sell-limit if set
@@ -281,7 +330,7 @@ public class ShopTransactionService {
                 var pageInfo = shopGuiManager.getOpenPageInfo(player);
                 if (pageInfo != null) shopId = pageInfo.shopId();
                 if (shopId != null) {
-                    long rotation = getCurrentRotationTimestamp(shopId);
+                    long rotation = getCurrentRotationEpoch(shopId);
                     purchaseCounts.putIfAbsent(playerId, new ConcurrentHashMap<>());
                     purchaseCounts.get(playerId).putIfAbsent(shopId, new ConcurrentHashMap<>());
                     purchaseCounts.get(playerId).get(shopId).putIfAbsent(item.id(), new ConcurrentHashMap<>());
@@ -342,7 +391,7 @@ public class ShopTransactionService {
                 
                 // Apply multiplier to currency command price
                 double basePrice = item.sellPrice() * quantity;
-                double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player);
+                double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player, tradeShopId, item.id());
                 double totalPrice = basePrice * multiplier;
                 
                 java.util.Map<String, String> placeholders = new java.util.HashMap<>();
@@ -358,13 +407,7 @@ public class ShopTransactionService {
                 }
                 
                 // Record transaction with multiplier price
-                {
-                    String shopId = null;
-                    var pageInfo = shopGuiManager.getOpenPageInfo(player);
-                    if (pageInfo != null) shopId = pageInfo.shopId();
-                    if (shopId == null) shopId = "unknown";
-                    shopGuiManager.recordRecentTransaction(player, shopId, item.displayName(), item.material().name(), quantity, totalPrice, "Sell", item.id());
-                }
+                shopGuiManager.recordRecentTransaction(player, tradeShopId != null ? tradeShopId : "unknown", item.displayName(), item.material().name(), quantity, totalPrice, "Sell", item.id());
                 successfulTransactions.incrementAndGet();
                 return;
             }
@@ -393,7 +436,7 @@ public class ShopTransactionService {
             
             // Apply multiplier to sell price
             double basePrice = item.sellPrice() * quantity;
-            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player);
+            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player, tradeShopId, item.id());
             double totalPrice = basePrice * multiplier;
             
             economy.depositPlayer(player, totalPrice);
@@ -410,13 +453,7 @@ public class ShopTransactionService {
             }
             
             // Record transaction with multiplier price
-            {
-                String shopId = null;
-                var pageInfo = shopGuiManager.getOpenPageInfo(player);
-                if (pageInfo != null) shopId = pageInfo.shopId();
-                if (shopId == null) shopId = "unknown";
-                shopGuiManager.recordRecentTransaction(player, shopId, item.displayName(), item.material().name(), quantity, totalPrice, "Sell", item.id());
-            }
+            shopGuiManager.recordRecentTransaction(player, tradeShopId != null ? tradeShopId : "unknown", item.displayName(), item.material().name(), quantity, totalPrice, "Sell", item.id());
             successfulTransactions.incrementAndGet();
             
         } catch (Exception e) {
@@ -26,6 +26,7 @@ import org.bukkit.inventory.InventoryView;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -60,6 +61,8 @@ public class ShopGuiManager {
     // Add item stack caching for better performance
     private final Map<String, ItemStack> itemStackCache = new ConcurrentHashMap<>();
     private final Map<String, Long> itemStackCacheTimestamps = new ConcurrentHashMap<>();
+    // Wallet section of each shop file, read once instead of on every open
+    private final Map<String, Optional<ConfigurationSection>> shopWalletConfigs = new ConcurrentHashMap<>();
     private long itemStackCacheDuration = 60000; // 1 minute cache for item stacks
     private int maxCachedItemStacks = 1000;
     private long cacheCleanupInterval = 300000; // 5 minutes
@@ -71,14 +74,20 @@ public class ShopGuiManager {
     private long inventoryCheckCooldown = 500; // Default 500ms cooldown
     private long autoClickPreventionCooldown = 100; // Default 100ms cooldown
 
+    // Spreads shop opens over ticks when many players open at once
+    private final ShopOpenScheduler openScheduler;
+
     public ShopGuiManager(BShop plugin, ShopManager shopManager, MessageService messageService, ConfigManager guisConfig) {
         this.plugin = plugin;
         this.shopManager = shopManager;
         this.messageService = messageService;
         this.guisConfig = guisConfig;
-        
+
         // Load cooldown settings from config
         loadCooldownSettings();
+
+        this.openScheduler = new ShopOpenScheduler(plugin, this);
+        this.openScheduler.start();
     }
     
     private void loadCooldownSettings() {
@@ -218,30 +227,61 @@ public class ShopGuiManager {
             messageService.send(player, "shop.not_found", Placeholder.unparsed("shop", shopId));
             return;
         }
-        
-        // Rate limiting for GUI updates
+
+        // Rate limiting for GUI updates: opens inside the cooldown are deferred, not dropped
         long now = System.currentTimeMillis();
-        if (now - lastGuiUpdate.getOrDefault(player.getUniqueId(), 0L) < guiUpdateCooldown) {
+        boolean throttled = now - lastGuiUpdate.getOrDefault(player.getUniqueId(), 0L) < guiUpdateCooldown;
+        lastGuiUpdate.put(player.getUniqueId(), now);
+
+        openScheduler.request(player, shopId, page, throttled);
+    }
+
+    /**
+     * Builds and opens the shop inventory. Called by the open scheduler once the open fits in a tick's budget.
+     */
+    void renderShop(Player player, String shopId, int page) {
+        Shop shop = shopManager.getShop(shopId);
+        if (shop == null) {
+            messageService.send(player, "shop.not_found", Placeholder.unparsed("shop", shopId));
             return;
         }
-        lastGuiUpdate.put(player.getUniqueId(), now);
-        
-        // Load wallet config from /shops/{shopId}.yml
-        ConfigManager shopConfig = new ConfigManager(plugin, "shops/" + shopId + ".yml");
-        ConfigurationSection walletConfig = shopConfig.getConfig().getConfigurationSection("wallet");
+
+        String inventoryTitle = messageService.serialize(messageService.parse(shop.title()));
+        Inventory inventory = Bukkit.createInventory(new BShopGUIHolder(), shop.size(), inventoryTitle);
+        populateShopInventory(inventory, player, shop, page);
+
+        player.openInventory(inventory);
+        openShopInventories.put(player.getUniqueId(), new PageInfo(shopId, page));
+        shopOpenTimes.put(player.getUniqueId(), System.currentTimeMillis());
+        ConfigurationSection walletConfig = getShopWalletConfig(shopId);
+        if (walletConfig != null) {
+            addWalletItem(inventory, walletConfig, player);
+        }
+    }
+
+    /**
+     * Returns the wallet section of shops/{shopId}.yml, falling back to the main menu wallet.
+     * The shop file is only read once; hot reload and /shop reload drop the cached section.
+     */
+    private ConfigurationSection getShopWalletConfig(String shopId) {
+        ConfigurationSection walletConfig = shopWalletConfigs.computeIfAbsent(shopId.toLowerCase(), id -> {
+            ConfigManager shopConfig = new ConfigManager(plugin, "shops/" + shopId + ".yml");
+            return Optional.ofNullable(shopConfig.getConfig().getConfigurationSection("wallet"));
+        }).orElse(null);
         if (walletConfig == null) {
             // Fallback to global wallet config (main-menu)
             walletConfig = guisConfig.getConfig().getConfigurationSection("main-menu.items.wallet");
         }
-        // If walletConfig is still null, just skip adding the wallet item
-        String inventoryTitle = messageService.serialize(messageService.parse(shop.title()));
-        Inventory inventory = Bukkit.createInventory(new BShopGUIHolder(), shop.size(), inventoryTitle);
-        List<ShopItem> displayItems;
-        if (shop.type() != null && shop.type().equalsIgnoreCase("rotational") && shop.activeItems() != null) {
-            displayItems = shop.activeItems();
-        } else {
-            displayItems = shop.items();
-        }
+        // If walletConfig is still null, the wallet item is skipped
+        return walletConfig;
+    }
+
+    /**
+     * Places the items, navigation buttons and filler of one shop page into the given inventory.
+     */
+    private void populateShopInventory(Inventory inventory, Player player, Shop shop, int page) {
+        String shopId = shop.id();
+        List<ShopItem> displayItems = shopManager.getActiveItems(shop);
         // Use displayItems instead of shop.items() for flow and pinned logic
         List<Integer> reservedSlots = shop.paginationItems().entrySet().stream()
                 .filter(entry -> !entry.getKey().equals("filler"))
@@ -253,7 +293,7 @@ public class ShopGuiManager {
                     int slot = item.getPinnedSlot().get();
                     if (slot < shop.size() && !takenSlots.contains(slot)) {
                         item.setAssignedSlot(slot);
-                        inventory.setItem(slot, getCachedShopItemStack(item, player));
+                        inventory.setItem(slot, getCachedShopItemStack(shopId, item, player));
                         takenSlots.add(slot);
                     }
                 });
@@ -263,7 +303,7 @@ public class ShopGuiManager {
                 ShopItem featured = shop.featuredItems().get(i);
                 int slot = shop.featuredSlots().get(i);
                 featured.setAssignedSlot(slot);
-                inventory.setItem(slot, getCachedShopItemStack(featured, player));
+                inventory.setItem(slot, getCachedShopItemStack(shopId, featured, player));
                 takenSlots.add(slot);
             }
         }
@@ -286,7 +326,7 @@ public class ShopGuiManager {
                 ShopItem shopItem = flowItems.get(itemIndex);
                 int slot = availableSlots.get(i);
                 shopItem.setAssignedSlot(slot);
-                inventory.setItem(slot, getCachedShopItemStack(shopItem, player));
+                inventory.setItem(slot, getCachedShopItemStack(shopId, shopItem, player));
             }
         }
         int maxPinnedPage = displayItems.stream().filter(ShopItem::isPinned)
@@ -342,15 +382,101 @@ public class ShopGuiManager {
                 }
             }
         }
-        
-        player.openInventory(inventory);
-        openShopInventories.put(player.getUniqueId(), new PageInfo(shopId, page));
-        shopOpenTimes.put(player.getUniqueId(), System.currentTimeMillis());
-        if (walletConfig != null) {
-            addWalletItem(inventory, walletConfig, player);
+    }
+
+    /**
+     * Re-renders the shop for everyone currently viewing it, e.g. after its file was hot reloaded.
+     * Pages are updated in place when the inventory layout still fits; otherwise the shop is reopened,
+     * and viewers of a shop that no longer exists get their inventory closed.
+     */
+    public void refreshOpenShop(String shopId) {
+        Shop shop = shopManager.getShop(shopId);
+        String inventoryTitle = shop != null ? messageService.serialize(messageService.parse(shop.title())) : null;
+        for (Map.Entry<UUID, PageInfo> entry : new ArrayList<>(openShopInventories.entrySet())) {
+            if (!entry.getValue().shopId().equalsIgnoreCase(shopId)) {
+                continue;
+            }
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+            if (shop == null) {
+                player.closeInventory();
+                continue;
+            }
+            InventoryView view = player.getOpenInventory();
+            Inventory top = view.getTopInventory();
+            int page = entry.getValue().currentPage();
+            if (top.getHolder() instanceof BShopGUIHolder && top.getSize() == shop.size() && inventoryTitle.equals(view.getTitle())) {
+                top.clear();
+                populateShopInventory(top, player, shop, page);
+                ConfigurationSection walletConfig = getShopWalletConfig(shop.id());
+                if (walletConfig != null) {
+                    addWalletItem(top, walletConfig, player);
+                }
+            } else {
+                renderShop(player, shop.id(), page);
+            }
         }
     }
 
+    /**
+     * Drops cached item stacks and wallet settings of a single shop.
+     */
+    public void invalidateShop(String shopId) {
+        String prefix = shopId.toLowerCase() + ":";
+        itemStackCache.keySet().removeIf(key -> key.startsWith(prefix));
+        itemStackCacheTimestamps.keySet().removeIf(key -> key.startsWith(prefix));
+        shopWalletConfigs.remove(shopId.toLowerCase());
+    }
+
+    /**
+     * Shows a lightweight placeholder while the player's shop open waits in the queue.
+     */
+    void openLoadingScreen(Player player, String shopId) {
+        Shop shop = shopManager.getShop(shopId);
+        ConfigurationSection config = guisConfig.getConfig().getConfigurationSection("loading-menu");
+        String shopTitle = shop != null ? shop.title() : shopId;
+        int size = shop != null ? shop.size() : 27;
+
+        String title = config != null ? config.getString("title", "<gray>Loading %shop%...") : "<gray>Loading %shop%...";
+        String serializedTitle = messageService.serialize(messageService.parse(title.replace("%shop%", shopTitle)));
+        Inventory inventory = Bukkit.createInventory(new ShopLoadingHolder(), size, serializedTitle);
+
+        if (config != null) {
+            ConfigurationSection itemConfig = config.getConfigurationSection("item");
+            if (itemConfig != null) {
+                Material material = Material.matchMaterial(itemConfig.getString("material", "CLOCK"));
+                if (material != null) {
+                    ItemStack loadingItem = new ItemBuilder(plugin, material, messageService)
+                            .withDisplayName(itemConfig.getString("display-name", "<yellow>Loading..."))
+                            .withLore(itemConfig.getStringList("lore"))
+                            .build();
+                    inventory.setItem(Math.min(itemConfig.getInt("slot", size / 2), size - 1), loadingItem);
+                }
+            }
+
+            ConfigurationSection fillerConfig = config.getConfigurationSection("filler");
+            if (fillerConfig != null && fillerConfig.getBoolean("enabled", false)) {
+                Material fillerMat = Material.matchMaterial(fillerConfig.getString("material", "GRAY_STAINED_GLASS_PANE"));
+                if (fillerMat != null) {
+                    ItemStack fillerStack = new ItemBuilder(plugin, fillerMat, messageService)
+                            .withDisplayName(fillerConfig.getString("display-name", " ")).build();
+                    for (int i = 0; i < size; i++) {
+                        if (inventory.getItem(i) == null) {
+                            inventory.setItem(i, fillerStack);
+                        }
+                    }
+                }
+            }
+        }
+        player.openInventory(inventory);
+    }
+
+    public void cancelPendingOpen(Player player) {
+        openScheduler.cancel(player);
+    }
+
     public void openQuantityGui(Player player, ShopItem item, TransactionType type) {
         TransactionContext context = new TransactionContext(item, type);
         openQuantityGui(player, context);
@@ -396,7 +522,7 @@ public class ShopGuiManager {
         double pricePerItem;
         if (type == TransactionType.SELL) {
             double basePrice = shopItem.sellPrice();
-            double multiplier = getPlayerMultiplierSafely(player);
+            double multiplier = getPlayerMultiplierSafely(player, context);
             pricePerItem = basePrice * multiplier;
         } else {
             pricePerItem = shopItem.buyPrice();
@@ -437,7 +563,7 @@ public class ShopGuiManager {
                         .replace("%item_name%", shopItem.displayName());
                 
                 // Get multiplier for display purposes
-                final double multiplier = (type == TransactionType.SELL) ? getPlayerMultiplierSafely(player) : 1.0;
+                final double multiplier = (type == TransactionType.SELL) ? getPlayerMultiplierSafely(player, context) : 1.0;
                 
                 // Process placeholders in lore
                 List<String> lore = itemConfig.getStringList("lore").stream()
@@ -557,7 +683,7 @@ public class ShopGuiManager {
         double pricePerItem;
         if (type == TransactionType.SELL) {
             double basePrice = item.sellPrice();
-            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player);
+            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player, context.getSourceShopId(), item.id());
             pricePerItem = basePrice * multiplier;
             plugin.getLogger().info("Quantity GUI - Player: " + player.getName() + 
                 ", Base Price: " + basePrice + 
@@ -592,7 +718,7 @@ public class ShopGuiManager {
         
         // Get multiplier for display purposes
         final double multiplier = (type == TransactionType.SELL) ? 
-            getPlayerMultiplierSafely(player) : 1.0;
+            getPlayerMultiplierSafely(player, context) : 1.0;
         
         // Replace placeholders
         displayName = displayName.replace("%item_name%", item.displayName()).replace("%item%", item.displayName());
@@ -709,13 +835,20 @@ public class ShopGuiManager {
     /**
      * Get cached shop item stack or create new one
      */
-    private ItemStack getCachedShopItemStack(ShopItem shopItem, Player player) {
+    private ItemStack getCachedShopItemStack(String shopId, ShopItem shopItem, Player player) {
         // Check if item stack caching is enabled
         if (!enableItemStackCaching) {
-            return createShopItemStack(shopItem, player);
+            return createShopItemStack(shopId, shopItem, player);
         }
         
-        String cacheKey = shopItem.id() + "_" + player.getUniqueId();
+        // Keyed by shop first so a single shop's entries can be invalidated on hot reload; the event
+        // multiplier version makes prices refresh as soon as an event starts or ends
+        String cacheKey = shopId.toLowerCase() + ":" + shopItem.id() + "_" + player.getUniqueId()
+                + "@" + plugin.getMultiplierService().getEventVersion();
+        if (shopItem.hasStock() && plugin.getStockService() != null) {
+            // Stock changes with every purchase, so it is part of the key rather than invalidated
+            cacheKey += "#" + plugin.getStockService().getRemaining(shopId, shopItem);
+        }
         long now = System.currentTimeMillis();
         
         // Check cache first
@@ -725,7 +858,7 @@ public class ShopGuiManager {
         }
         
         // Create new item stack
-        ItemStack newStack = createShopItemStack(shopItem, player);
+        ItemStack newStack = createShopItemStack(shopId, shopItem, player);
         
         // Check cache size limit before adding
         if (itemStackCache.size() >= maxCachedItemStacks) {
@@ -751,12 +884,12 @@ public class ShopGuiManager {
         return newStack;
     }
 
-    private ItemStack createShopItemStack(ShopItem shopItem, Player player) {
+    private ItemStack createShopItemStack(String shopId, ShopItem shopItem, Player player) {
         try {
             // Get player's multiplier with error handling
             double multiplier = 1.0;
             try {
-                multiplier = plugin.getMultiplierService().getPlayerMultiplier(player);
+                multiplier = plugin.getMultiplierService().getPlayerMultiplier(player, shopId, shopItem.id());
                 // Ensure multiplier is valid
                 if (multiplier <= 0 || Double.isNaN(multiplier) || Double.isInfinite(multiplier)) {
                     multiplier = 1.0;
@@ -819,16 +952,14 @@ public class ShopGuiManager {
                             }
                         }
                         
+                        if (processedLine.contains("%stock%")) {
+                            int stock = plugin.getStockService() != null ? plugin.getStockService().getRemaining(shopId, shopItem) : -1;
+                            processedLine = processedLine.replace("%stock%", stock >= 0 ? String.format("%,d", stock) : "\u221E");
+                        }
+                        
                         // Replace timer placeholder for rotational shops
                         if (processedLine.contains("%timer%")) {
                             try {
-                                String shopId = null;
-                                for (Map.Entry<UUID, PageInfo> entry : openShopInventories.entrySet()) {
-                                    if (entry.getValue().shopId() != null) {
-                                        shopId = entry.getValue().shopId();
-                                        break;
-                                    }
-                                }
                                 if (shopId != null) {
                                     long timeLeft = shopManager.getTimeUntilNextRotation(shopId);
                                     String timer = formatTimer(timeLeft);
@@ -875,6 +1006,11 @@ public class ShopGuiManager {
             messageService.send(player, "gui.recent_purchases_not_configured");
             return;
         }
+        final int requestedPage = page;
+        if (!recentTransactions.containsKey(player.getUniqueId())
+                && loadRecentTransactions(player, player.getUniqueId(), () -> openRecentPurchasesMenu(player, requestedPage))) {
+            return;
+        }
         String title = guiConfig.getString("title", "Recent Purchases");
         int size = guiConfig.getInt("size", 3) * 9;
         String serializedTitle = messageService.serialize(messageService.parse(title));
@@ -1001,6 +1137,11 @@ public class ShopGuiManager {
             messageService.send(viewer, "gui.recent_purchases_not_configured");
             return;
         }
+        final int requestedPage = page;
+        if (!recentTransactions.containsKey(targetPlayerUuid)
+                && loadRecentTransactions(viewer, targetPlayerUuid, () -> openRecentPurchasesMenuForPlayer(viewer, targetPlayerUuid, requestedPage))) {
+            return;
+        }
         String title = guiConfig.getString("title", "Recent Purchases");
         int size = guiConfig.getInt("size", 3) * 9;
         String serializedTitle = messageService.serialize(messageService.parse(title + " - " + org.bukkit.Bukkit.getOfflinePlayer(targetPlayerUuid).getName()));
@@ -1118,6 +1259,32 @@ public class ShopGuiManager {
         addWalletItem(inventory, walletConfig, viewer);
     }
 
+    /**
+     * Loads a player's recent transactions from the database off the main thread after a restart, then
+     * reopens the menu. Returns false when there is no transaction store to load from.
+     */
+    private boolean loadRecentTransactions(Player viewer, java.util.UUID targetPlayerUuid, Runnable reopen) {
+        net.bumpier.bshop.database.TransactionStore store = plugin.getTransactionStore();
+        if (store == null || !store.isAvailable()) {
+            return false;
+        }
+        store.loadRecent(targetPlayerUuid, MAX_RECENT).thenAccept(records -> Bukkit.getScheduler().runTask(plugin, () -> {
+            java.util.Deque<RecentTransaction> loaded = new java.util.LinkedList<>();
+            java.time.format.DateTimeFormatter format = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+            for (net.bumpier.bshop.database.TransactionRecord record : records) {
+                String date = format.format(java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(record.createdAt()), java.time.ZoneId.systemDefault()));
+                loaded.addLast(new RecentTransaction(record.itemName(), record.material(), record.amount(), record.price(), record.type(),
+                        date, "N/A", record.transactionId(), record.balanceAfter(), record.itemId()));
+            }
+            // Trades made while loading are already in the database, so the loaded list is complete
+            recentTransactions.put(targetPlayerUuid, loaded);
+            if (viewer.isOnline()) {
+                reopen.run();
+            }
+        }));
+        return true;
+    }
+
     public void handleRecentPurchasesPageAction(Player player, String action) {
         int page = recentPurchasesPage.getOrDefault(player.getUniqueId(), 0);
         if ("recent_purchases_next".equals(action)) {
@@ -1141,10 +1308,26 @@ public class ShopGuiManager {
         if (player != null && player.isOnline()) {
             balanceAfter = plugin.getEconomy().getBalance(player);
         }
-        java.util.Deque<RecentTransaction> deque = recentTransactions.computeIfAbsent(player.getUniqueId(), k -> new java.util.LinkedList<>());
+        long now = System.currentTimeMillis();
         String date = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").format(java.time.LocalDateTime.now());
-        deque.addFirst(new RecentTransaction(itemName, material, amount, price, type, date, shopName, transactionId, balanceAfter, itemId));
-        while (deque.size() > MAX_RECENT) deque.removeLast();
+        // Only keep an in-memory list once it has been loaded, otherwise the menu would hide older trades
+        java.util.Deque<RecentTransaction> deque = plugin.getTransactionStore() != null && plugin.getTransactionStore().isAvailable()
+                ? recentTransactions.get(player.getUniqueId())
+                : recentTransactions.computeIfAbsent(player.getUniqueId(), k -> new java.util.LinkedList<>());
+        if (deque != null) {
+            deque.addFirst(new RecentTransaction(itemName, material, amount, price, type, date, shopName, transactionId, balanceAfter, itemId));
+            while (deque.size() > MAX_RECENT) deque.removeLast();
+        }
+        // Queue for the database; written by the transaction store's background thread
+        if (plugin.getTransactionStore() != null) {
+            plugin.getTransactionStore().record(new net.bumpier.bshop.database.TransactionRecord(transactionId, player.getUniqueId(),
+                    player.getName(), shopId, itemId, itemName, material, amount, price, type, balanceAfter, now));
+        }
+        // Hourly and daily per-item totals for /shop stats
+        if (plugin.getSalesRollupStore() != null) {
+            plugin.getSalesRollupStore().record(shopId, itemId != null ? itemId : material, player.getUniqueId(),
+                    "Buy".equalsIgnoreCase(type), amount, price, now);
+        }
         // Log to file
         net.bumpier.bshop.shop.ui.ShopTransactionLogger.logTransaction(
             player.getUniqueId().toString(), player.getName(), shopId, itemName, material, amount, price, type, balanceAfter, transactionId, date, itemId
@@ -1247,10 +1430,12 @@ public class ShopGuiManager {
     public void reloadConfig() {
         guisConfig.reloadConfig();
         loadCooldownSettings();
-        
+        openScheduler.loadSettings();
+
         // Clear item stack cache when config is reloaded
         itemStackCache.clear();
         itemStackCacheTimestamps.clear();
+        shopWalletConfigs.clear();
     }
     
     /**
@@ -1296,16 +1481,24 @@ public class ShopGuiManager {
         stats.put("max_cached_item_stacks", maxCachedItemStacks);
         stats.put("cache_cleanup_interval_ms", cacheCleanupInterval);
         stats.put("enable_lazy_loading", enableLazyLoading);
-        
+        stats.putAll(openScheduler.getStats());
+
         return stats;
     }
+
+    /**
+     * Stops the open scheduler and drops any queued opens.
+     */
+    public void shutdown() {
+        openScheduler.shutdown();
+    }
     
     /**
      * Safely get player multiplier with error handling
      */
-    private double getPlayerMultiplierSafely(Player player) {
+    private double getPlayerMultiplierSafely(Player player, TransactionContext context) {
         try {
-            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player);
+            double multiplier = plugin.getMultiplierService().getPlayerMultiplier(player, context.getSourceShopId(), context.getItem().id());
             if (multiplier <= 0 || Double.isNaN(multiplier) || Double.isInfinite(multiplier)) {
                 return 1.0;
             }
@@ -106,9 +106,9 @@ public class ShopListener implements Listener {
                 break;
             case "confirm_transaction":
                 if (context.getType() == TransactionType.BUY) {
-                    transactionService.buyItem(player, context.getItem(), context.getQuantity());
+                    transactionService.buyItem(player, context.getItem(), context.getQuantity(), context.getSourceShopId());
                 } else {
-                    transactionService.sellItem(player, context.getItem(), context.getQuantity());
+                    transactionService.sellItem(player, context.getItem(), context.getQuantity(), context.getSourceShopId());
                 }
                 // Clear transaction context after completing the transaction
                 shopGuiManager.clearTransactionContext(player);
@@ -258,6 +258,11 @@ public class ShopListener implements Listener {
         if (event.getInventory().getHolder() instanceof BShopGUIHolder && event.getPlayer() instanceof Player) {
             Player player = (Player) event.getPlayer();
             
+            // Closing the loading screen withdraws the queued shop open
+            if (event.getInventory().getHolder() instanceof ShopLoadingHolder) {
+                shopGuiManager.cancelPendingOpen(player);
+            }
+
             // Always clear the shop page info immediately
             shopGuiManager.onGuiClose(player);
             
@@ -275,6 +280,7 @@ public class ShopListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         shopGuiManager.onGuiClose(event.getPlayer());
         shopGuiManager.clearTransactionContext(event.getPlayer());
+        shopGuiManager.cancelPendingOpen(event.getPlayer());
     }
 
     // Helper to get a field by reflection (for action field)
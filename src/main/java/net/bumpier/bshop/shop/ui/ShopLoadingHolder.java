@@ -0,0 +1,7 @@
+package net.bumpier.bshop.shop.ui;
+
+/**
+ * Marks the placeholder inventory shown while a shop open is waiting in the open queue.
+ */
+public class ShopLoadingHolder extends BShopGUIHolder {
+}
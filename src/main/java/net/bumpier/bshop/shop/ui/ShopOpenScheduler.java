@@ -0,0 +1,205 @@
+package net.bumpier.bshop.shop.ui;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads shop GUI opens across ticks so a burst of /shop commands cannot stall the main thread.
+ * Every tick gets a fixed time budget for building shop inventories. Requests that arrive once the
+ * budget is spent wait in a first-come, first-served queue (one entry per player) and are served on
+ * the following ticks while the player looks at a loading screen.
+ * <p>
+ * All queue access happens on the main thread; only the counters are read from other threads.
+ */
+public class ShopOpenScheduler {
+
+    private final BShop plugin;
+    private final ShopGuiManager guiManager;
+
+    // Insertion order is the service order; re-requests keep their place and only update the target
+    private final LinkedHashMap<UUID, PendingOpen> queue = new LinkedHashMap<>();
+    private BukkitTask task;
+    private long tickSpentNanos;
+
+    // Configuration (loaded from performance.gui)
+    private boolean enabled = true;
+    private long tickBudgetNanos = 5_000_000L; // 5ms of GUI building per tick
+    private int maxQueuedOpens = 500;
+
+    // Metrics
+    private volatile int queueDepth;
+    private volatile int peakQueueDepth;
+    private final AtomicLong immediateOpens = new AtomicLong(0);
+    private final AtomicLong queuedOpens = new AtomicLong(0);
+    private final AtomicLong coalescedOpens = new AtomicLong(0);
+    private final AtomicLong droppedOpens = new AtomicLong(0);
+    private final AtomicLong servedFromQueue = new AtomicLong(0);
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong(0);
+
+    public ShopOpenScheduler(BShop plugin, ShopGuiManager guiManager) {
+        this.plugin = plugin;
+        this.guiManager = guiManager;
+        loadSettings();
+    }
+
+    public void loadSettings() {
+        ConfigurationSection guiConfig = plugin.getConfig().getConfigurationSection("performance.gui");
+        if (guiConfig != null) {
+            this.enabled = guiConfig.getBoolean("enable_open_scheduler", true);
+            this.tickBudgetNanos = Math.max(1L, guiConfig.getLong("open_budget_per_tick_ms", 5)) * 1_000_000L;
+            this.maxQueuedOpens = Math.max(1, guiConfig.getInt("max_queued_opens", 500));
+        }
+    }
+
+    public void start() {
+        if (task != null) {
+            return;
+        }
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                drainQueue();
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        queue.clear();
+        queueDepth = 0;
+    }
+
+    /**
+     * Opens the shop now if this tick still has budget, otherwise queues the request.
+     *
+     * @param throttled true when the player re-opened within the GUI update cooldown; the request is
+     *                  deferred to the next tick instead of being dropped, and no loading screen is shown
+     */
+    public void request(Player player, String shopId, int page, boolean throttled) {
+        if (!enabled) {
+            if (!throttled) {
+                guiManager.renderShop(player, shopId, page);
+            }
+            return;
+        }
+
+        UUID playerId = player.getUniqueId();
+        PendingOpen pending = queue.get(playerId);
+        if (pending != null) {
+            // Keep the player's place in line but open whatever they asked for last
+            queue.put(playerId, new PendingOpen(shopId, page, pending.enqueuedAt()));
+            coalescedOpens.incrementAndGet();
+            return;
+        }
+
+        if (!throttled && queue.isEmpty() && tickSpentNanos < tickBudgetNanos) {
+            immediateOpens.incrementAndGet();
+            runOpen(player, shopId, page);
+            return;
+        }
+
+        if (queue.size() >= maxQueuedOpens) {
+            droppedOpens.incrementAndGet();
+            plugin.getMessageService().send(player, "gui.open_queue_full");
+            return;
+        }
+
+        queue.put(playerId, new PendingOpen(shopId, page, System.nanoTime()));
+        queuedOpens.incrementAndGet();
+        updateQueueDepth();
+        if (!throttled) {
+            guiManager.openLoadingScreen(player, shopId);
+        }
+    }
+
+    /**
+     * Drops a queued open, e.g. when the player closes the loading screen or leaves.
+     */
+    public void cancel(Player player) {
+        if (queue.remove(player.getUniqueId()) != null) {
+            updateQueueDepth();
+        }
+    }
+
+    private void drainQueue() {
+        tickSpentNanos = 0;
+        int served = 0;
+        // Always serve at least one request so a single expensive shop cannot starve the queue
+        while (!queue.isEmpty() && (served == 0 || tickSpentNanos < tickBudgetNanos)) {
+            Iterator<Map.Entry<UUID, PendingOpen>> iterator = queue.entrySet().iterator();
+            Map.Entry<UUID, PendingOpen> next = iterator.next();
+            iterator.remove();
+            updateQueueDepth();
+
+            Player player = Bukkit.getPlayer(next.getKey());
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+
+            PendingOpen pending = next.getValue();
+            long waited = System.nanoTime() - pending.enqueuedAt();
+            totalQueueWaitNanos.addAndGet(waited);
+            maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+            servedFromQueue.incrementAndGet();
+
+            runOpen(player, pending.shopId(), pending.page());
+            served++;
+        }
+    }
+
+    private void runOpen(Player player, String shopId, int page) {
+        long start = System.nanoTime();
+        try {
+            guiManager.renderShop(player, shopId, page);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error opening shop " + shopId + " for player " + player.getName() + ": " + e.getMessage());
+        } finally {
+            tickSpentNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void updateQueueDepth() {
+        int depth = queue.size();
+        queueDepth = depth;
+        if (depth > peakQueueDepth) {
+            peakQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Get open scheduler statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long served = servedFromQueue.get();
+        stats.put("open_queue_depth", queueDepth);
+        stats.put("open_queue_peak_depth", peakQueueDepth);
+        stats.put("open_queue_max_size", maxQueuedOpens);
+        stats.put("open_budget_per_tick_ms", tickBudgetNanos / 1_000_000L);
+        stats.put("immediate_opens", immediateOpens.get());
+        stats.put("queued_opens", queuedOpens.get());
+        stats.put("coalesced_opens", coalescedOpens.get());
+        stats.put("dropped_opens", droppedOpens.get());
+        stats.put("served_from_queue", served);
+        stats.put("average_queue_wait_ms", served > 0 ? (double) totalQueueWaitNanos.get() / served / 1_000_000.0 : 0.0);
+        stats.put("max_queue_wait_ms", maxQueueWaitNanos.get() / 1_000_000L);
+        return stats;
+    }
+
+    private record PendingOpen(String shopId, int page, long enqueuedAt) {}
+}
@@ -0,0 +1,36 @@
+package net.bumpier.bshop.util;
+
+/**
+ * A server-wide sell multiplier that applies to every player between {@code startsAt} and {@code endsAt},
+ * either globally, to one shop or to one item of a shop. Like temporary multipliers, the value is added
+ * to each player's multiplier.
+ *
+ * @param shopId null for a global event
+ * @param itemId null unless the event is scoped to one item of {@code shopId}
+ * @param endsAt {@link Long#MAX_VALUE} for an event that never ends
+ */
+public record EventMultiplier(String id, double multiplier, String shopId, String itemId,
+                              long startsAt, long endsAt, String reason, String createdBy) {
+
+    public boolean isActiveAt(long now) {
+        return now >= startsAt && now < endsAt;
+    }
+
+    public boolean hasEndedAt(long now) {
+        return now >= endsAt;
+    }
+
+    public boolean isGlobal() {
+        return shopId == null;
+    }
+
+    /**
+     * The scope in the form accepted by commands: {@code global}, {@code <shop>} or {@code <shop>:<item>}.
+     */
+    public String scope() {
+        if (shopId == null) {
+            return "global";
+        }
+        return itemId == null ? shopId : shopId + ":" + itemId;
+    }
+}
@@ -0,0 +1,104 @@
+package net.bumpier.bshop.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The combined bonus of the event multipliers active between two event boundaries (a start or an end).
+ * Pricing adds one field for global events plus at most two map lookups for scoped ones; nothing is
+ * stored per player. A new table with a higher version is built when the clock passes
+ * {@code validUntil} or the set of events changes.
+ */
+final class EventMultiplierTable {
+
+    static final EventMultiplierTable EMPTY = new EventMultiplierTable(0, Long.MIN_VALUE, Long.MAX_VALUE, 0.0,
+            Collections.emptyMap(), Collections.emptyMap(), 0);
+
+    private final long version;
+    private final long validFrom;
+    private final long validUntil;
+    private final double globalBonus;
+    // Keyed by lowercase shop id, and by "shop:item" in lowercase
+    private final Map<String, Double> shopBonus;
+    private final Map<String, Double> itemBonus;
+    private final int activeCount;
+
+    private EventMultiplierTable(long version, long validFrom, long validUntil, double globalBonus,
+                                 Map<String, Double> shopBonus, Map<String, Double> itemBonus, int activeCount) {
+        this.version = version;
+        this.validFrom = validFrom;
+        this.validUntil = validUntil;
+        this.globalBonus = globalBonus;
+        this.shopBonus = shopBonus;
+        this.itemBonus = itemBonus;
+        this.activeCount = activeCount;
+    }
+
+    /**
+     * Combines the events active at {@code now}; the table stays valid until the next event starts or ends.
+     */
+    static EventMultiplierTable build(Collection<EventMultiplier> events, long now, long version) {
+        double global = 0.0;
+        Map<String, Double> shops = new HashMap<>();
+        Map<String, Double> items = new HashMap<>();
+        long until = Long.MAX_VALUE;
+        int active = 0;
+        for (EventMultiplier event : events) {
+            if (event.hasEndedAt(now)) {
+                continue;
+            }
+            if (!event.isActiveAt(now)) {
+                until = Math.min(until, event.startsAt());
+                continue;
+            }
+            until = Math.min(until, event.endsAt());
+            active++;
+            if (event.isGlobal()) {
+                global += event.multiplier();
+            } else if (event.itemId() == null) {
+                shops.merge(event.shopId().toLowerCase(), event.multiplier(), Double::sum);
+            } else {
+                items.merge(itemKey(event.shopId(), event.itemId()), event.multiplier(), Double::sum);
+            }
+        }
+        return new EventMultiplierTable(version, now, until, global, Map.copyOf(shops), Map.copyOf(items), active);
+    }
+
+    private static String itemKey(String shopId, String itemId) {
+        return shopId.toLowerCase() + ":" + itemId.toLowerCase();
+    }
+
+    boolean isCurrentAt(long now) {
+        return now >= validFrom && now < validUntil;
+    }
+
+    /**
+     * Bonus added to a player's multiplier for an item; null ids only get the global bonus.
+     */
+    double bonus(String shopId, String itemId) {
+        double total = globalBonus;
+        if (shopId != null) {
+            if (!shopBonus.isEmpty()) {
+                total += shopBonus.getOrDefault(shopId.toLowerCase(), 0.0);
+            }
+            if (itemId != null && !itemBonus.isEmpty()) {
+                total += itemBonus.getOrDefault(itemKey(shopId, itemId), 0.0);
+            }
+        }
+        return total;
+    }
+
+    long version() {
+        return version;
+    }
+
+    long validUntil() {
+        return validUntil;
+    }
+
+    int activeCount() {
+        return activeCount;
+    }
+}
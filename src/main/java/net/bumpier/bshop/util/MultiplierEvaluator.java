@@ -0,0 +1,193 @@
+package net.bumpier.bshop.util;
+
+import org.bukkit.permissions.Permissible;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tier, legacy and scoped rule multipliers compiled into flat arrays. A player is reduced to a bitset of
+ * the multiplier permissions they hold (their fingerprint); the permanent multipliers are computed once
+ * per fingerprint, so every player of the same rank shares one value.
+ * <p>
+ * Shops and items named by scoped rules are numbered once at compile time. Scope 0 is everything no rule
+ * names. The permanent multipliers of a fingerprint form a vector indexed by scope, so pricing an item
+ * is a scope lookup, which does not depend on the player, followed by an array read.
+ * <p>
+ * Instances are immutable apart from the memo and are replaced as a whole when the configuration is
+ * reloaded, which also discards every memoized value.
+ */
+final class MultiplierEvaluator {
+
+    static final MultiplierEvaluator EMPTY = new MultiplierEvaluator(Collections.emptyList(), Collections.emptyMap(), Collections.emptyList());
+
+    private final String[] permissions;
+    private final double[] bonuses;
+    private final String[] labels;
+    // Scopes each entry applies to; null for tiers and legacy multipliers, which apply everywhere
+    private final int[][] entryScopes;
+    // Scope index by lowercase shop id and by "shop:item"
+    private final Map<String, Integer> scopeIndex;
+    private final int scopeCount;
+    private final Map<BitSet, Permanent> permanentByFingerprint = new ConcurrentHashMap<>();
+
+    MultiplierEvaluator(Collection<MultiplierService.MultiplierTier> tiers, Map<String, Double> legacyMultipliers,
+                        Collection<MultiplierService.MultiplierRule> rules) {
+        int n = tiers.size() + legacyMultipliers.size() + rules.size();
+        this.permissions = new String[n];
+        this.bonuses = new double[n];
+        this.labels = new String[n];
+        this.entryScopes = new int[n][];
+        int i = 0;
+        for (MultiplierService.MultiplierTier tier : tiers) {
+            permissions[i] = tier.getPermission();
+            bonuses[i] = tier.getMultiplier();
+            labels[i] = "Tier " + tier.getName();
+            i++;
+        }
+        for (Map.Entry<String, Double> entry : legacyMultipliers.entrySet()) {
+            permissions[i] = entry.getKey();
+            bonuses[i] = entry.getValue();
+            labels[i] = "Legacy " + entry.getKey();
+            i++;
+        }
+
+        // Number every shop first so item scopes can inherit the rules of their shop
+        Map<String, Integer> scopes = new HashMap<>();
+        for (MultiplierService.MultiplierRule rule : rules) {
+            for (String shop : rule.getShops()) {
+                scopes.putIfAbsent(shop, scopes.size() + 1);
+            }
+            for (String item : rule.getItems()) {
+                scopes.putIfAbsent(item.substring(0, item.indexOf(':')), scopes.size() + 1);
+            }
+        }
+        for (MultiplierService.MultiplierRule rule : rules) {
+            for (String item : rule.getItems()) {
+                scopes.putIfAbsent(item, scopes.size() + 1);
+            }
+        }
+        this.scopeIndex = Map.copyOf(scopes);
+        this.scopeCount = scopes.size() + 1;
+
+        for (MultiplierService.MultiplierRule rule : rules) {
+            Set<Integer> applies = new LinkedHashSet<>();
+            for (Map.Entry<String, Integer> scope : scopes.entrySet()) {
+                String key = scope.getKey();
+                int colon = key.indexOf(':');
+                String shop = colon < 0 ? key : key.substring(0, colon);
+                if (rule.getShops().contains(shop) || (colon >= 0 && rule.getItems().contains(key))) {
+                    applies.add(scope.getValue());
+                }
+            }
+            permissions[i] = rule.getPermission();
+            bonuses[i] = rule.getMultiplier();
+            labels[i] = "Rule " + rule.getId();
+            entryScopes[i] = applies.stream().mapToInt(Integer::intValue).toArray();
+            i++;
+        }
+    }
+
+    /**
+     * Which compiled permissions the player holds. One permission check per compiled entry.
+     */
+    BitSet fingerprint(Permissible permissible) {
+        BitSet held = new BitSet(permissions.length);
+        for (int i = 0; i < permissions.length; i++) {
+            if (permissible.hasPermission(permissions[i])) {
+                held.set(i);
+            }
+        }
+        return held;
+    }
+
+    /**
+     * The permanent (uncapped) multipliers for a fingerprint, starting from the base 1.0.
+     */
+    Permanent permanent(BitSet fingerprint) {
+        return permanentByFingerprint.computeIfAbsent(fingerprint, this::compute);
+    }
+
+    private Permanent compute(BitSet fingerprint) {
+        double total = 1.0;
+        double[] byScope = new double[scopeCount];
+        Set<String> held = new LinkedHashSet<>();
+        for (int i = fingerprint.nextSetBit(0); i >= 0; i = fingerprint.nextSetBit(i + 1)) {
+            if (entryScopes[i] == null) {
+                total += bonuses[i];
+            } else {
+                for (int scope : entryScopes[i]) {
+                    byScope[scope] += bonuses[i];
+                }
+            }
+            held.add(permissions[i]);
+        }
+        for (int scope = 0; scope < scopeCount; scope++) {
+            byScope[scope] += total;
+        }
+        return new Permanent(total, byScope, Collections.unmodifiableSet(held));
+    }
+
+    /**
+     * Scope of an item: the item's own scope if a rule names it, else its shop's, else 0. Either id may
+     * be null.
+     */
+    int scope(String shopId, String itemId) {
+        if (shopId == null || scopeCount == 1) {
+            return 0;
+        }
+        String shop = shopId.toLowerCase();
+        if (itemId != null) {
+            Integer item = scopeIndex.get(shop + ":" + itemId.toLowerCase());
+            if (item != null) {
+                return item;
+            }
+        }
+        Integer index = scopeIndex.get(shop);
+        return index != null ? index : 0;
+    }
+
+    /**
+     * Step-by-step breakdown of a fingerprint for debug logging.
+     */
+    List<String> describe(BitSet fingerprint) {
+        List<String> steps = new ArrayList<>();
+        double total = 1.0;
+        for (int i = fingerprint.nextSetBit(0); i >= 0; i = fingerprint.nextSetBit(i + 1)) {
+            if (entryScopes[i] != null) {
+                steps.add(String.format("%s: +%.1f in %d scope(s)", labels[i], bonuses[i], entryScopes[i].length));
+                continue;
+            }
+            double before = total;
+            total += bonuses[i];
+            steps.add(String.format("%s: %.1f + %.1f = %.1f", labels[i], before, bonuses[i], total));
+        }
+        return steps;
+    }
+
+    int size() {
+        return permissions.length;
+    }
+
+    int scopeCount() {
+        return scopeCount;
+    }
+
+    int fingerprintCount() {
+        return permanentByFingerprint.size();
+    }
+
+    /**
+     * Permanent multipliers shared by every player with the same fingerprint. {@code byScope[0]} equals
+     * {@code multiplier}.
+     */
+    record Permanent(double multiplier, double[] byScope, Set<String> permissions) {}
+}
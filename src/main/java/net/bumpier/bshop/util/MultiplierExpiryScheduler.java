@@ -0,0 +1,144 @@
+package net.bumpier.bshop.util;
+
+import net.bumpier.bshop.BShop;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Expires temporary multipliers on the tick they run out. Grants wait in a queue ordered by expiry time
+ * and a single delayed task is armed for the head, so scheduling costs O(log n) and nothing scans the
+ * grants of every player.
+ * <p>
+ * Entries are not removed when a grant is removed early; the expiry handler ignores grants that are no
+ * longer active.
+ * <p>
+ * Like {@link net.bumpier.bshop.shop.ShopRotationScheduler}, the task never waits longer than
+ * {@link #MAX_ARM_TICKS} ticks and re-arms from the wall clock, so lag cannot push a grant that lasts days
+ * far past its expiry time.
+ */
+public class MultiplierExpiryScheduler {
+
+    private static final long MILLIS_PER_TICK = 50L;
+    // 60 seconds at 20 TPS
+    private static final long MAX_ARM_TICKS = 1200L;
+
+    private final BShop plugin;
+    // Called on the main thread with (player, grant) when a grant has expired
+    private final BiConsumer<UUID, MultiplierService.TemporaryMultiplierData> expiryHandler;
+
+    private final PriorityQueue<ScheduledExpiry> queue = new PriorityQueue<>(Comparator.comparingLong(ScheduledExpiry::expiresAt));
+    private BukkitTask task;
+    private long taskDueAt = Long.MAX_VALUE;
+
+    // Metrics
+    private final AtomicLong firedExpiries = new AtomicLong(0);
+    private final AtomicLong totalLagMs = new AtomicLong(0);
+
+    public MultiplierExpiryScheduler(BShop plugin, BiConsumer<UUID, MultiplierService.TemporaryMultiplierData> expiryHandler) {
+        this.plugin = plugin;
+        this.expiryHandler = expiryHandler;
+    }
+
+    /**
+     * Schedules the expiry of a grant. Permanent grants (no expiration time) are ignored. Safe to call
+     * from any thread.
+     */
+    public synchronized void schedule(UUID playerUuid, MultiplierService.TemporaryMultiplierData grant) {
+        if (grant.getExpirationTime() <= 0) {
+            return;
+        }
+        queue.add(new ScheduledExpiry(playerUuid, grant, grant.getExpirationTime()));
+        if (grant.getExpirationTime() < taskDueAt) {
+            arm();
+        }
+    }
+
+    /**
+     * Forgets every scheduled expiry, e.g. after all grants were cleared.
+     */
+    public synchronized void clear() {
+        queue.clear();
+        cancelTask();
+    }
+
+    public synchronized void shutdown() {
+        clear();
+    }
+
+    private void fireDue() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            ScheduledExpiry expiry;
+            synchronized (this) {
+                task = null;
+                taskDueAt = Long.MAX_VALUE;
+                expiry = queue.peek();
+                // isExpired() is strict, so wait until the clock has passed the expiry time
+                if (expiry == null || expiry.expiresAt() >= now) {
+                    break;
+                }
+                queue.poll();
+            }
+
+            firedExpiries.incrementAndGet();
+            totalLagMs.addAndGet(now - expiry.expiresAt());
+            try {
+                expiryHandler.accept(expiry.playerUuid(), expiry.grant());
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error expiring multiplier of " + expiry.playerUuid() + ": " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            arm();
+        }
+    }
+
+    /**
+     * Arms a single delayed task for the head of the queue, or for the arm horizon if the head expires
+     * later. Must hold the monitor.
+     */
+    private void arm() {
+        cancelTask();
+        ScheduledExpiry head = queue.peek();
+        if (head == null || !plugin.isEnabled()) {
+            return;
+        }
+        long delayMs = head.expiresAt() + 1 - System.currentTimeMillis();
+        // Round up so the task never runs before the grant has expired; fireDue re-arms if it wakes up early
+        long delayTicks = Math.min(MAX_ARM_TICKS, Math.max(1L, (delayMs + MILLIS_PER_TICK - 1) / MILLIS_PER_TICK));
+        taskDueAt = head.expiresAt();
+        task = Bukkit.getScheduler().runTaskLater(plugin, this::fireDue, delayTicks);
+    }
+
+    private void cancelTask() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        taskDueAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Get expiry scheduler statistics
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long fired = firedExpiries.get();
+        ScheduledExpiry head = queue.peek();
+        stats.put("scheduled_expiries", queue.size());
+        stats.put("expiries_fired", fired);
+        stats.put("next_expiry_in_ms", head != null ? Math.max(0, head.expiresAt() - System.currentTimeMillis()) : -1L);
+        stats.put("average_expiry_lag_ms", fired > 0 ? (double) totalLagMs.get() / fired : 0.0);
+        return stats;
+    }
+
+    private record ScheduledExpiry(UUID playerUuid, MultiplierService.TemporaryMultiplierData grant, long expiresAt) {}
+}
@@ -0,0 +1,37 @@
+package net.bumpier.bshop.util;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps each online player's precomputed multiplier current. Runs at MONITOR priority so permission
+ * plugins have attached their permissions by the time the multiplier is computed.
+ */
+public class MultiplierListener implements Listener {
+
+    private final MultiplierService multiplierService;
+
+    public MultiplierListener(MultiplierService multiplierService) {
+        this.multiplierService = multiplierService;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        multiplierService.handleJoin(event.getPlayer());
+    }
+
+    // Per-world permissions can change the multiplier
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        multiplierService.recalculate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        multiplierService.handleQuit(event.getPlayer().getUniqueId());
+    }
+}
@@ -1,6 +1,8 @@
 package net.bumpier.bshop.util;
 
 import net.bumpier.bshop.BShop;
+import net.bumpier.bshop.database.DatabaseManager;
+import net.bumpier.bshop.database.MultiplierStore;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
@@ -8,28 +10,46 @@ import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.Iterator;
 
 /**
  * Enhanced service for handling tier-based and temporary sell price multipliers
  * with persistence, expiration, events, and performance optimizations
  */
 public class MultiplierService {
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 10;
+    
     private final BShop plugin;
     private final Map<String, MultiplierTier> multiplierTiers = new HashMap<>();
     private final Map<String, Double> legacyPermissionMultipliers = new HashMap<>();
+    private final List<MultiplierRule> multiplierRules = new ArrayList<>();
+    // Tiers and legacy multipliers compiled for evaluation; replaced on every config load
+    private volatile MultiplierEvaluator evaluator = MultiplierEvaluator.EMPTY;
+    // Active grants per player. Lists are immutable and replaced through compute(), so they can be read
+    // from any thread while commands and expiries update them
     private final Map<UUID, List<TemporaryMultiplierData>> temporaryMultipliers = new ConcurrentHashMap<>();
+    private final MultiplierExpiryScheduler expiryScheduler;
+    // Precomputed multiplier of every online player, refreshed on join, world change, grants and expiry
     private final Map<UUID, CachedMultiplier> multiplierCache = new ConcurrentHashMap<>();
+    // Write-behind persistence of temporary multipliers; null when persistence is off
+    private final MultiplierStore multiplierStore;
+    // Server-wide event multipliers by id, from config and from commands. Pricing reads them through
+    // eventTable, which is rebuilt when they change or when one starts or ends
+    private final Map<String, EventMultiplier> eventMultipliers = new ConcurrentHashMap<>();
+    private final Set<String> configEventIds = ConcurrentHashMap.newKeySet();
+    private volatile EventMultiplierTable eventTable = EventMultiplierTable.EMPTY;
+    private final AtomicLong eventVersion = new AtomicLong(0);
     
     // Configuration
     private boolean enabled = false;
     private double maxMultiplier = 10.0;
-    private long cacheExpirationTime = 30000; // 30 seconds
+    private long revalidateInterval = 60000; // 1 minute
     private long cleanupInterval = 60000; // 1 minute
     private String displayFormat = "%multiplier%x";
     private boolean showPercentageBonus = false;
+    private volatile boolean debugLogging = false;
     
     // Add performance monitoring
     private final AtomicLong cacheHits = new AtomicLong(0);
@@ -37,6 +57,8 @@ public class MultiplierService {
     private final AtomicLong totalCalculations = new AtomicLong(0);
     private final AtomicLong cleanupRuns = new AtomicLong(0);
     private final AtomicLong expiredMultipliers = new AtomicLong(0);
+    private final AtomicLong recalculations = new AtomicLong(0);
+    private final AtomicLong revalidationChanges = new AtomicLong(0);
     
     /**
      * Data class for multiplier tiers
@@ -73,10 +95,64 @@ public class MultiplierService {
         }
     }
     
+    /**
+     * A permission multiplier that only applies to some shops or items. Shop ids and "shop:item" keys
+     * are stored in lowercase.
+     */
+    public static class MultiplierRule {
+        private final String id;
+        private final String permission;
+        private final double multiplier;
+        private final Set<String> shops;
+        private final Set<String> items;
+        
+        public MultiplierRule(String id, String permission, double multiplier, Set<String> shops, Set<String> items) {
+            this.id = id;
+            this.permission = permission;
+            this.multiplier = multiplier;
+            this.shops = Set.copyOf(shops);
+            this.items = Set.copyOf(items);
+        }
+        
+        public String getId() { return id; }
+        public String getPermission() { return permission; }
+        public double getMultiplier() { return multiplier; }
+        public Set<String> getShops() { return shops; }
+        public Set<String> getItems() { return items; }
+    }
+    
     public MultiplierService(BShop plugin) {
         this.plugin = plugin;
+        this.multiplierStore = createStore();
+        this.expiryScheduler = new MultiplierExpiryScheduler(plugin, this::expireGrant);
+        if (multiplierStore != null) {
+            for (EventMultiplier event : multiplierStore.loadEvents()) {
+                eventMultipliers.put(event.id(), event);
+            }
+        }
         loadMultipliers();
         startCleanupTask();
+        startRevalidationTask();
+        plugin.getServer().getPluginManager().registerEvents(new MultiplierListener(this), plugin);
+        if (multiplierStore != null) {
+            multiplierStore.pruneExpired(System.currentTimeMillis());
+            // Players already online after a reload, loaded in one query
+            List<UUID> online = new ArrayList<>();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                online.add(player.getUniqueId());
+            }
+            loadPlayers(online);
+        }
+    }
+    
+    private MultiplierStore createStore() {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        if (!plugin.getConfig().getBoolean("multipliers.persist", true) || databaseManager == null || databaseManager.getDatabase() == null) {
+            return null;
+        }
+        MultiplierStore store = new MultiplierStore(plugin, databaseManager.getDatabase(),
+                plugin.getConfig().getLong("multipliers.persist_batch_delay_ms", 250));
+        return store.isAvailable() ? store : null;
     }
     
     /**
@@ -90,11 +166,15 @@ public class MultiplierService {
         private final long grantedAt;
         
         public TemporaryMultiplierData(double multiplier, long expirationTime, String reason, String grantedBy) {
+            this(multiplier, expirationTime, reason, grantedBy, System.currentTimeMillis());
+        }
+        
+        public TemporaryMultiplierData(double multiplier, long expirationTime, String reason, String grantedBy, long grantedAt) {
             this.multiplier = multiplier;
             this.expirationTime = expirationTime;
             this.reason = reason != null ? reason : "No reason provided";
             this.grantedBy = grantedBy != null ? grantedBy : "Console";
-            this.grantedAt = System.currentTimeMillis();
+            this.grantedAt = grantedAt;
         }
         
         // Getters
@@ -133,28 +213,54 @@ public class MultiplierService {
     }
     
     /**
-     * Cache entry for performance optimization
+     * Precomputed multiplier of a player. It stays valid until permissions change (which triggers a
+     * recalculation) or until the earliest of its temporary multipliers expires.
      */
     public static class CachedMultiplier {
         private final double multiplier;
+        // Multiplier per rule scope of the evaluator it was computed with; index 0 equals multiplier
+        private final double[] scopedMultipliers;
+        private final MultiplierEvaluator compiledBy;
         private final long lastCalculated;
+        private final long validUntil;
         private final Set<String> activePermissions;
         private final UUID playerId;
         
-        public CachedMultiplier(double multiplier, Set<String> activePermissions, UUID playerId) {
-            this.multiplier = multiplier;
+        public CachedMultiplier(double multiplier, Set<String> activePermissions, UUID playerId, long validUntil) {
+            this(new double[] {multiplier}, null, activePermissions, playerId, validUntil);
+        }
+        
+        CachedMultiplier(double[] scopedMultipliers, MultiplierEvaluator compiledBy, Set<String> activePermissions,
+                         UUID playerId, long validUntil) {
+            this.multiplier = scopedMultipliers[0];
+            this.scopedMultipliers = scopedMultipliers;
+            this.compiledBy = compiledBy;
             this.lastCalculated = System.currentTimeMillis();
-            this.activePermissions = new HashSet<>(activePermissions);
+            this.validUntil = validUntil;
+            // Shared by every player with the same permissions, so it is never copied
+            this.activePermissions = Collections.unmodifiableSet(activePermissions);
             this.playerId = playerId;
         }
         
         public double getMultiplier() { return multiplier; }
+        
+        /**
+         * The multiplier for an item, read from the precomputed scope vector. Either id may be null.
+         */
+        public double getMultiplier(String shopId, String itemId) {
+            return compiledBy == null ? multiplier : scopedMultipliers[compiledBy.scope(shopId, itemId)];
+        }
+        
+        boolean hasSameValues(CachedMultiplier other) {
+            return validUntil == other.validUntil && Arrays.equals(scopedMultipliers, other.scopedMultipliers);
+        }
         public long getLastCalculated() { return lastCalculated; }
+        public long getValidUntil() { return validUntil; }
         public Set<String> getActivePermissions() { return activePermissions; }
         public UUID getPlayerId() { return playerId; }
         
-        public boolean isValid(long cacheExpirationTime) {
-            return System.currentTimeMillis() - lastCalculated < cacheExpirationTime;
+        public boolean isValidAt(long now) {
+            return now < validUntil;
         }
     }
     
@@ -164,6 +270,7 @@ public class MultiplierService {
     public void loadMultipliers() {
         multiplierTiers.clear();
         legacyPermissionMultipliers.clear();
+        multiplierRules.clear();
         ConfigurationSection config = plugin.getConfig().getConfigurationSection("multipliers");
         
         if (config == null) {
@@ -175,17 +282,9 @@ public class MultiplierService {
         // Load basic settings first
         enabled = config.getBoolean("enabled", false);
         maxMultiplier = config.getDouble("max_multiplier", 10.0);
-        cacheExpirationTime = config.getLong("cache_expiration_ms", 30000);
         cleanupInterval = config.getLong("cleanup_interval_ms", 60000);
-        
-        // Load cache duration from performance.caching section
-        ConfigurationSection cachingConfig = plugin.getConfig().getConfigurationSection("performance.caching");
-        if (cachingConfig != null) {
-            long multiplierCacheDuration = cachingConfig.getLong("multiplier_cache_duration", 30000);
-            if (multiplierCacheDuration > 0) {
-                cacheExpirationTime = multiplierCacheDuration;
-            }
-        }
+        debugLogging = config.getBoolean("debug_logging", false);
+        revalidateInterval = config.getLong("revalidate_interval_ms", 60000);
         
         // Load display settings
         ConfigurationSection displayConfig = config.getConfigurationSection("display");
@@ -194,6 +293,9 @@ public class MultiplierService {
             showPercentageBonus = displayConfig.getBoolean("show_percentage_bonus", false);
         }
         
+        // Drop values computed from the old configuration
+        evaluator = MultiplierEvaluator.EMPTY;
+        multiplierCache.clear();
         if (!enabled) {
             return;
         }
@@ -204,8 +306,92 @@ public class MultiplierService {
         // Load legacy permission multipliers for backward compatibility
         loadLegacyPermissionMultipliers(config);
         
-        // Clear cache when configuration changes
-        multiplierCache.clear();
+        loadMultiplierRules(config);
+        
+        loadConfigEvents(config);
+        
+        evaluator = new MultiplierEvaluator(multiplierTiers.values(), legacyPermissionMultipliers, multiplierRules);
+        refreshOnlinePlayers();
+    }
+    
+    /**
+     * Load permission multipliers scoped to shops or items from {@code multipliers.rules}
+     */
+    private void loadMultiplierRules(ConfigurationSection config) {
+        ConfigurationSection rulesSection = config.getConfigurationSection("rules");
+        if (rulesSection == null) {
+            return;
+        }
+        
+        for (String id : rulesSection.getKeys(false)) {
+            ConfigurationSection section = rulesSection.getConfigurationSection(id);
+            if (section == null) {
+                plugin.getLogger().warning("Invalid multiplier rule: " + id + " (not a section)");
+                continue;
+            }
+            String permission = section.getString("permission");
+            double multiplier = section.getDouble("multiplier", 0.0);
+            if (permission == null || permission.isEmpty() || multiplier < 0) {
+                plugin.getLogger().warning("Invalid multiplier rule: " + id + " (needs a permission and a multiplier >= 0, skipping)");
+                continue;
+            }
+            Set<String> shops = new HashSet<>();
+            for (String shop : section.getStringList("shops")) {
+                shops.add(shop.toLowerCase());
+            }
+            Set<String> items = new HashSet<>();
+            for (String item : section.getStringList("items")) {
+                if (item.indexOf(':') <= 0) {
+                    plugin.getLogger().warning("Invalid item in multiplier rule " + id + ": " + item + " (expected shop:item, skipping)");
+                    continue;
+                }
+                items.add(item.toLowerCase());
+            }
+            if (shops.isEmpty() && items.isEmpty()) {
+                plugin.getLogger().warning("Multiplier rule " + id + " names no shops or items (use a tier for multipliers that apply everywhere, skipping)");
+                continue;
+            }
+            multiplierRules.add(new MultiplierRule(id, permission, multiplier, shops, items));
+        }
+    }
+    
+    /**
+     * Replaces the event multipliers defined under {@code multipliers.events}. Events started by command
+     * are kept.
+     */
+    private void loadConfigEvents(ConfigurationSection config) {
+        configEventIds.forEach(eventMultipliers::remove);
+        configEventIds.clear();
+        ConfigurationSection eventsSection = config.getConfigurationSection("events");
+        if (eventsSection != null) {
+            java.time.format.DateTimeFormatter format = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+            java.time.ZoneId zone = java.time.ZoneId.systemDefault();
+            for (String id : eventsSection.getKeys(false)) {
+                ConfigurationSection section = eventsSection.getConfigurationSection(id);
+                if (section == null) {
+                    continue;
+                }
+                try {
+                    double multiplier = section.getDouble("multiplier", 0.0);
+                    if (multiplier <= 0) {
+                        plugin.getLogger().warning("Invalid event multiplier: " + id + " = " + multiplier + " (skipping)");
+                        continue;
+                    }
+                    String start = section.getString("start");
+                    String end = section.getString("end");
+                    long startsAt = start != null ? java.time.LocalDateTime.parse(start, format).atZone(zone).toInstant().toEpochMilli() : 0L;
+                    long endsAt = end != null ? java.time.LocalDateTime.parse(end, format).atZone(zone).toInstant().toEpochMilli() : Long.MAX_VALUE;
+                    String shopId = section.getString("shop");
+                    String itemId = shopId != null ? section.getString("item") : null;
+                    eventMultipliers.put(id, new EventMultiplier(id, multiplier, shopId, itemId, startsAt, endsAt,
+                            section.getString("reason", id), "config"));
+                    configEventIds.add(id);
+                } catch (java.time.format.DateTimeParseException e) {
+                    plugin.getLogger().warning("Invalid start or end time for event multiplier " + id + " (expected yyyy-MM-dd HH:mm, skipping)");
+                }
+            }
+        }
+        rebuildEventTable(true);
     }
     
     /**
@@ -220,10 +406,10 @@ public class MultiplierService {
                 return false;
             }
             
-            // Check cache expiration
-            long cacheExpiration = config.getLong("cache_expiration_ms", 30000);
-            if (cacheExpiration < 1000 || cacheExpiration > 300000) {
-                plugin.getLogger().warning("Invalid cache_expiration_ms value: " + cacheExpiration + " (must be 1000-300000)");
+            // Check revalidation interval
+            long revalidate = config.getLong("revalidate_interval_ms", 60000);
+            if (revalidate < 1000 || revalidate > 3600000) {
+                plugin.getLogger().warning("Invalid revalidate_interval_ms value: " + revalidate + " (must be 1000-3600000)");
                 return false;
             }
             
@@ -351,14 +537,17 @@ public class MultiplierService {
     }
     
     /**
-     * Start cleanup task for expired multipliers
+     * Start the task that deletes expired grants from the database. Grants in memory are expired by the
+     * expiry scheduler at their exact expiration time.
      */
     private void startCleanupTask() {
         new BukkitRunnable() {
             @Override
             public void run() {
                 try {
-                    cleanupExpiredMultipliers();
+                    if (multiplierStore != null) {
+                        multiplierStore.pruneExpired(System.currentTimeMillis());
+                    }
                     cleanupRuns.incrementAndGet();
                 } catch (Exception e) {
                     plugin.getLogger().log(Level.WARNING, "Error during multiplier cleanup", e);
@@ -368,156 +557,403 @@ public class MultiplierService {
     }
     
     /**
-     * Clean up expired multipliers
+     * Safety net for permission changes that fire no event (e.g. a rank bought through another plugin).
+     * Recomputes every online player off the main thread and only publishes values that changed.
      */
-    public void cleanupExpiredMultipliers() {
-        List<UUID> playersToCheck = new ArrayList<>();
-        int cleaned = 0;
-        
-        try {
-            for (Map.Entry<UUID, List<TemporaryMultiplierData>> entry : temporaryMultipliers.entrySet()) {
-                List<TemporaryMultiplierData> multipliers = entry.getValue();
-                List<TemporaryMultiplierData> expiredMultipliers = new ArrayList<>();
-                
-                // Find expired multipliers
-                for (TemporaryMultiplierData data : multipliers) {
-                    if (data.isExpired()) {
-                        expiredMultipliers.add(data);
-                        cleaned++;
-                    }
-                }
-                
-                // Remove expired multipliers
-                multipliers.removeAll(expiredMultipliers);
-                
-                // If no multipliers left, remove the player entry
-                if (multipliers.isEmpty()) {
-                    playersToCheck.add(entry.getKey());
+    private void startRevalidationTask() {
+        long ticks = Math.max(20L, revalidateInterval / 50);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (!enabled) {
+                    return;
                 }
-                
-                // Notify player for each expired multiplier
-                Player player = Bukkit.getPlayer(entry.getKey());
-                if (player != null && player.isOnline()) {
-                    for (TemporaryMultiplierData expiredData : expiredMultipliers) {
-                        notifyMultiplierExpired(player, expiredData);
+                for (Player player : Bukkit.getOnlinePlayers()) {
+                    try {
+                        UUID playerId = player.getUniqueId();
+                        CachedMultiplier current = multiplierCache.get(playerId);
+                        CachedMultiplier fresh = calculate(player);
+                        if (current == null || !current.hasSameValues(fresh)) {
+                            // Lose the race against an event-driven recalculation rather than overwrite it
+                            boolean published = current == null
+                                    ? multiplierCache.putIfAbsent(playerId, fresh) == null
+                                    : multiplierCache.replace(playerId, current, fresh);
+                            if (published && current != null) {
+                                revalidationChanges.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        plugin.getLogger().log(Level.WARNING, "Error revalidating multiplier for " + player.getName(), e);
                     }
                 }
             }
-            
-            // Remove players with no multipliers left
-            for (UUID playerUuid : playersToCheck) {
-                temporaryMultipliers.remove(playerUuid);
-                multiplierCache.remove(playerUuid);
+        }.runTaskTimerAsynchronously(plugin, ticks, ticks);
+    }
+    
+    /**
+     * Removes every expired grant now. Expiries normally happen on their own; this is a manual sweep.
+     */
+    public void cleanupExpiredMultipliers() {
+        for (UUID playerUuid : new ArrayList<>(temporaryMultipliers.keySet())) {
+            List<TemporaryMultiplierData> grants = temporaryMultipliers.get(playerUuid);
+            if (grants == null) {
+                continue;
             }
-            
-            // Clean expired cache entries
-            long cutoff = System.currentTimeMillis() - cacheExpirationTime;
-            int cacheCleaned = 0;
-            Iterator<Map.Entry<UUID, CachedMultiplier>> cacheIterator = multiplierCache.entrySet().iterator();
-            while (cacheIterator.hasNext()) {
-                Map.Entry<UUID, CachedMultiplier> entry = cacheIterator.next();
-                if (entry.getValue().getLastCalculated() < cutoff) {
-                    cacheIterator.remove();
-                    cacheCleaned++;
+            for (TemporaryMultiplierData grant : grants) {
+                if (grant.isExpired()) {
+                    runOnMainThread(() -> expireGrant(playerUuid, grant));
                 }
             }
-            
-            if (cleaned > 0 || cacheCleaned > 0) {
-                plugin.getLogger().fine("Multiplier cleanup: removed " + cleaned + " expired multipliers, " + cacheCleaned + " expired cache entries");
+        }
+    }
+    
+    /**
+     * Removes one grant once it has expired, then notifies the player and recomputes their multiplier.
+     * Runs on the main thread. Grants that were already removed are ignored.
+     */
+    private void expireGrant(UUID playerUuid, TemporaryMultiplierData grant) {
+        boolean[] removed = new boolean[1];
+        temporaryMultipliers.computeIfPresent(playerUuid, (uuid, grants) -> {
+            if (!grants.contains(grant)) {
+                return grants;
             }
-            
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.WARNING, "Error during multiplier cleanup", e);
+            removed[0] = true;
+            List<TemporaryMultiplierData> remaining = new ArrayList<>(grants);
+            remaining.remove(grant);
+            return remaining.isEmpty() ? null : List.copyOf(remaining);
+        });
+        if (!removed[0]) {
+            return;
+        }
+        expiredMultipliers.incrementAndGet();
+        if (multiplierStore != null) {
+            multiplierStore.expireGrant(playerUuid, grant);
+        }
+        refreshPlayer(playerUuid);
+        Player player = Bukkit.getPlayer(playerUuid);
+        if (player != null && player.isOnline()) {
+            notifyMultiplierExpired(player, grant);
+        }
+    }
+    
+    private void runOnMainThread(Runnable action) {
+        if (Bukkit.isPrimaryThread()) {
+            action.run();
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, action);
         }
     }
     
     /**
-     * Calculate the total multiplier for a player with caching
+     * Returns the player's precomputed multiplier plus any global event multiplier. Values are refreshed
+     * by events rather than expiring, so this only computes on the calling thread for a player that has
+     * no value yet.
      */
     public double getPlayerMultiplier(Player player) {
+        return getPlayerMultiplier(player, null, null);
+    }
+    
+    /**
+     * Returns the player's multiplier for selling an item of a shop, including event multipliers scoped
+     * to that shop or item. Either id may be null.
+     */
+    public double getPlayerMultiplier(Player player, String shopId, String itemId) {
         if (!enabled) {
             return 1.0;
         }
         
         totalCalculations.incrementAndGet();
-        UUID playerId = player.getUniqueId();
-        CachedMultiplier cached = multiplierCache.get(playerId);
-        
-        // Check if cache is valid
-        if (cached != null && cached.isValid(cacheExpirationTime)) {
+        long now = System.currentTimeMillis();
+        CachedMultiplier cached = multiplierCache.get(player.getUniqueId());
+        if (cached != null && cached.isValidAt(now)) {
             cacheHits.incrementAndGet();
-            return cached.getMultiplier();
+        } else {
+            cacheMisses.incrementAndGet();
+            cached = recalculateCached(player);
+            if (cached == null) {
+                return 1.0;
+            }
         }
+        double multiplier = cached.getMultiplier(shopId, itemId);
         
-        cacheMisses.incrementAndGet();
-        
-        // Calculate new multiplier
-        double totalMultiplier = 1.0;
-        Set<String> activePermissions = new HashSet<>();
-        List<String> debugInfo = new ArrayList<>();
-        
+        double eventBonus = currentEventTable(now).bonus(shopId, itemId);
+        return eventBonus == 0.0 ? multiplier : Math.min(multiplier + eventBonus, maxMultiplier);
+    }
+    
+    private EventMultiplierTable currentEventTable(long now) {
+        EventMultiplierTable table = eventTable;
+        return table.isCurrentAt(now) ? table : rebuildEventTable(false);
+    }
+    
+    /**
+     * Recombines the event multipliers, dropping those that have ended. Called when events change and,
+     * lazily, the first time prices are evaluated after an event starts or ends.
+     */
+    private synchronized EventMultiplierTable rebuildEventTable(boolean changed) {
+        long now = System.currentTimeMillis();
+        EventMultiplierTable current = eventTable;
+        if (!changed && current.isCurrentAt(now)) {
+            return current;
+        }
+        for (EventMultiplier event : new ArrayList<>(eventMultipliers.values())) {
+            if (event.hasEndedAt(now) && eventMultipliers.remove(event.id(), event) && multiplierStore != null
+                    && !configEventIds.contains(event.id())) {
+                multiplierStore.deleteEvent(event);
+            }
+        }
+        EventMultiplierTable rebuilt = EventMultiplierTable.build(eventMultipliers.values(), now, eventVersion.incrementAndGet());
+        eventTable = rebuilt;
+        return rebuilt;
+    }
+    
+    /**
+     * Starts a server-wide event multiplier. {@code shopId} and {@code itemId} narrow its scope; both
+     * null makes it global. A duration of 0 never ends. Returns the event, or null if the multiplier is
+     * not positive.
+     */
+    public synchronized EventMultiplier startEventMultiplier(double multiplier, long startsAt, long durationMs,
+                                                             String shopId, String itemId, String reason, String createdBy) {
+        if (multiplier <= 0) {
+            return null;
+        }
+        int next = eventMultipliers.size() + 1;
+        while (eventMultipliers.containsKey("event-" + next)) {
+            next++;
+        }
+        String id = "event-" + next;
+        EventMultiplier event = new EventMultiplier(id, Math.min(multiplier, maxMultiplier), shopId,
+                shopId != null ? itemId : null, startsAt, durationMs > 0 ? startsAt + durationMs : Long.MAX_VALUE, reason, createdBy);
+        eventMultipliers.put(id, event);
+        if (multiplierStore != null) {
+            multiplierStore.saveEvent(event);
+        }
+        rebuildEventTable(true);
+        plugin.getLogger().info("Started event multiplier " + id + ": +" + event.multiplier() + "x (" + event.scope() + ")");
+        return event;
+    }
+    
+    /**
+     * Ends an event multiplier now. Events defined in config.yml come back on the next reload.
+     */
+    public synchronized boolean stopEventMultiplier(String id) {
+        EventMultiplier event = eventMultipliers.remove(id);
+        if (event == null) {
+            return false;
+        }
+        if (!configEventIds.remove(id) && multiplierStore != null) {
+            multiplierStore.deleteEvent(event);
+        }
+        rebuildEventTable(true);
+        return true;
+    }
+    
+    /**
+     * Event multipliers that are active or scheduled, ordered by start time.
+     */
+    public List<EventMultiplier> getEventMultipliers() {
+        long now = System.currentTimeMillis();
+        List<EventMultiplier> events = new ArrayList<>();
+        for (EventMultiplier event : eventMultipliers.values()) {
+            if (!event.hasEndedAt(now)) {
+                events.add(event);
+            }
+        }
+        events.sort(Comparator.comparingLong(EventMultiplier::startsAt));
+        return events;
+    }
+    
+    /**
+     * Increases whenever the combined event multipliers change, so cached prices can tell they are stale.
+     */
+    public long getEventVersion() {
+        return currentEventTable(System.currentTimeMillis()).version();
+    }
+
+    
+    /**
+     * Recomputes and stores a player's multiplier. Call after anything that may change it, such as a
+     * permission or rank change made outside of bShop.
+     */
+    public double recalculate(Player player) {
+        if (!enabled) {
+            return 1.0;
+        }
+        CachedMultiplier fresh = recalculateCached(player);
+        return fresh != null ? fresh.getMultiplier() : 1.0; // Default multiplier on error
+    }
+    
+    private CachedMultiplier recalculateCached(Player player) {
         try {
-            // Add all tier-based multipliers
-            for (MultiplierTier tier : multiplierTiers.values()) {
-                if (player.hasPermission(tier.getPermission())) {
-                    double beforeTier = totalMultiplier;
-                    totalMultiplier += tier.getMultiplier();
-                    activePermissions.add(tier.getPermission());
-                    debugInfo.add(String.format("Tier %s: %.1f + %.1f = %.1f", 
-                        tier.getName(), beforeTier, tier.getMultiplier(), totalMultiplier));
-                }
+            CachedMultiplier fresh = calculate(player);
+            recalculations.incrementAndGet();
+            if (player.isOnline()) {
+                multiplierCache.put(player.getUniqueId(), fresh);
             }
-            
-            // Add legacy permission multipliers
-            for (Map.Entry<String, Double> entry : legacyPermissionMultipliers.entrySet()) {
-                if (player.hasPermission(entry.getKey())) {
-                    double beforeLegacy = totalMultiplier;
-                    totalMultiplier += entry.getValue();
-                    activePermissions.add(entry.getKey());
-                    debugInfo.add(String.format("Legacy %s: %.1f + %.1f = %.1f", 
-                        entry.getKey(), beforeLegacy, entry.getValue(), totalMultiplier));
+            return fresh;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Error calculating multiplier for " + player.getName(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Recomputes the multiplier of an online player on the main thread, or forgets an offline one.
+     */
+    public void refreshPlayer(UUID playerUuid) {
+        Player player = Bukkit.getPlayer(playerUuid);
+        if (player == null || !player.isOnline()) {
+            multiplierCache.remove(playerUuid);
+        } else if (Bukkit.isPrimaryThread()) {
+            recalculate(player);
+        } else {
+            multiplierCache.remove(playerUuid);
+            if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, () -> refreshPlayer(playerUuid));
+            }
+        }
+    }
+    
+    /**
+     * Forgets the precomputed multiplier of a player, e.g. when they leave.
+     */
+    public void invalidatePlayer(UUID playerUuid) {
+        multiplierCache.remove(playerUuid);
+    }
+    
+    /**
+     * Computes a joining player's multiplier and loads their stored temporary multipliers in the background.
+     */
+    public void handleJoin(Player player) {
+        recalculate(player);
+        if (multiplierStore != null) {
+            loadPlayer(player.getUniqueId());
+        }
+    }
+    
+    /**
+     * Drops a leaving player's state. With persistence on, their temporary multipliers stay in the database
+     * and are loaded again when they next join; ones that expire meanwhile are logged when they are pruned.
+     */
+    public void handleQuit(UUID playerUuid) {
+        multiplierCache.remove(playerUuid);
+        if (multiplierStore != null) {
+            temporaryMultipliers.remove(playerUuid);
+        }
+    }
+    
+    private void loadPlayer(UUID playerUuid) {
+        multiplierStore.loadActive(playerUuid).thenAccept(grants -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> applyLoadedGrants(playerUuid, grants));
+        });
+    }
+    
+    private void loadPlayers(Collection<UUID> playerUuids) {
+        multiplierStore.loadActive(playerUuids).thenAccept(grantsByPlayer -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (UUID playerUuid : playerUuids) {
+                    applyLoadedGrants(playerUuid, grantsByPlayer.getOrDefault(playerUuid, Collections.emptyList()));
                 }
+            });
+        });
+    }
+    
+    private void applyLoadedGrants(UUID playerUuid, List<TemporaryMultiplierData> grants) {
+        Player player = Bukkit.getPlayer(playerUuid);
+        if (player == null || !player.isOnline()) {
+            return;
+        }
+        // The load ran after every queued write, so it already contains grants made before the join
+        if (grants.isEmpty()) {
+            temporaryMultipliers.remove(playerUuid);
+        } else {
+            temporaryMultipliers.put(playerUuid, List.copyOf(grants));
+            grants.forEach(grant -> expiryScheduler.schedule(playerUuid, grant));
+        }
+        recalculate(player);
+    }
+    
+    /**
+     * Writes pending temporary multiplier changes to the database.
+     */
+    public void shutdown() {
+        expiryScheduler.shutdown();
+        if (multiplierStore != null) {
+            multiplierStore.shutdown();
+        }
+    }
+    
+    private void refreshOnlinePlayers() {
+        if (Bukkit.isPrimaryThread()) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                recalculate(player);
             }
-            
-            // Add temporary multipliers
-            List<TemporaryMultiplierData> tempMultipliers = temporaryMultipliers.get(playerId);
-            if (tempMultipliers != null) {
-                for (TemporaryMultiplierData tempData : tempMultipliers) {
-                    if (!tempData.isExpired()) {
-                        double beforeTemp = totalMultiplier;
-                        totalMultiplier += tempData.getMultiplier();
-                        debugInfo.add(String.format("Temporary: %.1f + %.1f = %.1f (reason: %s)", 
-                            beforeTemp, tempData.getMultiplier(), totalMultiplier, tempData.getReason()));
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, this::refreshOnlinePlayers);
+        }
+    }
+    
+    /**
+     * Computes a player's multiplier from their permissions and temporary multipliers. Safe to call off
+     * the main thread; does not touch the cache.
+     */
+    private CachedMultiplier calculate(Player player) {
+        UUID playerId = player.getUniqueId();
+        MultiplierEvaluator compiled = evaluator;
+        BitSet fingerprint = compiled.fingerprint(player);
+        MultiplierEvaluator.Permanent permanent = compiled.permanent(fingerprint);
+        double temporaryTotal = 0.0;
+        long validUntil = Long.MAX_VALUE;
+        
+        // Add temporary multipliers; the result is only valid until the first of them expires
+        List<TemporaryMultiplierData> tempMultipliers = temporaryMultipliers.get(playerId);
+        if (tempMultipliers != null) {
+            for (TemporaryMultiplierData tempData : tempMultipliers) {
+                if (!tempData.isExpired()) {
+                    temporaryTotal += tempData.getMultiplier();
+                    if (tempData.getExpirationTime() > 0) {
+                        validUntil = Math.min(validUntil, tempData.getExpirationTime() + 1);
                     }
                 }
             }
-            
-            // Ensure we don't exceed the maximum multiplier
-            double beforeCap = totalMultiplier;
-            totalMultiplier = Math.min(totalMultiplier, maxMultiplier);
-            if (beforeCap != totalMultiplier) {
-                debugInfo.add(String.format("Capped: %.1f -> %.1f (max: %.1f)", 
-                    beforeCap, totalMultiplier, maxMultiplier));
-            }
-            
-            // Log debug info if debug is enabled
-            if (plugin.getConfig().getBoolean("multipliers.debug_logging", false)) {
-                plugin.getLogger().info("Multiplier calculation for " + player.getName() + ":");
-                for (String info : debugInfo) {
-                    plugin.getLogger().info("  " + info);
+        }
+        
+        // One value per rule scope, each capped at the maximum multiplier
+        double[] permanentByScope = permanent.byScope();
+        double[] scoped = new double[permanentByScope.length];
+        for (int scope = 0; scope < scoped.length; scope++) {
+            scoped[scope] = Math.min(permanentByScope[scope] + temporaryTotal, maxMultiplier);
+        }
+        
+        if (debugLogging) {
+            logCalculation(player, compiled, fingerprint, tempMultipliers, permanent.multiplier() + temporaryTotal, scoped[0]);
+        }
+        
+        return new CachedMultiplier(scoped, compiled, permanent.permissions(), playerId, validUntil);
+    }
+    
+    private void logCalculation(Player player, MultiplierEvaluator compiled, BitSet fingerprint,
+                                List<TemporaryMultiplierData> tempMultipliers, double uncapped, double totalMultiplier) {
+        plugin.getLogger().info("Multiplier calculation for " + player.getName() + ":");
+        for (String step : compiled.describe(fingerprint)) {
+            plugin.getLogger().info("  " + step);
+        }
+        if (tempMultipliers != null) {
+            for (TemporaryMultiplierData tempData : tempMultipliers) {
+                if (!tempData.isExpired()) {
+                    plugin.getLogger().info(String.format("  Temporary: +%.1f (reason: %s)", tempData.getMultiplier(), tempData.getReason()));
                 }
-                plugin.getLogger().info("  Final multiplier: " + totalMultiplier);
             }
-            
-            // Cache the result
-            multiplierCache.put(playerId, new CachedMultiplier(totalMultiplier, activePermissions, playerId));
-            
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.WARNING, "Error calculating multiplier for " + player.getName(), e);
-            return 1.0; // Return default multiplier on error
         }
-        
-        return totalMultiplier;
+        if (uncapped != totalMultiplier) {
+            plugin.getLogger().info(String.format("  Capped: %.1f -> %.1f (max: %.1f)", uncapped, totalMultiplier, maxMultiplier));
+        }
+        plugin.getLogger().info("  Final multiplier: " + totalMultiplier);
     }
     
     /**
@@ -582,9 +1018,24 @@ public class MultiplierService {
         long expirationTime = durationMs > 0 ? System.currentTimeMillis() + durationMs : 0;
         TemporaryMultiplierData data = new TemporaryMultiplierData(multiplier, expirationTime, reason, grantedBy);
         
-        // Get current total multiplier for notification
+        // Add new multiplier to the list, keeping the previous list for the notification
+        List<List<TemporaryMultiplierData>> previous = new ArrayList<>(1);
+        temporaryMultipliers.compute(playerUuid, (uuid, grants) -> {
+            previous.add(grants);
+            List<TemporaryMultiplierData> updated = grants != null ? new ArrayList<>(grants) : new ArrayList<>(1);
+            updated.add(data);
+            return List.copyOf(updated);
+        });
+        expiryScheduler.schedule(playerUuid, data);
+        if (multiplierStore != null) {
+            multiplierStore.saveGrant(playerUuid, data);
+            multiplierStore.logHistory(playerUuid, MultiplierStore.HistoryAction.GRANT, data, grantedBy);
+        }
+        refreshPlayer(playerUuid);
+        
+        // Get previous total multiplier for notification
         double oldTotalMultiplier = 0.0;
-        List<TemporaryMultiplierData> existingMultipliers = temporaryMultipliers.get(playerUuid);
+        List<TemporaryMultiplierData> existingMultipliers = previous.get(0);
         if (existingMultipliers != null) {
             for (TemporaryMultiplierData existing : existingMultipliers) {
                 if (!existing.isExpired()) {
@@ -593,14 +1044,6 @@ public class MultiplierService {
             }
         }
         
-        // Add new multiplier to the list
-        if (existingMultipliers == null) {
-            existingMultipliers = new ArrayList<>();
-        }
-        existingMultipliers.add(data);
-        temporaryMultipliers.put(playerUuid, existingMultipliers);
-        multiplierCache.remove(playerUuid); // Clear cache
-        
         // Calculate new total multiplier
         double newTotalMultiplier = oldTotalMultiplier + multiplier;
         
@@ -620,9 +1063,22 @@ public class MultiplierService {
      * Remove a temporary multiplier with enhanced notifications
      */
     public boolean removeTemporaryMultiplier(UUID playerUuid) {
+        return removeTemporaryMultiplier(playerUuid, "API");
+    }
+    
+    /**
+     * Remove a temporary multiplier, recording who removed it in the multiplier history
+     */
+    public boolean removeTemporaryMultiplier(UUID playerUuid, String removedBy) {
         List<TemporaryMultiplierData> multipliers = temporaryMultipliers.remove(playerUuid);
         if (multipliers != null && !multipliers.isEmpty()) {
-            multiplierCache.remove(playerUuid);
+            if (multiplierStore != null) {
+                multiplierStore.deletePlayer(playerUuid);
+                for (TemporaryMultiplierData oldData : multipliers) {
+                    multiplierStore.logHistory(playerUuid, MultiplierStore.HistoryAction.REMOVE, oldData, removedBy);
+                }
+            }
+            refreshPlayer(playerUuid);
             
             // Enhanced notification with removal details (notify for each multiplier)
             Player player = Bukkit.getPlayer(playerUuid);
@@ -644,20 +1100,29 @@ public class MultiplierService {
      * Expire a temporary multiplier immediately
      */
     public boolean expireTemporaryMultiplier(UUID playerUuid) {
+        return expireTemporaryMultiplier(playerUuid, "API");
+    }
+    
+    /**
+     * Expire a temporary multiplier immediately, recording who expired it in the multiplier history
+     */
+    public boolean expireTemporaryMultiplier(UUID playerUuid, String expiredBy) {
         List<TemporaryMultiplierData> multipliers = temporaryMultipliers.get(playerUuid);
         if (multipliers != null && !multipliers.isEmpty()) {
-            // Set expiration time to now for all multipliers
-            List<TemporaryMultiplierData> expiredMultipliers = new ArrayList<>();
-            for (TemporaryMultiplierData oldData : multipliers) {
-                if (!oldData.isExpired()) {
-                    TemporaryMultiplierData expiredData = new TemporaryMultiplierData(oldData.getMultiplier(), System.currentTimeMillis(), "Expired by admin", "Admin");
-                    expiredMultipliers.add(expiredData);
-                }
-            }
+            long activeCount = multipliers.stream().filter(data -> !data.isExpired()).count();
             
-            if (!expiredMultipliers.isEmpty()) {
-                temporaryMultipliers.put(playerUuid, expiredMultipliers);
-                multiplierCache.remove(playerUuid);
+            if (activeCount > 0) {
+                // Scheduled expiries of these grants become no-ops once the grants are gone
+                temporaryMultipliers.remove(playerUuid);
+                if (multiplierStore != null) {
+                    multiplierStore.deletePlayer(playerUuid);
+                    for (TemporaryMultiplierData oldData : multipliers) {
+                        if (!oldData.isExpired()) {
+                            multiplierStore.logHistory(playerUuid, MultiplierStore.HistoryAction.EXPIRE, oldData, expiredBy);
+                        }
+                    }
+                }
+                refreshPlayer(playerUuid);
                 
                 // Enhanced notification
                 Player player = Bukkit.getPlayer(playerUuid);
@@ -669,7 +1134,7 @@ public class MultiplierService {
                     }
                 }
                 
-                plugin.getLogger().info("Expired " + expiredMultipliers.size() + " temporary multipliers for " + playerUuid);
+                plugin.getLogger().info("Expired " + activeCount + " temporary multipliers for " + playerUuid);
                 return true;
             }
         }
@@ -696,8 +1161,6 @@ public class MultiplierService {
      * Get all temporary multipliers with metadata (returns first multiplier per player for backward compatibility)
      */
     public Map<UUID, TemporaryMultiplierData> getTemporaryMultipliersData() {
-        // Clean expired multipliers first
-        cleanupExpiredMultipliers();
         Map<UUID, TemporaryMultiplierData> result = new HashMap<>();
         
         for (Map.Entry<UUID, List<TemporaryMultiplierData>> entry : temporaryMultipliers.entrySet()) {
@@ -720,10 +1183,22 @@ public class MultiplierService {
      * Clear all temporary multipliers with enhanced notifications
      */
     public void clearTemporaryMultipliers() {
+        clearTemporaryMultipliers("API");
+    }
+    
+    /**
+     * Clear all temporary multipliers, recording who cleared them in the multiplier history
+     */
+    public void clearTemporaryMultipliers(String clearedBy) {
         List<UUID> clearedPlayers = new ArrayList<>(temporaryMultipliers.keySet());
         
         temporaryMultipliers.clear();
+        expiryScheduler.clear();
         multiplierCache.clear();
+        if (multiplierStore != null) {
+            multiplierStore.deleteAll(clearedBy);
+        }
+        refreshOnlinePlayers();
         
         // Enhanced notifications for all affected players
         for (UUID playerUuid : clearedPlayers) {
@@ -805,6 +1280,20 @@ public class MultiplierService {
         stats.put("cache_misses", misses);
         stats.put("total_calculations", total);
         stats.put("cache_hit_rate_percent", hitRate);
+        stats.put("recalculations", recalculations.get());
+        stats.putAll(expiryScheduler.getStats());
+        stats.put("compiled_permissions", evaluator.size());
+        stats.put("multiplier_rule_scopes", evaluator.scopeCount() - 1);
+        if (multiplierStore != null) {
+            stats.put("persisted_writes", multiplierStore.getRowsWritten());
+            stats.put("persisted_batches", multiplierStore.getBatchesWritten());
+            stats.put("pending_writes", multiplierStore.getPendingWrites());
+        }
+        stats.put("permission_fingerprints", evaluator.fingerprintCount());
+        stats.put("revalidation_changes", revalidationChanges.get());
+        EventMultiplierTable events = currentEventTable(System.currentTimeMillis());
+        stats.put("active_event_multipliers", events.activeCount());
+        stats.put("event_multiplier_version", events.version());
         stats.put("cleanup_runs", cleanupRuns.get());
         stats.put("total_expired_cleaned", expiredMultipliers.get());
         
@@ -812,29 +1301,45 @@ public class MultiplierService {
     }
     
     /**
-     * Multiplier history entry
+     * Multiplier history entry. {@code grantedBy} is whoever performed the action (granted, removed,
+     * expired or cleared).
      */
     public static class MultiplierHistoryEntry {
+        public final long id;
+        public final String action;
         public final long timestamp;
         public final double multiplier;
         public final String reason;
         public final String grantedBy;
+        public final long expirationTime;
         
         public MultiplierHistoryEntry(long timestamp, double multiplier, String reason, String grantedBy) {
+            this(0, "GRANT", timestamp, multiplier, reason, grantedBy, 0);
+        }
+        
+        public MultiplierHistoryEntry(long id, String action, long timestamp, double multiplier, String reason,
+                                      String grantedBy, long expirationTime) {
+            this.id = id;
+            this.action = action;
             this.timestamp = timestamp;
             this.multiplier = multiplier;
             this.reason = reason;
             this.grantedBy = grantedBy;
+            this.expirationTime = expirationTime;
         }
     }
     
     /**
-     * Get multiplier history for a player (in-memory only for now)
+     * Get the most recent multiplier history of a player. Blocks until the database answers; prefer
+     * {@link #getMultiplierHistoryPage} off the main thread.
      */
     public List<MultiplierHistoryEntry> getMultiplierHistory(UUID playerUuid) {
-        List<MultiplierHistoryEntry> history = new ArrayList<>();
+        if (multiplierStore != null) {
+            return getMultiplierHistoryPage(playerUuid, null, DEFAULT_HISTORY_PAGE_SIZE).join().entries();
+        }
         
-        // For now, return current multiplier if exists
+        // Without persistence there is no history, only the current multiplier
+        List<MultiplierHistoryEntry> history = new ArrayList<>();
         TemporaryMultiplierData currentData = getTemporaryMultiplierData(playerUuid);
         if (currentData != null) {
             history.add(new MultiplierHistoryEntry(
@@ -848,6 +1353,22 @@ public class MultiplierService {
         return history;
     }
     
+    /**
+     * Loads one page of a player's multiplier history, newest first, in the background.
+     *
+     * @param before the {@code next} cursor of the previous page, or null for the newest entries
+     */
+    public CompletableFuture<MultiplierStore.HistoryPage> getMultiplierHistoryPage(UUID playerUuid, MultiplierStore.HistoryCursor before, int limit) {
+        if (multiplierStore == null) {
+            return CompletableFuture.completedFuture(new MultiplierStore.HistoryPage(getMultiplierHistory(playerUuid), null));
+        }
+        return multiplierStore.loadHistory(playerUuid, before, limit);
+    }
+    
+    public boolean isHistoryAvailable() {
+        return multiplierStore != null;
+    }
+    
     /**
      * Broadcast multiplier event to all players with permission
      */
@@ -1029,13 +1550,13 @@ public class MultiplierService {
         }
         
         // Enable debug logging temporarily for this calculation
-        boolean originalDebug = plugin.getConfig().getBoolean("multipliers.debug_logging", false);
-        plugin.getConfig().set("multipliers.debug_logging", true);
+        boolean originalDebug = debugLogging;
+        debugLogging = true;
         
         double finalMultiplier = getPlayerMultiplier(player);
         
         // Restore original debug setting
-        plugin.getConfig().set("multipliers.debug_logging", originalDebug);
+        debugLogging = originalDebug;
         
         plugin.getLogger().info("Final Multiplier: " + finalMultiplier + "x");
         plugin.getLogger().info("==========================================");
@@ -0,0 +1,87 @@
+package net.bumpier.bshop.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerSketchTest {
+
+    @Test
+    void countsSmallNumbersClosely() {
+        Random random = new Random(3);
+        for (int players : new int[]{0, 1, 5, 50, 200}) {
+            PlayerSketch sketch = new PlayerSketch();
+            for (int i = 0; i < players; i++) {
+                sketch.add(new UUID(random.nextLong(), random.nextLong()));
+            }
+            assertEquals(players, sketch.estimate(), Math.max(1, players * 0.03), "players " + players);
+        }
+    }
+
+    @Test
+    void estimatesLargeNumbersWithinTenPercent() {
+        Random random = new Random(11);
+        PlayerSketch sketch = new PlayerSketch();
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        assertEquals(100_000, sketch.estimate(), 10_000);
+    }
+
+    @Test
+    void repeatedPlayersCountOnce() {
+        PlayerSketch sketch = new PlayerSketch();
+        UUID player = UUID.randomUUID();
+        assertTrue(sketch.add(player));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(sketch.add(player));
+        }
+        assertEquals(1, sketch.estimate());
+    }
+
+    @Test
+    void mergeCountsSharedPlayersOnce() {
+        // Two servers, or two hours, that saw 300 players each, 100 of them on both
+        Random random = new Random(5);
+        PlayerSketch first = new PlayerSketch();
+        PlayerSketch second = new PlayerSketch();
+        for (int i = 0; i < 500; i++) {
+            UUID player = new UUID(random.nextLong(), random.nextLong());
+            if (i < 300) {
+                first.add(player);
+            }
+            if (i >= 200) {
+                second.add(player);
+            }
+        }
+        first.merge(second);
+        assertEquals(500, first.estimate(), 25);
+    }
+
+    @Test
+    void survivesStorageSparseAndDense() {
+        Random random = new Random(9);
+        for (int players : new int[]{0, 10, 5_000}) {
+            PlayerSketch sketch = new PlayerSketch();
+            for (int i = 0; i < players; i++) {
+                sketch.add(new UUID(random.nextLong(), random.nextLong()));
+            }
+            byte[] bytes = sketch.toBytes();
+            assertArrayEquals(bytes, PlayerSketch.fromBytes(bytes).toBytes(), "players " + players);
+            assertEquals(sketch.estimate(), PlayerSketch.fromBytes(bytes).estimate());
+        }
+    }
+
+    @Test
+    void unreadableBytesGiveAnEmptySketch() {
+        assertEquals(0, PlayerSketch.fromBytes(null).estimate());
+        assertEquals(0, PlayerSketch.fromBytes(new byte[]{7, 1, 2}).estimate());
+        assertEquals(0, PlayerSketch.fromBytes(new byte[]{1, 4}).estimate());
+    }
+}
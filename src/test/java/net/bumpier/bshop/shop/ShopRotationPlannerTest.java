@@ -0,0 +1,163 @@
+package net.bumpier.bshop.shop;
+
+import net.bumpier.bshop.shop.model.RarityRule;
+import net.bumpier.bshop.shop.model.Shop;
+import net.bumpier.bshop.shop.model.ShopItem;
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShopRotationPlannerTest {
+
+    private static final int EPOCHS = 2000;
+
+    @Test
+    void sameSaltShopAndEpochGiveSameItems() {
+        // Two planners stand in for two servers that share nothing but the configuration
+        ShopRotationPlanner first = new ShopRotationPlanner(null, "salt");
+        ShopRotationPlanner second = new ShopRotationPlanner(null, "salt");
+        Shop shop = shop("daily", 5, plainItems(30), Map.of());
+        Shop sameDefinition = shop("DAILY", 5, plainItems(30), Map.of());
+
+        for (long epoch = 0; epoch < 200; epoch++) {
+            List<String> expected = ids(first.selectItems(shop, epoch));
+            assertEquals(expected, ids(first.selectItems(shop, epoch)), "repeat of epoch " + epoch);
+            assertEquals(expected, ids(second.selectItems(sameDefinition, epoch)), "other planner, epoch " + epoch);
+        }
+    }
+
+    @Test
+    void saltAndEpochChangeTheItems() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        ShopRotationPlanner otherSalt = new ShopRotationPlanner(null, "other");
+        Shop shop = shop("daily", 5, plainItems(30), Map.of());
+
+        Set<List<String>> perEpoch = new HashSet<>();
+        int sameAsOtherSalt = 0;
+        for (long epoch = 0; epoch < 50; epoch++) {
+            List<String> items = ids(planner.selectItems(shop, epoch));
+            perEpoch.add(items);
+            if (items.equals(ids(otherSalt.selectItems(shop, epoch)))) {
+                sameAsOtherSalt++;
+            }
+        }
+        assertTrue(perEpoch.size() > 45, "epochs should rarely repeat a rotation");
+        assertTrue(sameAsOtherSalt < 5, "a different salt should give different rotations");
+    }
+
+    @Test
+    void fillsEverySlotWithoutRepeats() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        Shop shop = shop("daily", 8, plainItems(10), Map.of());
+
+        for (long epoch = 0; epoch < EPOCHS; epoch++) {
+            List<String> items = ids(planner.selectItems(shop, epoch));
+            assertEquals(8, items.size());
+            assertEquals(8, new HashSet<>(items).size(), "repeated item in epoch " + epoch);
+        }
+    }
+
+    @Test
+    void neverPicksZeroWeightItems() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        List<ShopItem> items = plainItems(6);
+        items.add(item("disabled", 0.0, null));
+        Shop shop = shop("daily", 6, items, Map.of());
+
+        for (long epoch = 0; epoch < EPOCHS; epoch++) {
+            assertFalse(ids(planner.selectItems(shop, epoch)).contains("disabled"));
+        }
+    }
+
+    @Test
+    void heavierItemsAppearMoreOften() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        List<ShopItem> items = plainItems(9);
+        items.add(item("heavy", 9.0, null));
+        Shop shop = shop("daily", 1, items, Map.of());
+
+        int heavy = 0;
+        for (long epoch = 0; epoch < EPOCHS * 5; epoch++) {
+            if (planner.selectItems(shop, epoch).get(0).id().equals("heavy")) {
+                heavy++;
+            }
+        }
+        // Weight 9 out of a total of 18
+        assertEquals(0.5, heavy / (double) (EPOCHS * 5), 0.03);
+    }
+
+    @Test
+    void respectsRarityMinimumsAndMaximums() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        List<ShopItem> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(item("common_" + i, null, "Common"));
+        }
+        for (int i = 0; i < 5; i++) {
+            items.add(item("rare_" + i, null, "rare"));
+        }
+        for (int i = 0; i < 5; i++) {
+            items.add(item("legendary_" + i, null, "legendary"));
+        }
+        Map<String, RarityRule> rarities = Map.of(
+                "common", new RarityRule(10.0, 0, -1),
+                "rare", new RarityRule(0.01, 2, 3),
+                "legendary", new RarityRule(50.0, 0, 1));
+        Shop shop = shop("daily", 6, items, rarities);
+
+        for (long epoch = 0; epoch < EPOCHS; epoch++) {
+            List<String> picked = ids(planner.selectItems(shop, epoch));
+            long rare = picked.stream().filter(id -> id.startsWith("rare_")).count();
+            long legendary = picked.stream().filter(id -> id.startsWith("legendary_")).count();
+            assertEquals(6, picked.size());
+            assertTrue(rare >= 2 && rare <= 3, "rare count " + rare + " in epoch " + epoch);
+            assertTrue(legendary <= 1, "legendary count " + legendary + " in epoch " + epoch);
+        }
+    }
+
+    @Test
+    void newDefinitionIsRecompiled() {
+        ShopRotationPlanner planner = new ShopRotationPlanner(null, "salt");
+        Shop before = shop("daily", 3, plainItems(10), Map.of());
+        List<ShopItem> changed = plainItems(10);
+        changed.replaceAll(item -> item("new_" + item.id(), null, null));
+        Shop after = shop("daily", 3, changed, Map.of());
+
+        List<String> first = ids(planner.selectItems(before, 1));
+        List<String> second = ids(planner.selectItems(after, 1));
+        assertNotEquals(first, second);
+        assertTrue(second.stream().allMatch(id -> id.startsWith("new_")));
+    }
+
+    private static Shop shop(String id, int slots, List<ShopItem> items, Map<String, RarityRule> rarities) {
+        return new Shop(id, id, 54, Map.of(), items, "rotational", "1h", slots, List.of(), List.of(), List.of(), rarities);
+    }
+
+    private static List<ShopItem> plainItems(int count) {
+        List<ShopItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(item("item_" + i, null, null));
+        }
+        return items;
+    }
+
+    private static ShopItem item(String id, Double weight, String rarity) {
+        return new ShopItem(id, Material.STONE, id, List.of(), 0, 10.0, 5.0, null, null, false, null, null, false,
+                null, null, null, null, null, null, null, null, null, null, weight, rarity);
+    }
+
+    private static List<String> ids(List<ShopItem> items) {
+        return items.stream().map(ShopItem::id).collect(Collectors.toList());
+    }
+}
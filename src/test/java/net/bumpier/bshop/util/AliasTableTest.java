@@ -0,0 +1,71 @@
+package net.bumpier.bshop.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AliasTableTest {
+
+    private static final int DRAWS = 400_000;
+
+    @Test
+    void samplesProportionallyToWeight() {
+        double[] weights = {1, 2, 3, 4, 10};
+        int[] counts = draw(new AliasTable(weights), new Random(42), DRAWS);
+
+        double total = 20;
+        for (int i = 0; i < weights.length; i++) {
+            double expected = weights[i] / total;
+            assertEquals(expected, counts[i] / (double) DRAWS, 0.005, "share of index " + i);
+        }
+    }
+
+    @Test
+    void neverSamplesZeroWeight() {
+        int[] counts = draw(new AliasTable(new double[]{0, 5, 0, 1, 0}), new Random(7), DRAWS);
+
+        assertEquals(0, counts[0]);
+        assertEquals(0, counts[2]);
+        assertEquals(0, counts[4]);
+        assertEquals(DRAWS, counts[1] + counts[3]);
+    }
+
+    @Test
+    void singleWeightAlwaysSamplesIt() {
+        AliasTable table = new AliasTable(new double[]{0.25});
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, table.sample(random));
+        }
+    }
+
+    @Test
+    void sameSeedGivesSameSequence() {
+        AliasTable table = new AliasTable(new double[]{3, 1, 4, 1, 5, 9, 2, 6});
+        Random first = new Random(2024);
+        Random second = new Random(2024);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(table.sample(first), table.sample(second));
+        }
+    }
+
+    @Test
+    void rejectsInvalidWeights() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{1, -1}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{1, Double.NaN}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{1, Double.POSITIVE_INFINITY}));
+    }
+
+    private static int[] draw(AliasTable table, Random random, int draws) {
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < draws; i++) {
+            counts[table.sample(random)]++;
+        }
+        return counts;
+    }
+}